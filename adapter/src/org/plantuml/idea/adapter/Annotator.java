@@ -51,12 +51,10 @@ public class Annotator {
     private static SyntaxResult checkSyntax(String source, VirtualFile virtualFile) {
         File baseDir = UIUtils.getParent(virtualFile);
         if (baseDir != null) {
-            Utils.setPlantUmlDir(baseDir);
-
-            Utils.saveAllDocuments(virtualFile==null?null:virtualFile.getPath());
-        } else {
-            Utils.resetPlantUmlDir();
+            source = UnsavedIncludes.of(virtualFile.getPath()).inline(source, baseDir);
+        }
+        try (RenderEnvironment.Lease ignored = Utils.prepareEnvironment(baseDir)) {
+            return SyntaxChecker.checkSyntaxFair(source);
         }
-        return SyntaxChecker.checkSyntaxFair(source);
     }
 }
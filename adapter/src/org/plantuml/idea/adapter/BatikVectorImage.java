@@ -0,0 +1,71 @@
+package org.plantuml.idea.adapter;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.DocumentLoader;
+import org.apache.batik.bridge.GVTBuilder;
+import org.apache.batik.bridge.UserAgent;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.jetbrains.annotations.NotNull;
+import org.plantuml.idea.rendering.VectorImage;
+import org.w3c.dom.Document;
+
+import java.awt.*;
+import java.awt.geom.Dimension2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Batik graphics tree of a SVG, built once - painting a tile then costs only the rasterization of the tile.
+ */
+public class BatikVectorImage implements VectorImage {
+    private final GraphicsNode root;
+    private final double width;
+    private final double height;
+
+    public BatikVectorImage(@NotNull InputStream stream) throws IOException {
+        Document document = new SAXSVGDocumentFactory(XMLResourceDescriptor.getXMLParserClassName()).createDocument(null, stream);
+        UserAgent userAgent = new UserAgentAdapter();
+        BridgeContext ctx = new BridgeContext(userAgent, new DocumentLoader(userAgent));
+        ctx.setDynamicState(BridgeContext.STATIC);
+        root = new GVTBuilder().build(ctx, document);
+        Dimension2D documentSize = ctx.getDocumentSize();
+        width = documentSize.getWidth();
+        height = documentSize.getHeight();
+    }
+
+    @Override
+    public double getWidth() {
+        return width;
+    }
+
+    @Override
+    public double getHeight() {
+        return height;
+    }
+
+    /**
+     * synchronized - the graphics tree is not thread safe
+     */
+    @NotNull
+    @Override
+    public synchronized BufferedImage renderTile(@NotNull Rectangle region, double scale) {
+        BufferedImage tile = new BufferedImage(region.width, region.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = GraphicsUtil.createGraphics(tile);
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+            g.translate(-region.x, -region.y);
+            g.scale(scale, scale);
+            root.paint(g);
+        } finally {
+            g.dispose();
+        }
+        return tile;
+    }
+}
@@ -6,6 +6,7 @@ import com.intellij.util.ImageLoader;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.plantuml.idea.adapter.rendering.PlantUmlRendererUtil;
+import org.plantuml.idea.adapter.rendering.RenderWorkerPool;
 import org.plantuml.idea.external.Classloaders;
 import org.plantuml.idea.external.PlantUmlFacade;
 import org.plantuml.idea.lang.annotator.SourceAnnotation;
@@ -13,6 +14,7 @@ import org.plantuml.idea.plantuml.PlantUml;
 import org.plantuml.idea.rendering.RenderCacheItem;
 import org.plantuml.idea.rendering.RenderRequest;
 import org.plantuml.idea.rendering.RenderResult;
+import org.plantuml.idea.rendering.VectorImage;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -49,6 +51,15 @@ public class FacadeImpl implements PlantUmlFacade {
         return Utils.loadWithoutCache(url, stream, scale, docSize);
     }
 
+    @Override
+    public VectorImage loadVectorImage(@NotNull InputStream stream) {
+        try {
+            return new BatikVectorImage(stream);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public String version() {
         return Utils.version();
@@ -59,4 +70,9 @@ public class FacadeImpl implements PlantUmlFacade {
     public String encode(String source) throws IOException {
         return Utils.encode(source);
     }
+
+    @Override
+    public void settingsChanged() {
+        RenderWorkerPool.getInstance().settingsChanged();
+    }
 }
@@ -0,0 +1,116 @@
+package org.plantuml.idea.adapter;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.rendering.RenderingCancelledException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Guards the global state of PlantUML - the include path system property, the dot executable and the size limit.
+ * Renderings needing the same environment run in parallel, a rendering needing a different one waits until they are
+ * done, then the environment is switched. Waiting renderings are not overtaken by new ones of the current environment.
+ * <p>
+ * The directory of relative includes is thread local in PlantUML, it is set for every rendering.
+ */
+public class RenderEnvironment {
+    private static final Logger LOG = Logger.getInstance(RenderEnvironment.class);
+    private static final RenderEnvironment INSTANCE = new RenderEnvironment();
+
+    private final Map<String, Integer> waiting = new HashMap<>();
+    @Nullable
+    private String current;
+    private int active;
+
+    public static RenderEnvironment getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param key   identifies the environment, equal for renderings which can share it
+     * @param apply switches the global state to the environment, called without any rendering in progress
+     * @return to be closed when the rendering is done
+     */
+    @NotNull
+    public synchronized Lease enter(@NotNull String key, @NotNull Runnable apply) {
+        if (!canEnter(key, false)) {
+            waiting.merge(key, 1, Integer::sum);
+            try {
+                long start = System.currentTimeMillis();
+                do {
+                    wait();
+                } while (!canEnter(key, true));
+                LOG.debug("waited for environment ", System.currentTimeMillis() - start, "ms");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                //renderings refused because of this one must check again
+                notifyAll();
+                throw new RenderingCancelledException(e);
+            } finally {
+                if (waiting.merge(key, -1, Integer::sum) == 0) {
+                    waiting.remove(key);
+                }
+            }
+        }
+        if (!key.equals(current)) {
+            current = null;
+            apply.run();
+            current = key;
+            //waiting renderings of this environment can enter now
+            notifyAll();
+        }
+        active++;
+        return new Lease();
+    }
+
+    /**
+     * @param waiter whether the rendering is already waiting, a new one must not overtake waiting renderings of another
+     *               environment
+     */
+    private boolean canEnter(String key, boolean waiter) {
+        if (active == 0) {
+            return waiter || waiting.isEmpty() || waiting.containsKey(key);
+        }
+        if (!key.equals(current)) {
+            return false;
+        }
+        for (String waitingKey : waiting.keySet()) {
+            if (!waitingKey.equals(current)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void leave() {
+        active--;
+        if (active == 0) {
+            notifyAll();
+        }
+    }
+
+    synchronized int getActive() {
+        return active;
+    }
+
+    synchronized boolean isWaiting(@NotNull String key) {
+        return waiting.containsKey(key);
+    }
+
+    public class Lease implements AutoCloseable {
+        private boolean closed;
+
+        private Lease() {
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                leave();
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.plantuml.idea.adapter;
+
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+import org.apache.batik.transcoder.image.ImageTranscoder;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Rasterizes SVG into a {@link BufferedImage}, scaled relative to the document size.
+ */
+public class SvgTranscoder extends ImageTranscoder {
+    private final double scale;
+    private BufferedImage image;
+    private float origDocWidth;
+    private float origDocHeight;
+
+    public SvgTranscoder(double scale) {
+        this.scale = scale;
+    }
+
+    @NotNull
+    public static SvgTranscoder createImage(double scale, @NotNull TranscoderInput input) throws TranscoderException {
+        SvgTranscoder transcoder = new SvgTranscoder(scale);
+        transcoder.transcode(input, null);
+        return transcoder;
+    }
+
+    @Override
+    protected void setImageSize(float docWidth, float docHeight) {
+        origDocWidth = docWidth;
+        origDocHeight = docHeight;
+        super.setImageSize((float) (docWidth * scale), (float) (docHeight * scale));
+    }
+
+    @Override
+    public BufferedImage createImage(int width, int height) {
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    @Override
+    public void writeImage(BufferedImage image, TranscoderOutput output) {
+        this.image = image;
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public float getOrigDocWidth() {
+        return origDocWidth;
+    }
+
+    public float getOrigDocHeight() {
+        return origDocHeight;
+    }
+}
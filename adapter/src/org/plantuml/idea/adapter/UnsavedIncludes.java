@@ -0,0 +1,342 @@
+package org.plantuml.idea.adapter;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.apache.commons.lang.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.lang.settings.PlantUmlSettings;
+import org.plantuml.idea.rendering.RenderRequest;
+import org.plantuml.idea.rendering.RenderResult;
+import org.plantuml.idea.rendering.RenderingCancelledException;
+import org.plantuml.idea.rendering.RenderingMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves included files with unsaved changes to PlantUML from memory - their {@code !include} is replaced by the text
+ * of the document, so that documents do not have to be saved before rendering. Includes of other files in an inlined
+ * text are rewritten to absolute paths, they are relative to the inlined file.
+ * <p>
+ * Includes of a part of a file ({@code !include file!1}, {@code !includesub}) are not inlined, only such documents are
+ * saved.
+ * <p>
+ * Saved included files are read to find unsaved files included by them - a saved file is inlined only when it
+ * includes an unsaved one, otherwise it is left to PlantUML. Documents are looked up only for a source with includes.
+ */
+public class UnsavedIncludes {
+    private static final Logger LOG = Logger.getInstance(UnsavedIncludes.class);
+    private static final Pattern INCLUDE = Pattern.compile("^(\\s*)!(include|include_once|include_many|includesub)\\s+(.+?)\\s*$");
+    private static final int MAX_DEPTH = 16;
+    /**
+     * timestamp of inlined files - never up to date with the file on disk
+     */
+    private static final long UNSAVED = 0;
+
+    private final Supplier<Map<File, CharSequence>> textsSupplier;
+    private final List<File> includePath;
+    private final Charset charset;
+    private Map<File, CharSequence> texts;
+    private final Set<File> inlinedFiles = new LinkedHashSet<>();
+    /**
+     * saved files inlined because they include unsaved ones
+     */
+    private final Set<File> inlinedSavedFiles = new LinkedHashSet<>();
+    private final Set<File> filesToSave = new LinkedHashSet<>();
+    private int unsavedInlined;
+
+    UnsavedIncludes(@NotNull Map<File, ? extends CharSequence> texts, @NotNull List<File> includePath) {
+        this(() -> new HashMap<>(texts), includePath, StandardCharsets.UTF_8);
+    }
+
+    private UnsavedIncludes(@NotNull Supplier<Map<File, CharSequence>> textsSupplier, @NotNull List<File> includePath, @NotNull Charset charset) {
+        this.textsSupplier = textsSupplier;
+        this.includePath = includePath;
+        this.charset = charset;
+    }
+
+    /**
+     * @param sourceFilePath the rendered file, its document is the source
+     */
+    @NotNull
+    public static UnsavedIncludes of(@Nullable String sourceFilePath) {
+        PlantUmlSettings settings = PlantUmlSettings.getInstance();
+        return new UnsavedIncludes(() -> unsavedTexts(sourceFilePath), getIncludePath(settings), getCharset(settings));
+    }
+
+    /**
+     * immutable snapshots of the documents, no copying
+     */
+    @NotNull
+    private static Map<File, CharSequence> unsavedTexts(@Nullable String sourceFilePath) {
+        return ReadAction.compute(() -> {
+            FileDocumentManager documentManager = FileDocumentManager.getInstance();
+            Map<File, CharSequence> map = new HashMap<>();
+            for (Document document : documentManager.getUnsavedDocuments()) {
+                VirtualFile file = documentManager.getFile(document);
+                if (file != null && file.isInLocalFileSystem() && !file.getPath().equals(sourceFilePath)) {
+                    map.put(normalize(new File(file.getPath())), document.getImmutableCharSequence());
+                }
+            }
+            return map;
+        });
+    }
+
+    @NotNull
+    public RenderRequest inline(@NotNull RenderRequest renderRequest) {
+        long start = System.nanoTime();
+        String source = inline(renderRequest.getSource(), renderRequest.getBaseDir());
+        LOG.debug("unsaved includes ", inlinedFiles, " inlined in ", RenderingMetrics.getInstance().recordSince(RenderingMetrics.Phase.UNSAVED_INCLUDES, start), "ms");
+        return source.equals(renderRequest.getSource()) ? renderRequest : new RenderRequest(renderRequest, source);
+    }
+
+    /**
+     * @param baseDir directory of the rendered file
+     */
+    @NotNull
+    public String inline(@NotNull String source, @Nullable File baseDir) {
+        String result = inlineSource(source, baseDir);
+        saveFilesToSave();
+        return result;
+    }
+
+    @NotNull
+    String inlineSource(@NotNull String source, @Nullable File baseDir) {
+        if (!source.contains("!include")) {
+            return source;
+        }
+        if (texts == null) {
+            texts = textsSupplier.get();
+        }
+        if (texts.isEmpty()) {
+            return source;
+        }
+        return inline(source, baseDir, 0, new HashSet<>());
+    }
+
+    private String inline(String text, @Nullable File dir, int depth, Set<File> stack) {
+        String[] lines = StringUtils.splitPreserveAllTokens(text, '\n');
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < lines.length; i++) {
+            if (i > 0) {
+                sb.append('\n');
+            }
+            String line = lines[i];
+            Matcher matcher = INCLUDE.matcher(line);
+            if (!matcher.matches()) {
+                sb.append(line);
+                continue;
+            }
+            String directive = matcher.group(2);
+            String argument = matcher.group(3);
+            if (argument.startsWith("<") || argument.contains("://")) {
+                sb.append(line);
+                continue;
+            }
+            //file!1, file!ID
+            String suffix = "";
+            int bang = argument.indexOf('!');
+            if (bang > 0) {
+                suffix = argument.substring(bang);
+                argument = argument.substring(0, bang);
+            }
+            File file = resolve(argument, dir);
+            boolean partial = !suffix.isEmpty() || directive.equals("includesub");
+            //relative includes of the rendered file are left to PlantUML, in included files they are made absolute
+            String absoluteLine = file == null ? line : matcher.group(1) + '!' + directive + ' ' + file.getPath() + suffix;
+            String unchangedLine = depth > 0 ? absoluteLine : line;
+            if (file == null) {
+                sb.append(line);
+            } else if (partial && texts.containsKey(file)) {
+                filesToSave.add(file);
+                sb.append(absoluteLine);
+            } else if (partial) {
+                sb.append(unchangedLine);
+            } else if (directive.equals("include_once") && (inlinedFiles.contains(file) || inlinedSavedFiles.contains(file))) {
+                //already included
+            } else if (depth >= MAX_DEPTH || stack.contains(file)) {
+                sb.append(line);
+            } else if (texts.containsKey(file)) {
+                inlinedFiles.add(file);
+                unsavedInlined++;
+                stack.add(file);
+                sb.append(inline(body(texts.get(file).toString()), file.getParentFile(), depth + 1, stack));
+                stack.remove(file);
+            } else {
+                String inlined = inlineSaved(file, depth, stack);
+                sb.append(inlined != null ? inlined : unchangedLine);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the text of the saved file with unsaved includes inlined, or null when it includes no unsaved file
+     */
+    @Nullable
+    private String inlineSaved(File file, int depth, Set<File> stack) {
+        String text;
+        try {
+            text = new String(Files.readAllBytes(file.toPath()), charset);
+        } catch (IOException e) {
+            LOG.debug("cannot read ", file, ": ", e);
+            return null;
+        }
+        if (!text.contains("!include")) {
+            return null;
+        }
+        int unsavedBefore = unsavedInlined;
+        stack.add(file);
+        String inlined = inline(body(text), file.getParentFile(), depth + 1, stack);
+        stack.remove(file);
+        if (unsavedInlined == unsavedBefore) {
+            return null;
+        }
+        inlinedSavedFiles.add(file);
+        return inlined;
+    }
+
+    /**
+     * PlantUML resolves a relative include against the directory of the including file, then the include path from
+     * the settings.
+     *
+     * @return the first unsaved or existing file, or null
+     */
+    @Nullable
+    private File resolve(String path, @Nullable File dir) {
+        File file = new File(path);
+        List<File> candidates = new ArrayList<>();
+        if (file.isAbsolute()) {
+            candidates.add(file);
+        } else {
+            if (dir != null) {
+                candidates.add(new File(dir, path));
+            }
+            for (File includeDir : includePath) {
+                candidates.add(new File(includeDir, path));
+            }
+        }
+        for (File candidate : candidates) {
+            candidate = normalize(candidate);
+            if (texts.containsKey(candidate) || candidate.isFile()) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * only the first diagram of an included file which contains {@code @start}
+     */
+    private static String body(String text) {
+        String[] lines = StringUtils.splitPreserveAllTokens(text, '\n');
+        int start = -1;
+        for (int i = 0; i < lines.length; i++) {
+            String trimmed = lines[i].trim();
+            if (start == -1 && trimmed.startsWith("@start")) {
+                start = i;
+            } else if (start != -1 && trimmed.startsWith("@end")) {
+                return StringUtils.join(lines, '\n', start + 1, i);
+            }
+        }
+        return text;
+    }
+
+    private void saveFilesToSave() {
+        if (filesToSave.isEmpty()) {
+            return;
+        }
+        LOG.debug("saving partially included ", filesToSave);
+        try {
+            ApplicationManager.getApplication().invokeAndWait(() -> {
+                FileDocumentManager documentManager = FileDocumentManager.getInstance();
+                for (File file : filesToSave) {
+                    VirtualFile virtualFile = LocalFileSystem.getInstance().findFileByIoFile(file);
+                    Document document = virtualFile != null ? documentManager.getCachedDocument(virtualFile) : null;
+                    if (document != null) {
+                        documentManager.saveDocument(document);
+                    }
+                }
+            });
+        } catch (Throwable e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) {
+                throw new RenderingCancelledException((InterruptedException) cause);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * inlined files are included too, for invalidation of the result
+     */
+    public void addInlinedFiles(@NotNull RenderResult renderResult) {
+        if (inlinedFiles.isEmpty()) {
+            return;
+        }
+        LinkedHashMap<File, Long> map = new LinkedHashMap<>();
+        for (File file : inlinedSavedFiles) {
+            map.put(file, file.lastModified());
+        }
+        for (File file : inlinedFiles) {
+            map.put(file, UNSAVED);
+        }
+        renderResult.addIncludedFiles(map);
+    }
+
+    @NotNull
+    Set<File> getInlinedFiles() {
+        return inlinedFiles;
+    }
+
+    @NotNull
+    Set<File> getInlinedSavedFiles() {
+        return inlinedSavedFiles;
+    }
+
+    @NotNull
+    Set<File> getFilesToSave() {
+        return filesToSave;
+    }
+
+    @NotNull
+    private static List<File> getIncludePath(PlantUmlSettings settings) {
+        List<File> includePath = new ArrayList<>();
+        String includedPaths = settings.getIncludedPaths();
+        if (StringUtils.isNotBlank(includedPaths)) {
+            for (String s : includedPaths.split("\n")) {
+                if (StringUtils.isNotBlank(s)) {
+                    includePath.add(new File(s.trim()));
+                }
+            }
+        }
+        return includePath;
+    }
+
+    @NotNull
+    private static Charset getCharset(PlantUmlSettings settings) {
+        try {
+            return Charset.forName(settings.getEncoding());
+        } catch (RuntimeException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    @NotNull
+    static File normalize(@NotNull File file) {
+        return file.getAbsoluteFile().toPath().normalize().toFile();
+    }
+}
@@ -1,10 +1,6 @@
 package org.plantuml.idea.adapter;
 
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.fileEditor.FileDocumentManager;
-import com.intellij.openapi.vfs.VirtualFile;
-//import com.intellij.ui.svg.MyTranscoder;
 import com.intellij.util.ImageLoader;
 import net.sourceforge.plantuml.BlockUml;
 import net.sourceforge.plantuml.FileSystem;
@@ -23,7 +19,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.plantuml.idea.lang.settings.PlantUmlSettings;
 import org.plantuml.idea.rendering.RenderRequest;
-import org.plantuml.idea.rendering.RenderingCancelledException;
+import org.plantuml.idea.rendering.RenderingMetrics;
 import org.w3c.dom.Document;
 
 import java.awt.image.BufferedImage;
@@ -39,19 +35,18 @@ public class Utils {
     private static final Logger LOG = Logger.getInstance(Utils.class);
 
     public static BufferedImage loadWithoutCache(@Nullable URL url, @NotNull InputStream stream, double scale, @Nullable ImageLoader.Dimension2DDouble docSize /*OUT*/) {
-//        try {
-//            MyTranscoder transcoder = MyTranscoder.createImage(scale, createTranscodeInput(url, stream));
-//            if (docSize != null) {
-//                docSize.setSize(transcoder.getOrigDocWidth(), transcoder.getOrigDocHeight());
-//            }
-//            return transcoder.getImage();
-//        } catch (Exception ex) {
-//            if (docSize != null) {
-//                docSize.setSize(0, 0);
-//            }
-//            throw new RuntimeException(ex);
-//        }
-        return null;
+        try {
+            SvgTranscoder transcoder = SvgTranscoder.createImage(scale, createTranscodeInput(url, stream));
+            if (docSize != null) {
+                docSize.setSize(transcoder.getOrigDocWidth(), transcoder.getOrigDocHeight());
+            }
+            return transcoder.getImage();
+        } catch (Exception ex) {
+            if (docSize != null) {
+                docSize.setSize(0, 0);
+            }
+            throw new RuntimeException(ex);
+        }
     }
 
     @NotNull
@@ -73,25 +68,37 @@ public class Utils {
         return myTranscoderInput;
     }
 
+    /**
+     * @return to be closed when the rendering is done, see {@link RenderEnvironment}
+     */
     @NotNull
-    public static void prepareEnvironment(RenderRequest renderRequest) {
-        long start = System.currentTimeMillis();
-        File baseDir = renderRequest.getBaseDir();
-        if (baseDir != null) {
-            setPlantUmlDir(baseDir);
-        } else {
-            resetPlantUmlDir();
-        }
-
-        saveAllDocuments(renderRequest.getSourceFilePath());
-        applyPlantumlOptions(PlantUmlSettings.getInstance());
-        LOG.debug("prepareEnvironment done ", System.currentTimeMillis() - start, "ms");
+    public static RenderEnvironment.Lease prepareEnvironment(RenderRequest renderRequest) {
+        return prepareEnvironment(renderRequest.getBaseDir());
     }
 
-    public static void setPlantUmlDir(@NotNull File baseDir) {
-        FileSystem.getInstance().setCurrentDir(new SFile(baseDir.toURI()));
+    @NotNull
+    public static RenderEnvironment.Lease prepareEnvironment(@Nullable File baseDir) {
+        long start = System.nanoTime();
+        PlantUmlSettings settings = PlantUmlSettings.getInstance();
+        String includePath = baseDir != null ? includePath(baseDir, settings) : null;
+        String key = includePath + "|" + settings.getDotExecutable() + "|" + settings.isUsePreferentiallyGRAPHIZ_DOT() + "|" + settings.getPLANTUML_LIMIT_SIZE();
+
+        RenderEnvironment.Lease lease = RenderEnvironment.getInstance().enter(key, () -> {
+            if (includePath != null) {
+                System.setProperty("plantuml.include.path", includePath);
+            } else {
+                System.clearProperty("plantuml.include.path");
+            }
+            applyPlantumlOptions(settings);
+        });
+        setCurrentDir(baseDir);
+        LOG.debug("prepareEnvironment done ", RenderingMetrics.getInstance().recordSince(RenderingMetrics.Phase.PREPARE_ENVIRONMENT, start), "ms");
+        return lease;
+    }
 
-        String includedPaths = PlantUmlSettings.getInstance().getIncludedPaths();
+    @NotNull
+    private static String includePath(@NotNull File baseDir, PlantUmlSettings settings) {
+        String includedPaths = settings.getIncludedPaths();
         String separator = System.getProperty("path.separator");
 
         StringBuilder sb = new StringBuilder();
@@ -106,13 +113,18 @@ public class Utils {
                 }
             }
         }
-
-        System.setProperty("plantuml.include.path", sb.toString());
+        return sb.toString();
     }
 
-    public static void resetPlantUmlDir() {
-        FileSystem.getInstance().reset();
-        System.clearProperty("plantuml.include.path");
+    /**
+     * only the directory for relative includes, which is thread local in PlantUML, for rendering from pool threads
+     */
+    public static void setCurrentDir(@Nullable File baseDir) {
+        if (baseDir != null) {
+            FileSystem.getInstance().setCurrentDir(new SFile(baseDir.toURI()));
+        } else {
+            FileSystem.getInstance().reset();
+        }
     }
 
     public static String version() {
@@ -150,7 +162,7 @@ public class Utils {
 
     @NotNull
     public static LinkedHashMap<File, Long> getIncludedFiles(SourceStringReader reader) {
-        long start = System.currentTimeMillis();
+        long start = System.nanoTime();
         LinkedHashMap<File, Long> includedFiles = new LinkedHashMap<>();
         List<BlockUml> blocks = reader.getBlocks();
         for (BlockUml block : blocks) {
@@ -165,38 +177,7 @@ public class Utils {
                 LOG.warn(e);
             }
         }
-        LOG.debug("getIncludedFiles ", (System.currentTimeMillis() - start), "ms");
+        LOG.debug("getIncludedFiles ", RenderingMetrics.getInstance().recordSince(RenderingMetrics.Phase.GET_INCLUDED_FILES, start), "ms");
         return includedFiles;
     }
-
-    public static void saveAllDocuments(@Nullable String sourceFilePath) {
-        try {
-            long start = System.currentTimeMillis();
-            FileDocumentManager documentManager = FileDocumentManager.getInstance();
-            com.intellij.openapi.editor.Document[] unsavedDocuments = documentManager.getUnsavedDocuments();
-            if (unsavedDocuments.length > 0 && !onlyCurrentlyDisplayed(documentManager, unsavedDocuments, sourceFilePath)) {
-                ApplicationManager.getApplication().invokeAndWait(documentManager::saveAllDocuments);
-            }
-
-            LOG.debug("saveAllDocuments ", (System.currentTimeMillis() - start), "ms");
-        } catch (Throwable e) {
-            Throwable cause = e.getCause();
-            if (cause instanceof InterruptedException) {
-                throw new RenderingCancelledException((InterruptedException) cause);
-            }
-            throw e;
-        }
-    }
-
-    private static boolean onlyCurrentlyDisplayed(FileDocumentManager documentManager, com.intellij.openapi.editor.Document[] unsavedDocuments, @Nullable String sourceFile) {
-        if (unsavedDocuments.length == 1 && sourceFile!=null) {
-            com.intellij.openapi.editor.Document unsavedDocument = unsavedDocuments[0];
-            VirtualFile file = documentManager.getFile(unsavedDocument);
-            if (file != null) {
-                return file.getPath().equals(sourceFile);
-            }
-        }
-        return false;
-        
-    }
 }
@@ -0,0 +1,139 @@
+package org.plantuml.idea.adapter.rendering;
+
+import com.intellij.openapi.util.Pair;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.adapter.Utils;
+import org.plantuml.idea.rendering.ImageItem;
+import org.plantuml.idea.rendering.RenderResult;
+import org.plantuml.idea.rendering.RenderingPool;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Collects pages in page order, pages which need PlantUML are executed by {@link RenderingPool} starting with the pages
+ * closest to the priority page, and the results are added to {@link RenderResult} in the original order.
+ * <p>
+ * Tasks of pages which share one parsed diagram must not be parallel - PlantUML does not support exporting pages of
+ * one diagram concurrently.
+ */
+public class PageRenderQueue {
+    private final List<Page> pages = new ArrayList<>();
+    @Nullable
+    private final File baseDir;
+    private final int priorityPage;
+    private final boolean parallel;
+
+    /**
+     * @param parallel whether the tasks are independent of each other, otherwise they are executed sequentially by the
+     *                 calling thread
+     */
+    public PageRenderQueue(@Nullable File baseDir, int priorityPage, boolean parallel) {
+        this.baseDir = baseDir;
+        this.priorityPage = priorityPage;
+        this.parallel = parallel;
+    }
+
+    public void rendered(int page, @NotNull Callable<Pair<ImageItem, LinkedHashMap<File, Long>>> task) {
+        pages.add(new Page(page, Kind.RENDERED, task));
+    }
+
+    public void updatedTitle(int page, @NotNull Callable<Pair<ImageItem, LinkedHashMap<File, Long>>> task) {
+        pages.add(new Page(page, Kind.UPDATED_TITLE, task));
+    }
+
+    public void updatedTitle(@NotNull ImageItem imageItem) {
+        pages.add(new Page(Kind.UPDATED_TITLE, imageItem, null));
+    }
+
+    public void cached(@NotNull ImageItem imageItem, @Nullable LinkedHashMap<File, Long> includedFiles) {
+        pages.add(new Page(Kind.CACHED, imageItem, includedFiles));
+    }
+
+    public void renderInto(@NotNull RenderResult renderResult) {
+        List<Page> pagesWithTask = new ArrayList<>();
+        for (Page page : pages) {
+            if (page.task != null) {
+                pagesWithTask.add(page);
+            }
+        }
+        if (priorityPage >= 0) {
+            pagesWithTask.sort(Comparator.comparingInt(page -> Math.abs(page.page - priorityPage)));
+        }
+        List<Callable<Pair<ImageItem, LinkedHashMap<File, Long>>>> tasks = new ArrayList<>(pagesWithTask.size());
+        for (Page page : pagesWithTask) {
+            tasks.add(withCurrentDir(page.task));
+        }
+        List<Pair<ImageItem, LinkedHashMap<File, Long>>> results = RenderingPool.invokeAll(tasks, parallel ? RenderingPool.getThreads() : 1);
+        Map<Page, Pair<ImageItem, LinkedHashMap<File, Long>>> resultByPage = new IdentityHashMap<>();
+        for (int i = 0; i < pagesWithTask.size(); i++) {
+            resultByPage.put(pagesWithTask.get(i), results.get(i));
+        }
+
+        for (Page page : pages) {
+            ImageItem imageItem = page.imageItem;
+            LinkedHashMap<File, Long> includedFiles = page.includedFiles;
+            if (page.task != null) {
+                Pair<ImageItem, LinkedHashMap<File, Long>> result = resultByPage.get(page);
+                imageItem = result.first;
+                includedFiles = result.second;
+            }
+            switch (page.kind) {
+                case RENDERED:
+                    renderResult.addRenderedImage(imageItem);
+                    break;
+                case UPDATED_TITLE:
+                    renderResult.addUpdatedTitle(imageItem);
+                    break;
+                case CACHED:
+                    renderResult.addCachedImage(imageItem);
+                    break;
+            }
+            if (includedFiles != null) {
+                renderResult.addIncludedFiles(includedFiles);
+            }
+        }
+    }
+
+    private <T> Callable<T> withCurrentDir(Callable<T> task) {
+        Thread caller = Thread.currentThread();
+        return () -> {
+            if (Thread.currentThread() != caller) {
+                Utils.setCurrentDir(baseDir);
+            }
+            return task.call();
+        };
+    }
+
+    private enum Kind {
+        RENDERED,
+        UPDATED_TITLE,
+        CACHED
+    }
+
+    private static class Page {
+        private final int page;
+        private final Kind kind;
+        private final Callable<Pair<ImageItem, LinkedHashMap<File, Long>>> task;
+        private final ImageItem imageItem;
+        private final LinkedHashMap<File, Long> includedFiles;
+
+        Page(int page, Kind kind, Callable<Pair<ImageItem, LinkedHashMap<File, Long>>> task) {
+            this.page = page;
+            this.kind = kind;
+            this.task = task;
+            this.imageItem = null;
+            this.includedFiles = null;
+        }
+
+        Page(Kind kind, ImageItem imageItem, LinkedHashMap<File, Long> includedFiles) {
+            this.page = imageItem.getPage();
+            this.kind = kind;
+            this.task = null;
+            this.imageItem = imageItem;
+            this.includedFiles = includedFiles;
+        }
+    }
+}
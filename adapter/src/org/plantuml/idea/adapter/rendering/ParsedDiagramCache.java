@@ -0,0 +1,197 @@
+package org.plantuml.idea.adapter.rendering;
+
+import com.intellij.openapi.diagnostic.Logger;
+import net.sourceforge.plantuml.AbstractPSystem;
+import net.sourceforge.plantuml.BlockUml;
+import net.sourceforge.plantuml.NewpagedDiagram;
+import net.sourceforge.plantuml.Scale;
+import net.sourceforge.plantuml.SourceStringReader;
+import net.sourceforge.plantuml.core.Diagram;
+import org.jetbrains.annotations.NotNull;
+import org.plantuml.idea.adapter.Utils;
+import org.plantuml.idea.rendering.RenderRequest;
+import org.plantuml.idea.rendering.RenderingMetrics;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Parsed diagrams of recently rendered sources, so that a change of zoom, page or title only exports the pages again.
+ * <p>
+ * Keyed by the source, the file and the settings which affect parsing. A diagram is taken out of the cache for the
+ * duration of a rendering - zoom mutates it, so it must not be shared by two renderings. Entries are softly referenced
+ * and dropped when any of their included files was modified.
+ * <p>
+ * The diagram of a request followed by a request for the remaining pages (visible pages first) is referenced strongly
+ * until the next rendering, so that the diagram is parsed once for both.
+ */
+public class ParsedDiagramCache {
+    private static final Logger logger = Logger.getInstance(ParsedDiagramCache.class);
+    private static final int MAX_ENTRIES = 16;
+
+    private final LinkedHashMap<Key, SoftReference<ParsedDiagram>> entries = new LinkedHashMap<Key, SoftReference<ParsedDiagram>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, SoftReference<ParsedDiagram>> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private Key pinnedKey;
+    private ParsedDiagram pinned;
+
+    /**
+     * @return the cached diagram with the original scale, or a newly parsed one. Return it by {@link #release} when
+     * the rendering succeeded.
+     */
+    @NotNull
+    public ParsedDiagram take(@NotNull RenderRequest renderRequest, @NotNull String source) {
+        ParsedDiagram parsedDiagram = null;
+        if (!renderRequest.requestedRefreshOrIncludesChanged()) {
+            parsedDiagram = remove(new Key(renderRequest, source));
+        }
+        if (parsedDiagram != null && parsedDiagram.includedFilesChanged()) {
+            logger.debug("included files changed, parsing again");
+            parsedDiagram = null;
+        }
+
+        if (parsedDiagram != null) {
+            RenderingMetrics.getInstance().increment(RenderingMetrics.Counter.DIAGRAM_CACHE_HIT);
+            parsedDiagram.resetScales();
+            return parsedDiagram;
+        }
+        RenderingMetrics.getInstance().increment(RenderingMetrics.Counter.DIAGRAM_CACHE_MISS);
+        SourceStringReader reader = PlantUmlRendererUtil.newSourceStringReader(source, renderRequest.isUseSettings(), renderRequest.getSourceFile());
+        return new ParsedDiagram(reader);
+    }
+
+    public synchronized void release(@NotNull RenderRequest renderRequest, @NotNull String source, @NotNull ParsedDiagram parsedDiagram) {
+        Key key = new Key(renderRequest, source);
+        unpin();
+        if (renderRequest.isRemainingPagesFollow()) {
+            entries.remove(key);
+            pinnedKey = key;
+            pinned = parsedDiagram;
+        } else {
+            entries.put(key, new SoftReference<>(parsedDiagram));
+        }
+    }
+
+    private void unpin() {
+        if (pinned != null) {
+            entries.put(pinnedKey, new SoftReference<>(pinned));
+            pinnedKey = null;
+            pinned = null;
+        }
+    }
+
+    private synchronized ParsedDiagram remove(Key key) {
+        if (key.equals(pinnedKey)) {
+            ParsedDiagram parsedDiagram = pinned;
+            pinnedKey = null;
+            pinned = null;
+            return parsedDiagram;
+        }
+        SoftReference<ParsedDiagram> reference = entries.remove(key);
+        return reference != null ? reference.get() : null;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        pinnedKey = null;
+        pinned = null;
+    }
+
+    synchronized boolean isPinned(@NotNull ParsedDiagram parsedDiagram) {
+        return pinned == parsedDiagram;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public static class ParsedDiagram {
+        private final SourceStringReader reader;
+        private final Map<AbstractPSystem, Scale> originalScales = new IdentityHashMap<>();
+        private LinkedHashMap<File, Long> includedFiles;
+
+        ParsedDiagram(@NotNull SourceStringReader reader) {
+            this.reader = reader;
+            long start = System.nanoTime();
+            for (BlockUml block : reader.getBlocks()) {
+                collectScales(block.getDiagram());
+            }
+            logger.debug("getDiagram done in ", RenderingMetrics.getInstance().recordSince(RenderingMetrics.Phase.GET_DIAGRAM, start), "ms");
+        }
+
+        private void collectScales(Diagram diagram) {
+            if (diagram instanceof NewpagedDiagram) {
+                for (Diagram page : ((NewpagedDiagram) diagram).getDiagrams()) {
+                    collectScales(page);
+                }
+            } else if (diagram instanceof AbstractPSystem) {
+                originalScales.put((AbstractPSystem) diagram, ((AbstractPSystem) diagram).getScale());
+            }
+        }
+
+        /**
+         * zoom is relative to the scale from the source
+         */
+        void resetScales() {
+            for (Map.Entry<AbstractPSystem, Scale> entry : originalScales.entrySet()) {
+                entry.getKey().setScale(entry.getValue());
+            }
+        }
+
+        @NotNull
+        public SourceStringReader getReader() {
+            return reader;
+        }
+
+        @NotNull
+        public synchronized LinkedHashMap<File, Long> getIncludedFiles() {
+            if (includedFiles == null) {
+                includedFiles = Utils.getIncludedFiles(reader);
+            }
+            return includedFiles;
+        }
+
+        private boolean includedFilesChanged() {
+            for (Map.Entry<File, Long> entry : getIncludedFiles().entrySet()) {
+                if (entry.getKey().lastModified() != entry.getValue()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Key {
+        private final String source;
+        private final String file;
+        private final String settings;
+
+        Key(RenderRequest renderRequest, String source) {
+            this.source = source;
+            this.file = renderRequest.getSourceFilePath();
+            this.settings = renderRequest.getSettingsFingerprint();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return source.equals(key.source)
+                    && Objects.equals(file, key.file)
+                    && Objects.equals(settings, key.settings);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(source, file, settings);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.plantuml.idea.adapter.rendering;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.rendering.ImageItem;
+import org.plantuml.idea.rendering.RenderRequest;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Pages rendered by {@link PlantUmlPartialRenderer}, shared by all files, so that the same fragment used in many files
+ * is rendered once.
+ * <p>
+ * Keyed by the page source and everything else the output depends on, the directory only for pages with relative
+ * includes. Entries are dropped when any of their included files was modified.
+ */
+public class PartialRenderCache {
+    private static final Logger logger = Logger.getInstance(PartialRenderCache.class);
+    private static final long MAX_SIZE_BYTES = 32 * 1024 * 1024;
+    /**
+     * builtin functions/variables which depend on the source file, see Defines.createWithFileName
+     */
+    private static final Pattern FILE_DEPENDENT = Pattern.compile("%(?:file|dir|filename|dirpath|filenameNoExtension)", Pattern.CASE_INSENSITIVE);
+    /**
+     * includes and images resolved against the directory of the source file - not absolute paths, stdlib or URLs
+     */
+    private static final Pattern DIRECTORY_DEPENDENT = Pattern.compile("(?:^\\s*!(?:include\\w*|import)\\s+|<img:)(?![/\\\\<]|[a-z]:[/\\\\]|(?:https?|ftp):)", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxSizeBytes;
+    private long sizeBytes;
+
+    public PartialRenderCache() {
+        this(MAX_SIZE_BYTES);
+    }
+
+    public PartialRenderCache(long maxSizeBytes) {
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * @return the cached page, copied for the given page index and document, or null
+     */
+    @Nullable
+    public synchronized Entry get(@NotNull RenderRequest renderRequest, @NotNull String partialSource, int page) {
+        Key key = new Key(renderRequest, partialSource);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.includedFilesChanged()) {
+            logger.debug("included files changed, removing page");
+            remove(key);
+            return null;
+        }
+        ImageItem imageItem = new ImageItem(page, renderRequest.getSource(), entry.imageItem);
+        return new Entry(imageItem, entry.includedFiles);
+    }
+
+    public synchronized void put(@NotNull RenderRequest renderRequest, @NotNull String partialSource, @NotNull ImageItem imageItem, @NotNull LinkedHashMap<File, Long> includedFiles) {
+        if (!imageItem.hasImageBytes()) {
+            return;
+        }
+        Key key = new Key(renderRequest, partialSource);
+        remove(key);
+        Entry entry = new Entry(imageItem, includedFiles);
+        entries.put(key, entry);
+        sizeBytes += entry.size;
+        evict();
+    }
+
+    private void remove(Key key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            sizeBytes -= previous.size;
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (sizeBytes > maxSizeBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            sizeBytes -= eldest.size;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        sizeBytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public static class Entry {
+        private final ImageItem imageItem;
+        private final LinkedHashMap<File, Long> includedFiles;
+        private final long size;
+
+        Entry(ImageItem imageItem, LinkedHashMap<File, Long> includedFiles) {
+            this.imageItem = imageItem;
+            this.includedFiles = includedFiles;
+            this.size = imageItem.getOffHeapBytes();
+        }
+
+        public ImageItem getImageItem() {
+            return imageItem;
+        }
+
+        public LinkedHashMap<File, Long> getIncludedFiles() {
+            return includedFiles;
+        }
+
+        private boolean includedFilesChanged() {
+            for (Map.Entry<File, Long> entry : includedFiles.entrySet()) {
+                if (entry.getKey().lastModified() != entry.getValue()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Key {
+        private final String partialSource;
+        private final int scaledZoom;
+        private final String format;
+        private final boolean renderUrlLinks;
+        private final String file;
+        private final String settings;
+
+        Key(RenderRequest renderRequest, String partialSource) {
+            this.partialSource = partialSource;
+            this.scaledZoom = renderRequest.getScaledZoom();
+            //SVG for the tiled display
+            this.format = PlantUmlRendererUtil.imageFormatOption(renderRequest).getFileFormat().name();
+            this.renderUrlLinks = renderRequest.isRenderUrlLinks();
+            //other included files are shared by all directories, their modification is checked by the entry
+            if (FILE_DEPENDENT.matcher(partialSource).find()) {
+                this.file = renderRequest.getSourceFilePath();
+            } else if (DIRECTORY_DEPENDENT.matcher(partialSource).find()) {
+                File baseDir = renderRequest.getBaseDir();
+                this.file = baseDir != null ? baseDir.getPath() : null;
+            } else {
+                this.file = null;
+            }
+            this.settings = renderRequest.getSettingsFingerprint();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return scaledZoom == key.scaledZoom
+                    && renderUrlLinks == key.renderUrlLinks
+                    && partialSource.equals(key.partialSource)
+                    && format.equals(key.format)
+                    && Objects.equals(file, key.file)
+                    && Objects.equals(settings, key.settings);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(partialSource, scaledZoom, format, renderUrlLinks, file, settings);
+        }
+    }
+}
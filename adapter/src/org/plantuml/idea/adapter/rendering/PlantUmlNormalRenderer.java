@@ -1,6 +1,7 @@
 package org.plantuml.idea.adapter.rendering;
 
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.openapi.vfs.ex.VirtualFileManagerEx;
 import com.intellij.util.ObjectUtils;
@@ -14,7 +15,6 @@ import net.sourceforge.plantuml.core.DiagramDescription;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.plantuml.idea.adapter.Format;
-import org.plantuml.idea.adapter.Utils;
 import org.plantuml.idea.lang.settings.PlantUmlSettings;
 import org.plantuml.idea.plantuml.PlantUml;
 import org.plantuml.idea.rendering.*;
@@ -23,6 +23,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.plantuml.idea.adapter.rendering.PlantUmlRendererUtil.*;
 
@@ -111,12 +114,16 @@ public class PlantUmlNormalRenderer {
         String documentSource = renderRequest.getSource();
         try {
             // image generation.                     
-            SourceStringReader reader = newSourceStringReader(documentSource, renderRequest.isUseSettings(), renderRequest.getSourceFile());
+            ParsedDiagramCache.ParsedDiagram parsedDiagram = DIAGRAM_CACHE.take(renderRequest, documentSource);
+            SourceStringReader reader = parsedDiagram.getReader();
+            checkCancel(renderRequest);
 
             DiagramInfo info = zoomDiagram(reader, renderRequest.getScaledZoom());
+            checkCancel(renderRequest);
             Integer totalPages = info.getTotalPages();
 
             if (totalPages == 0) {
+                DIAGRAM_CACHE.release(renderRequest, documentSource, parsedDiagram);
                 return new RenderResult(RenderingType.NORMAL, 0);
             }
 
@@ -127,7 +134,7 @@ public class PlantUmlNormalRenderer {
             }
             RenderResult renderResult = new RenderResult(RenderingType.NORMAL, totalPages);
 
-            FileFormatOption formatOption = new FileFormatOption(Format.from(renderRequest));
+            FileFormatOption formatOption = imageFormatOption(renderRequest);
 
             boolean containsIncludedNewPage = sourceSplit.length != totalPages;
 
@@ -142,27 +149,36 @@ public class PlantUmlNormalRenderer {
             logger.debug("incremental rendering=", incrementalRendering, ", totalPages=", totalPages);
 
 
+            //the reader is not thread safe, with more threads every thread exports pages from its own reader
+            boolean parallel = RenderingPool.getThreads() > 1;
+            PageReaders readers = new PageReaders(renderRequest, documentSource, reader, parallel);
+            PageRenderQueue queue = new PageRenderQueue(renderRequest.getBaseDir(), renderRequest.getPriorityPage(), parallel);
             for (int i = 0; i < totalPages; i++) {
-                boolean pageRequested = renderRequestPage == -1 || renderRequestPage == i;
+                boolean pageRequested = renderRequest.shouldRender(renderRequestPage, i);
                 if (incrementalRendering) {
-                    incrementalRendering(renderRequest, cachedItem, sourceSplit, documentSource, reader, info, renderResult, formatOption, i, pageRequested);
+                    incrementalRendering(renderRequest, cachedItem, sourceSplit, documentSource, readers, info, queue, formatOption, i, pageRequested);
                 } else {
-                    normalRendering(renderRequest, sourceSplit, documentSource, reader, info, renderResult, formatOption, containsIncludedNewPage, i, pageRequested);
+                    normalRendering(renderRequest, sourceSplit, documentSource, readers, info, queue, formatOption, containsIncludedNewPage, i, pageRequested);
                 }
             }
-            renderResult.setIncludedFiles(Utils.getIncludedFiles(reader));
+            queue.renderInto(renderResult);
+            renderResult.setIncludedFiles(parsedDiagram.getIncludedFiles());
+            DIAGRAM_CACHE.release(renderRequest, documentSource, parsedDiagram);
             return renderResult;
         } catch (UnsupportedOperationException e) {
             throw e;
         } catch (RenderingCancelledException e) {
             throw e;
         } catch (Throwable e) {
+            if (renderRequest.isCancelled()) {
+                throw new RenderingCancelledException(e);
+            }
             logger.error("Failed to render image " + documentSource, e);
             return new RenderResult(RenderingType.NORMAL, 0);
         }
     }
 
-    private void incrementalRendering(RenderRequest renderRequest, RenderCacheItem cachedItem, String[] sourceSplit, String documentSource, SourceStringReader reader, DiagramInfo info, RenderResult renderResult, FileFormatOption formatOption, int i, boolean pageRequested) throws IOException {
+    private void incrementalRendering(RenderRequest renderRequest, RenderCacheItem cachedItem, String[] sourceSplit, String documentSource, PageReaders readers, DiagramInfo info, PageRenderQueue queue, FileFormatOption formatOption, int i, boolean pageRequested) {
         boolean obsolete = renderRequest.requestedRefreshOrIncludesChanged()
                 || renderRequest.getScaledZoom() != cachedItem.getScaledZoom()
                 || !sourceSplit[i].equals(cachedItem.getImagesItemPageSource(i))
@@ -171,26 +187,24 @@ public class PlantUmlNormalRenderer {
         boolean shouldRender = pageRequested && (obsolete || !cachedItem.hasImage(i));
 
         if (shouldRender) {
-            ImageItem imageItem = generateImageItem(renderRequest, documentSource, sourceSplit[i], reader, formatOption, i, i, RenderingType.NORMAL, info.getTitle(i), info.getFilename());
-            renderResult.addRenderedImage(imageItem);
+            queue.rendered(i, () -> new Pair<>(generateImageItem(renderRequest, documentSource, sourceSplit[i], readers.get(), formatOption, i, i, RenderingType.NORMAL, info.getTitle(i), info.getFilename()), null));
         } else if (obsolete) {
             logger.debug("page ", i, "  title only");
-            renderResult.addUpdatedTitle(new ImageItem(renderRequest.getBaseDir(), renderRequest.getFormat(), documentSource, sourceSplit[i], i, RenderResult.TITLE_ONLY, null, null, RenderingType.NORMAL, info.getTitle(i), info.getFilename()));
+            queue.updatedTitle(new ImageItem(renderRequest.getBaseDir(), renderRequest.getFormat(), documentSource, sourceSplit[i], i, RenderResult.TITLE_ONLY, null, null, RenderingType.NORMAL, info.getTitle(i), info.getFilename()));
         } else {
             logger.debug("page ", i, " cached");
-            renderResult.addCachedImage(cachedItem.getImageItem(i));
+            queue.cached(cachedItem.getImageItem(i), null);
         }
     }
 
-    private void normalRendering(RenderRequest renderRequest, String[] sourceSplit, String documentSource, SourceStringReader reader, DiagramInfo info, RenderResult renderResult, FileFormatOption formatOption, boolean containsIncludedNewPage, int i, boolean pageRequested) throws IOException {
+    private void normalRendering(RenderRequest renderRequest, String[] sourceSplit, String documentSource, PageReaders readers, DiagramInfo info, PageRenderQueue queue, FileFormatOption formatOption, boolean containsIncludedNewPage, int i, boolean pageRequested) {
         String pageSource = pageSource(sourceSplit, containsIncludedNewPage, i);
         if (pageRequested) {
-            ImageItem imageItem = generateImageItem(renderRequest, documentSource, pageSource, reader, formatOption, i, i, RenderingType.NORMAL, info.getTitle(i), info.getFilename());
-            renderResult.addRenderedImage(imageItem);
+            queue.rendered(i, () -> new Pair<>(generateImageItem(renderRequest, documentSource, pageSource, readers.get(), formatOption, i, i, RenderingType.NORMAL, info.getTitle(i), info.getFilename()), null));
         } else {
             logger.debug("page ", i, "  title only");
             ImageItem imageItem = new ImageItem(renderRequest.getBaseDir(), renderRequest.getFormat(), documentSource, pageSource, i, RenderResult.TITLE_ONLY, null, null, RenderingType.NORMAL, info.getTitle(i), info.getFilename());
-            renderResult.addUpdatedTitle(imageItem);
+            queue.updatedTitle(imageItem);
         }
     }
 
@@ -219,8 +233,8 @@ public class PlantUmlNormalRenderer {
                                           RenderingType renderingType,
                                           String title,
                                           String filename) throws IOException {
-        checkCancel();
-        long start = System.currentTimeMillis();
+        checkCancel(renderRequest);
+        long start = System.nanoTime();
 
         ByteArrayOutputStream imageStream = new ByteArrayOutputStream();
 
@@ -234,12 +248,17 @@ public class PlantUmlNormalRenderer {
         }
         byte[] bytes = imageStream.toByteArray();
 
-        logger.debug("generated ", formatOption.getFileFormat(), " for page ", logPage, " in ", System.currentTimeMillis() - start, "ms");
+        logger.debug("generated ", formatOption.getFileFormat(), " for page ", logPage, " in ", METRICS.recordSince(RenderingMetrics.Phase.OUTPUT_IMAGE, start), "ms");
 
+        PlantUml.ImageFormat imageFormat = renderRequest.getFormat();
         byte[] svgBytes = new byte[0];
-        if (renderRequest.getFormat() == PlantUml.ImageFormat.SVG) {
-            svgBytes = bytes;
+        if (formatOption.getFileFormat() == FileFormat.SVG) {
+            if (!renderRequest.isTiled() || renderRequest.isRenderUrlLinks()) {
+                svgBytes = bytes;
+            }
+            imageFormat = PlantUml.ImageFormat.SVG;
         } else if (renderRequest.isRenderUrlLinks() ) {
+            checkCancel(renderRequest);
             svgBytes = generateSvg(reader, page);
         }
 
@@ -250,17 +269,57 @@ public class PlantUmlNormalRenderer {
             description = "ok";
         }
 
-        return new ImageItem(renderRequest.getBaseDir(), renderRequest.getFormat(), documentSource, pageSource, page, description, bytes, svgBytes, renderingType, title, filename);
+        return new ImageItem(renderRequest.getBaseDir(), imageFormat, documentSource, pageSource, page, description, bytes, svgBytes, renderingType, title, filename);
     }
 
     protected byte[] generateSvg(SourceStringReader reader, int i) throws IOException {
-        long start = System.currentTimeMillis();
+        long start = System.nanoTime();
         ByteArrayOutputStream svgStream = new ByteArrayOutputStream();
         reader.outputImage(svgStream, i, SVG);
         byte[] svgBytes = svgStream.toByteArray();
-        logger.debug("generated ", SVG.getFileFormat(), " for page ", i, " in ", System.currentTimeMillis() - start, "ms");
+        logger.debug("generated ", SVG.getFileFormat(), " for page ", i, " in ", METRICS.recordSince(RenderingMetrics.Phase.GENERATE_SVG, start), "ms");
         return svgBytes;
     }
 
+    /**
+     * PlantUML does not support exporting pages of one diagram concurrently. The parsed reader is given to the first
+     * thread which asks for it, every other pool thread parses the source once for all pages it exports.
+     */
+    private static class PageReaders {
+        private final RenderRequest renderRequest;
+        private final String source;
+        private final boolean parallel;
+        private final AtomicReference<SourceStringReader> parsed;
+        private final SourceStringReader reader;
+        private final Map<Thread, SourceStringReader> readers = new ConcurrentHashMap<>();
+
+        PageReaders(RenderRequest renderRequest, String source, SourceStringReader reader, boolean parallel) {
+            this.renderRequest = renderRequest;
+            this.source = source;
+            this.reader = reader;
+            this.parallel = parallel;
+            this.parsed = new AtomicReference<>(reader);
+        }
+
+        SourceStringReader get() {
+            if (!parallel) {
+                return reader;
+            }
+            //only the current thread puts its own key
+            SourceStringReader threadReader = readers.get(Thread.currentThread());
+            if (threadReader == null) {
+                threadReader = parsed.getAndSet(null);
+                if (threadReader == null) {
+                    checkCancel(renderRequest);
+                    logger.debug("parsing the source for thread ", Thread.currentThread().getName());
+                    threadReader = newSourceStringReader(source, renderRequest.isUseSettings(), renderRequest.getSourceFile());
+                    zoomDiagram(threadReader, renderRequest.getScaledZoom());
+                }
+                readers.put(Thread.currentThread(), threadReader);
+            }
+            return threadReader;
+        }
+    }
+
 
 }
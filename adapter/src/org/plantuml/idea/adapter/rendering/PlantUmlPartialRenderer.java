@@ -8,8 +8,6 @@ import net.sourceforge.plantuml.error.PSystemError;
 import net.sourceforge.plantuml.error.PSystemErrorV2;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.plantuml.idea.adapter.Format;
-import org.plantuml.idea.adapter.Utils;
 import org.plantuml.idea.rendering.*;
 
 import java.io.ByteArrayOutputStream;
@@ -22,17 +20,21 @@ import static org.plantuml.idea.adapter.rendering.PlantUmlRendererUtil.*;
 
 public class PlantUmlPartialRenderer extends PlantUmlNormalRenderer {
     private static final Logger logger = Logger.getInstance(PlantUmlPartialRenderer.class);
+    private static final PartialRenderCache PAGE_CACHE = new PartialRenderCache();
 
 
     @NotNull
     public RenderResult partialRender(RenderRequest renderRequest, @Nullable RenderCacheItem cachedItem, String[] sourceSplit) {
         try {
-            FileFormatOption formatOption = new FileFormatOption(Format.from(renderRequest));
+            FileFormatOption formatOption = imageFormatOption(renderRequest);
 
             RenderResult renderResult = new RenderResult(RenderingType.PARTIAL, sourceSplit.length);
+            //every page is parsed separately, so pages are rendered in parallel
+            PageRenderQueue queue = new PageRenderQueue(renderRequest.getBaseDir(), renderRequest.getPriorityPage(), true);
             for (int page = 0; page < sourceSplit.length; page++) {
-                processPage(renderRequest, cachedItem, sourceSplit[page], formatOption, renderResult, page);
+                processPage(renderRequest, cachedItem, sourceSplit[page], formatOption, queue, page);
             }
+            queue.renderInto(renderResult);
 
             return renderResult;
         } catch (PartialRenderingException e) {
@@ -62,8 +64,7 @@ public class PlantUmlPartialRenderer extends PlantUmlNormalRenderer {
         return renderResult;
     }
 
-    public void processPage(RenderRequest renderRequest, @Nullable RenderCacheItem cachedItem, String s, FileFormatOption formatOption, RenderResult renderResult, int page) {
-        long partialPageProcessingStart = System.currentTimeMillis();
+    public void processPage(RenderRequest renderRequest, @Nullable RenderCacheItem cachedItem, String s, FileFormatOption formatOption, PageRenderQueue queue, int page) {
         String partialSource = "@startuml\n" + s + "\n@enduml";
 
         boolean obsolete = cachedItem == null
@@ -72,37 +73,49 @@ public class PlantUmlPartialRenderer extends PlantUmlNormalRenderer {
                 || renderRequest.getScaledZoom() != cachedItem.getScaledZoom()
                 || !partialSource.equals(cachedItem.getImagesItemPageSource(page));
 
-        boolean pageSelected = renderRequest.getPage() == -1 || renderRequest.getPage() == page;
+        boolean pageSelected = renderRequest.shouldRender(renderRequest.getPage(), page);
         boolean shouldRender = pageSelected && (obsolete || !cachedItem.hasImage(page));
 
-        if (shouldRender) {
-            Pair<ImageItem, LinkedHashMap<File, Long>> imageItemMapPair = renderImage(renderRequest, page, formatOption, partialSource);
-            renderResult.addRenderedImage(imageItemMapPair.first);
-            renderResult.addIncludedFiles(imageItemMapPair.second);
+        PartialRenderCache.Entry cachedPage = null;
+        if (obsolete && !renderRequest.requestedRefreshOrIncludesChanged()) {
+            cachedPage = PAGE_CACHE.get(renderRequest, partialSource, page);
+            METRICS.increment(cachedPage != null ? RenderingMetrics.Counter.PAGE_CACHE_HIT : RenderingMetrics.Counter.PAGE_CACHE_MISS);
+        }
+
+        if (cachedPage != null) {
+            logger.debug("page ", page, " found in page cache");
+            queue.cached(cachedPage.getImageItem(), cachedPage.getIncludedFiles());
+        } else if (shouldRender) {
+            queue.rendered(page, () -> {
+                long start = System.currentTimeMillis();
+                Pair<ImageItem, LinkedHashMap<File, Long>> imageItemMapPair = renderImage(renderRequest, page, formatOption, partialSource);
+                PAGE_CACHE.put(renderRequest, partialSource, imageItemMapPair.first, imageItemMapPair.second);
+                logger.debug("processing of page ", page, " done in ", System.currentTimeMillis() - start, "ms");
+                return imageItemMapPair;
+            });
         } else if (obsolete) {
-            Pair<ImageItem, LinkedHashMap<File, Long>> imageItemMapPair = updateTitle(renderRequest, page, partialSource);
-            renderResult.addUpdatedTitle(imageItemMapPair.first);
-            renderResult.addIncludedFiles(imageItemMapPair.second);
+            queue.updatedTitle(page, () -> updateTitle(renderRequest, page, partialSource));
         } else {
             logger.debug("page ", page, " cached");
-            renderResult.addCachedImage(cachedItem.getImageItem(page));
+            queue.cached(cachedItem.getImageItem(page), null);
         }
-        logger.debug("processing of page ", page, " done in ", System.currentTimeMillis() - partialPageProcessingStart, "ms");
     }
 
     private Pair<ImageItem, LinkedHashMap<File, Long>> updateTitle(RenderRequest renderRequest, int page, String partialSource) {
         long start = System.currentTimeMillis();
         logger.debug("updating title, page ", page);
+        checkCancel(renderRequest);
+
+        ParsedDiagramCache.ParsedDiagram parsedDiagram = DIAGRAM_CACHE.take(renderRequest, partialSource);
+        String title = getTitle(parsedDiagram.getReader());
+        LinkedHashMap<File, Long> includedFiles = parsedDiagram.getIncludedFiles();
+        DIAGRAM_CACHE.release(renderRequest, partialSource, parsedDiagram);
 
-        SourceStringReader reader = newSourceStringReader(partialSource, renderRequest.isUseSettings(), renderRequest.getSourceFile());
-        String title = getTitle(reader);
-        Map<File, Long> includedFiles = Utils.getIncludedFiles(reader);
-        
         ImageItem imageItem = new ImageItem(renderRequest.getBaseDir(), renderRequest.getFormat(), renderRequest.getSource(), partialSource, page, RenderResult.TITLE_ONLY, null, null, RenderingType.PARTIAL, title, null);
 
         logger.debug("updateTitle " + (System.currentTimeMillis() - start));
 
-        return new Pair(imageItem, includedFiles);
+        return new Pair<>(imageItem, includedFiles);
     }
 
     private String getTitle(SourceStringReader reader) {
@@ -116,11 +129,14 @@ public class PlantUmlPartialRenderer extends PlantUmlNormalRenderer {
 
     private Pair<ImageItem, LinkedHashMap<File, Long>> renderImage(RenderRequest renderRequest, int page, FileFormatOption formatOption, String partialSource) {
         logger.debug("rendering partially, page ", page);
-        SourceStringReader reader = newSourceStringReader(partialSource, renderRequest.isUseSettings(), renderRequest.getSourceFile());
+        checkCancel(renderRequest);
+        ParsedDiagramCache.ParsedDiagram parsedDiagram = DIAGRAM_CACHE.take(renderRequest, partialSource);
+        SourceStringReader reader = parsedDiagram.getReader();
         DiagramInfo info = zoomDiagram(reader, renderRequest.getScaledZoom());
+        checkCancel(renderRequest);
         Integer totalPages = info.getTotalPages();
         DiagramInfo.Titles titles = info.getTitles();
-        LinkedHashMap<File, Long> includedFiles = Utils.getIncludedFiles(reader);
+        LinkedHashMap<File, Long> includedFiles = parsedDiagram.getIncludedFiles();
                         
         if (totalPages > 1) {
             throw new PartialRenderingException();
@@ -130,7 +146,8 @@ public class PlantUmlPartialRenderer extends PlantUmlNormalRenderer {
         }
         try {
             ImageItem item = generateImageItem(renderRequest, renderRequest.getSource(), partialSource, reader, formatOption, 0, page, RenderingType.PARTIAL, titles.get(0), info.getFilename());
-            ImageItem imageItem = new ImageItem(page, item, renderRequest.getFormat());
+            ImageItem imageItem = new ImageItem(page, item, item.getFormat());
+            DIAGRAM_CACHE.release(renderRequest, partialSource, parsedDiagram);
             return new Pair<>(imageItem, includedFiles);
         } catch (RenderingCancelledException e) {
             throw e;
@@ -11,9 +11,13 @@ import net.sourceforge.plantuml.sequencediagram.Event;
 import net.sourceforge.plantuml.sequencediagram.Newpage;
 import net.sourceforge.plantuml.sequencediagram.SequenceDiagram;
 import org.jetbrains.annotations.NotNull;
+import org.plantuml.idea.adapter.Format;
+import org.plantuml.idea.adapter.RenderEnvironment;
+import org.plantuml.idea.adapter.UnsavedIncludes;
 import org.plantuml.idea.adapter.Utils;
 import org.plantuml.idea.lang.annotator.LanguageDescriptor;
 import org.plantuml.idea.lang.settings.PlantUmlSettings;
+import org.plantuml.idea.plantuml.PlantUml;
 import org.plantuml.idea.rendering.*;
 
 import java.io.File;
@@ -24,27 +28,56 @@ import java.util.regex.Pattern;
 
 public class PlantUmlRendererUtil {
     private static final Logger logger = Logger.getInstance(PlantUmlRendererUtil.class);
+    public static final RenderingMetrics METRICS = RenderingMetrics.getInstance();
+
+    private static final String SMETANA_PRAGMA = "!pragma layout smetana";
 
     public static final Pattern NEW_PAGE_PATTERN = Pattern.compile("\\n\\s*@?(?i)(newpage)(\\p{Blank}+[^\\n]+|\\p{Blank}*)(?=\\n)");
 
     private static final PlantUmlPartialRenderer PARTIAL_RENDERER = new PlantUmlPartialRenderer();
     private static final PlantUmlNormalRenderer NORMAL_RENDERER = new PlantUmlNormalRenderer();
+    static final ParsedDiagramCache DIAGRAM_CACHE = new ParsedDiagramCache();
 
     public static void renderAndSave(RenderRequest renderRequest, String path, String pathPrefix)
             throws IOException {
-        Utils.prepareEnvironment(renderRequest);
+        renderRequest = UnsavedIncludes.of(renderRequest.getSourceFilePath()).inline(renderRequest);
 
-        NORMAL_RENDERER.renderAndSave(renderRequest,  path, pathPrefix);
+        try (RenderEnvironment.Lease ignored = Utils.prepareEnvironment(renderRequest)) {
+            NORMAL_RENDERER.renderAndSave(renderRequest, path, pathPrefix);
+        }
     }
 
     public static RenderResult render(RenderRequest renderRequest, RenderCacheItem cachedItem) {
-         Utils.prepareEnvironment(renderRequest);
+        UnsavedIncludes unsavedIncludes = UnsavedIncludes.of(renderRequest.getSourceFilePath());
+        renderRequest = unsavedIncludes.inline(renderRequest);
 
-        long start = System.currentTimeMillis();
+        RenderResult renderResult;
+        if (RenderWorkerPool.isEnabled()) {
+            renderResult = RenderWorkerPool.getInstance().render(renderRequest);
+        } else {
+            renderResult = renderInEnvironment(renderRequest, cachedItem);
+        }
+        unsavedIncludes.addInlinedFiles(renderResult);
+
+        return renderResult;
+    }
+
+    /**
+     * renders a request with already inlined unsaved includes, in this process
+     */
+    static RenderResult renderInEnvironment(RenderRequest renderRequest, RenderCacheItem cachedItem) {
+        try (RenderEnvironment.Lease ignored = Utils.prepareEnvironment(renderRequest)) {
+            return doRender(renderRequest, cachedItem);
+        }
+    }
+
+    private static RenderResult doRender(RenderRequest renderRequest, RenderCacheItem cachedItem) {
+        long start = System.nanoTime();
         String source = renderRequest.getSource();
         String[] sourceSplit = NEW_PAGE_PATTERN.split(source);
-        logger.debug("split done ", System.currentTimeMillis() - start, "ms");
+        logger.debug("split done ", METRICS.recordSince(RenderingMetrics.Phase.SPLIT, start), "ms");
 
+        checkCancel(renderRequest);
         boolean partialRender = sourceSplit[0].contains(LanguageDescriptor.IDEA_PARTIAL_RENDER);
         logger.debug("partialRender ", partialRender);
 
@@ -56,10 +89,32 @@ public class PlantUmlRendererUtil {
             renderResult = NORMAL_RENDERER.doRender(renderRequest, cachedItem, sourceSplit);
         }
         logger.debug("doRender ", System.currentTimeMillis() - start, "ms");
-            
         return renderResult;
     }
 
+    /**
+     * With links enabled, the PNG is rasterized from the SVG which is needed for the links anyway, so that the diagram
+     * is laid out once per page. The tiled display rasterizes the SVG itself.
+     */
+    public static boolean isRasterizedSvg(RenderRequest renderRequest) {
+        if (renderRequest.getFormat() != PlantUml.ImageFormat.PNG) {
+            return false;
+        }
+        if (renderRequest.isTiled()) {
+            return true;
+        }
+        return renderRequest.isRenderUrlLinks()
+                && (!renderRequest.isUseSettings() || PlantUmlSettings.getInstance().isRenderLinksFromSvg());
+    }
+
+    @NotNull
+    public static FileFormatOption imageFormatOption(RenderRequest renderRequest) {
+        if (isRasterizedSvg(renderRequest)) {
+            return new FileFormatOption(FileFormat.SVG);
+        }
+        return new FileFormatOption(Format.from(renderRequest));
+    }
+
     public static DiagramInfo zoomDiagram(SourceStringReader reader, int zoom) {
         logger.debug("zooming diagram");
         int totalPages = 0;
@@ -74,14 +129,14 @@ public class PlantUmlRendererUtil {
         for (int i = 0; i < blocks.size(); i++) {
             BlockUml block = blocks.get(i);
 
-            long start = System.currentTimeMillis();
+            long start = System.nanoTime();
             checkCancel();
             Diagram diagram = block.getDiagram();
-            logger.debug("getDiagram done in  ", System.currentTimeMillis() - start, " ms");
+            logger.debug("getDiagram done in  ", METRICS.recordSince(RenderingMetrics.Phase.GET_DIAGRAM, start), " ms");
 
-            start = System.currentTimeMillis();
+            start = System.nanoTime();
             zoomDiagram(diagram, zoom);
-            logger.debug("zoom diagram done in  ", System.currentTimeMillis() - start, " ms");
+            logger.debug("zoom diagram done in  ", METRICS.recordSince(RenderingMetrics.Phase.ZOOM, start), " ms");
             fileOrDirname = block.getFileOrDirname();
             totalPages = totalPages + diagram.getNbImages();
 
@@ -186,14 +241,28 @@ public class PlantUmlRendererUtil {
         }
     }
 
+    /**
+     * checkpoint between rendering phases, the request can be cancelled from another thread
+     */
+    public static void checkCancel(RenderRequest renderRequest) {
+        if (renderRequest.isCancelled()) {
+            throw new RenderingCancelledException();
+        }
+        checkCancel();
+    }
+
     public static SourceStringReader newSourceStringReader(String source, boolean useSettings, File file) {
-        long start = System.currentTimeMillis();
+        long start = System.nanoTime();
         List<String> configAsList;
         String encoding;
         if (useSettings) {
             PlantUmlSettings settings = PlantUmlSettings.getInstance();
             encoding = settings.getEncoding();
             configAsList = settings.getConfigAsList();
+            if (settings.isSmetanaLayout()) {
+                //before the config, so that it can choose another layout
+                configAsList.add(0, SMETANA_PRAGMA);
+            }
         } else {
             encoding = "UTF-8";
             configAsList = new ArrayList<>();
@@ -207,7 +276,7 @@ public class PlantUmlRendererUtil {
             defines = Defines.createEmpty();
         }
         SourceStringReader sourceStringReader = new SourceStringReader(defines, source, encoding, configAsList);
-        logger.debug("newSourceStringReader ", System.currentTimeMillis() - start, "ms");
+        logger.debug("newSourceStringReader ", METRICS.recordSince(RenderingMetrics.Phase.NEW_SOURCE_STRING_READER, start), "ms");
         return sourceStringReader;
     }
 
@@ -0,0 +1,165 @@
+package org.plantuml.idea.adapter.rendering;
+
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.util.ExceptionUtil;
+import com.intellij.util.xmlb.XmlSerializer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.external.Classloaders;
+import org.plantuml.idea.lang.settings.PlantUmlSettings;
+import org.plantuml.idea.plantuml.PlantUml;
+import org.plantuml.idea.rendering.RenderCommand;
+import org.plantuml.idea.rendering.RenderRequest;
+import org.plantuml.idea.rendering.RenderResult;
+import org.plantuml.idea.rendering.RenderResultSerializer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Main class of a render worker process started by {@link RenderWorkerPool}. Reads requests from the standard input
+ * and writes the results to the standard output, until the input is closed by the IDE.
+ * <p>
+ * A request is the serialized settings followed by the {@link RenderRequest}, with unsaved includes already inlined.
+ * A response is a status followed by the serialized {@link RenderResult} or the error.
+ */
+public class RenderWorker {
+    static final int OK = 0;
+    static final int FAILED = 1;
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty(Classloaders.RENDER_WORKER_PROPERTY, "true");
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        //PlantUML must not write into the responses
+        System.setOut(System.err);
+
+        String settings = null;
+        while (true) {
+            String requestSettings;
+            try {
+                requestSettings = readString(in);
+            } catch (EOFException e) {
+                return;
+            }
+            RenderRequest renderRequest = readRequest(in);
+            try {
+                if (!requestSettings.equals(settings)) {
+                    PlantUmlSettings.setStandalone(XmlSerializer.deserialize(JDOMUtil.load(requestSettings), PlantUmlSettings.class));
+                    settings = requestSettings;
+                }
+                RenderResult renderResult = PlantUmlRendererUtil.renderInEnvironment(renderRequest, null);
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                RenderResultSerializer.write(renderResult, new DataOutputStream(bytes));
+                out.writeInt(OK);
+                writeBytes(bytes.toByteArray(), out);
+            } catch (Throwable e) {
+                out.writeInt(FAILED);
+                writeString(ExceptionUtil.getThrowableText(e), out);
+                if (e instanceof OutOfMemoryError) {
+                    out.flush();
+                    System.exit(1);
+                }
+            }
+            out.flush();
+        }
+    }
+
+    static void writeRequest(@NotNull String settings, @NotNull RenderRequest renderRequest, @NotNull DataOutput out) throws IOException {
+        writeString(settings, out);
+        writeString(renderRequest.getSourceFilePath(), out);
+        writeString(renderRequest.getSource(), out);
+        out.writeUTF(renderRequest.getFormat().name());
+        out.writeInt(renderRequest.getPage());
+        out.writeInt(renderRequest.getScaledZoom());
+        out.writeBoolean(renderRequest.isRenderUrlLinks());
+        writeString(renderRequest.getReason() != null ? renderRequest.getReason().name() : null, out);
+        out.writeBoolean(renderRequest.isUseSettings());
+        out.writeBoolean(renderRequest.isTiled());
+        out.writeInt(renderRequest.getFirstRenderedPage());
+        out.writeInt(renderRequest.getLastRenderedPage());
+        out.writeInt(renderRequest.getPriorityPage());
+        out.writeBoolean(renderRequest.isRemainingPagesFollow());
+    }
+
+    @NotNull
+    static RenderRequest readRequest(@NotNull DataInput in) throws IOException {
+        String sourceFilePath = readString(in);
+        String source = readString(in);
+        PlantUml.ImageFormat format = PlantUml.ImageFormat.valueOf(in.readUTF());
+        int page = in.readInt();
+        int scaledZoom = in.readInt();
+        boolean renderUrlLinks = in.readBoolean();
+        String reason = readString(in);
+        RenderRequest renderRequest = new RenderRequest(sourceFilePath, source == null ? "" : source, format, page, scaledZoom, null, renderUrlLinks,
+                reason != null ? RenderCommand.Reason.valueOf(reason) : null);
+        renderRequest.setUseSettings(in.readBoolean());
+        renderRequest.setTiled(in.readBoolean());
+        int firstRenderedPage = in.readInt();
+        renderRequest.setRenderedPages(firstRenderedPage, in.readInt());
+        renderRequest.setPriorityPage(in.readInt());
+        renderRequest.setRemainingPagesFollow(in.readBoolean());
+        return renderRequest;
+    }
+
+    /**
+     * @throws RenderWorkerException when the rendering failed in the worker
+     */
+    @NotNull
+    static RenderResult readResponse(@NotNull DataInput in) throws IOException {
+        int status = in.readInt();
+        if (status == FAILED) {
+            throw new RenderWorkerException(readString(in));
+        } else if (status != OK) {
+            throw new IOException("invalid response status " + status);
+        }
+        byte[] bytes = readBytes(in);
+        if (bytes == null) {
+            throw new IOException("missing result");
+        }
+        return RenderResultSerializer.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * writeUTF is limited to 64KB, sources can be bigger
+     */
+    private static void writeString(@Nullable String s, DataOutput out) throws IOException {
+        writeBytes(s == null ? null : s.getBytes(StandardCharsets.UTF_8), out);
+    }
+
+    @Nullable
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(@Nullable byte[] bytes, DataOutput out) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    @Nullable
+    private static byte[] readBytes(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * the rendering failed, the worker is still usable
+     */
+    static class RenderWorkerException extends RuntimeException {
+        RenderWorkerException(String workerStackTrace) {
+            super("rendering failed in a render worker:\n" + workerStackTrace);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.plantuml.idea.adapter.rendering;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.lang.JavaVersion;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Class data sharing archives of the render workers - a worker started with an archive maps the classes of PlantUML
+ * instead of loading them from the jars, which makes its first rendering much faster.
+ * <p>
+ * The archive is named by the checksum of the jars on the classpath and the Java version, so a new one is created after
+ * an update. It is dumped by the first worker at its exit (-XX:ArchiveClassesAtExit, Java 13+), later workers use it.
+ * On older Java versions, or with a directory on the classpath (not supported by CDS), workers run without an archive.
+ * Archives of classpaths not used in this session are deleted when a new one is dumped.
+ */
+class RenderWorkerArchive {
+    private static final Logger LOG = Logger.getInstance(RenderWorkerArchive.class);
+    private static final String EXTENSION = ".jsa";
+    private static RenderWorkerArchive instance;
+
+    private final File dir;
+    private final Map<String, String> keys = new HashMap<>();
+    private final Set<String> dumping = new HashSet<>();
+
+    static synchronized RenderWorkerArchive getInstance() {
+        if (instance == null) {
+            instance = new RenderWorkerArchive(new File(PathManager.getSystemPath(), "plantuml4idea/worker-cds"));
+        }
+        return instance;
+    }
+
+    RenderWorkerArchive(File dir) {
+        this.dir = dir;
+    }
+
+    @NotNull
+    List<String> jvmOptions(@NotNull String classpath) {
+        return jvmOptions(classpath, JavaVersion.current().feature);
+    }
+
+    @NotNull
+    synchronized List<String> jvmOptions(@NotNull String classpath, int javaFeature) {
+        if (javaFeature < 13 || hasDirectory(classpath)) {
+            return Collections.emptyList();
+        }
+        String key = keys.get(classpath);
+        if (key == null) {
+            try {
+                key = key(classpath, System.getProperty("java.version"));
+            } catch (IOException e) {
+                LOG.warn("cannot compute the checksum of " + classpath, e);
+                return Collections.emptyList();
+            }
+            keys.put(classpath, key);
+        }
+        File archive = new File(dir, key + EXTENSION);
+        if (archive.isFile()) {
+            return Collections.singletonList("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+        }
+        if (!dumping.add(key)) {
+            return Collections.emptyList();
+        }
+        deleteObsolete(new HashSet<>(keys.values()));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            LOG.warn("cannot create " + dir);
+            return Collections.emptyList();
+        }
+        LOG.info("render worker will create class data archive " + archive);
+        return Collections.singletonList("-XX:ArchiveClassesAtExit=" + archive.getAbsolutePath());
+    }
+
+    /**
+     * @param liveKeys keys of the classpaths used in this session, their archives are kept
+     */
+    private void deleteObsolete(Set<String> liveKeys) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(EXTENSION));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!liveKeys.contains(name.substring(0, name.length() - EXTENSION.length()))) {
+                    LOG.debug("deleting obsolete class data archive ", file);
+                    FileUtil.delete(file);
+                }
+            }
+        }
+    }
+
+    private static boolean hasDirectory(String classpath) {
+        for (String entry : classpath.split(File.pathSeparator)) {
+            if (!entry.endsWith("*") && new File(entry).isDirectory()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * checksum of the content of the jars, of jars of wildcard entries only names, sizes and timestamps - the library
+     * directory of the IDE is too big to be read
+     */
+    @NotNull
+    static String key(@NotNull String classpath, @NotNull String javaVersion) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        for (String entry : classpath.split(File.pathSeparator)) {
+            if (entry.endsWith("*")) {
+                for (File jar : wildcardJars(new File(entry).getParentFile())) {
+                    crc.update((jar.getName() + "|" + jar.length() + "|" + jar.lastModified() + "\n").getBytes("UTF-8"));
+                }
+                continue;
+            }
+            File file = new File(entry);
+            if (!file.isFile()) {
+                continue;
+            }
+            try (InputStream in = new FileInputStream(file)) {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    crc.update(buffer, 0, read);
+                }
+            }
+        }
+        crc.update(javaVersion.getBytes("UTF-8"));
+        return "worker-" + Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * jars matched by a classpath wildcard, sorted by name
+     */
+    @NotNull
+    private static List<File> wildcardJars(File dir) {
+        File[] jars = dir.listFiles((d, name) -> name.endsWith(".jar") || name.endsWith(".JAR"));
+        if (jars == null) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(jars, Comparator.comparing(File::getName));
+        return Arrays.asList(jars);
+    }
+}
@@ -0,0 +1,292 @@
+package org.plantuml.idea.adapter.rendering;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.xmlb.XmlSerializer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.external.Classloaders;
+import org.plantuml.idea.lang.settings.PlantUmlSettings;
+import org.plantuml.idea.rendering.RenderRequest;
+import org.plantuml.idea.rendering.RenderResult;
+import org.plantuml.idea.rendering.RenderingCancelledException;
+import org.plantuml.idea.rendering.RenderingMetrics;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Render worker processes, so that PlantUML and its heap are isolated from the IDE - a huge diagram cannot cause long
+ * GC pauses or an OOM of the IDE. Enabled by {@link PlantUmlSettings#getRenderWorkersAsInt()}, a worker is started when
+ * all running workers are busy, up to that count. A worker which crashed is replaced by a new one on the next
+ * rendering. Idle workers which would not be used with changed settings are destroyed, and all workers when the
+ * application is disposed - busy ones when they finish.
+ * <p>
+ * Workers render without the cached item of the tool window, only with their own cache of parsed diagrams - a file is
+ * preferably rendered by the worker which rendered it last.
+ *
+ * @see RenderWorker
+ * @see RenderWorkerArchive
+ */
+public class RenderWorkerPool {
+    private static final Logger LOG = Logger.getInstance(RenderWorkerPool.class);
+    private static final RenderWorkerPool INSTANCE = new RenderWorkerPool();
+    private static final long CANCELLATION_CHECK_MS = 20;
+
+    private final List<Worker> idle = new ArrayList<>();
+    private int running;
+    private boolean registered;
+    private boolean disposed;
+
+    public static RenderWorkerPool getInstance() {
+        return INSTANCE;
+    }
+
+    public static boolean isEnabled() {
+        return PlantUmlSettings.getInstance().getRenderWorkersAsInt() > 0;
+    }
+
+    /**
+     * @param renderRequest with inlined unsaved includes
+     */
+    @NotNull
+    public RenderResult render(@NotNull RenderRequest renderRequest) {
+        PlantUmlSettings settings = PlantUmlSettings.getInstance();
+        String serializedSettings = JDOMUtil.writeElement(XmlSerializer.serialize(settings));
+        Worker worker = acquire(settings, renderRequest.getSourceFilePath());
+        try {
+            RenderResult renderResult = worker.render(serializedSettings, renderRequest);
+            release(worker, true);
+            return renderResult;
+        } catch (RenderingCancelledException e) {
+            //the worker finishes the rendering, its response must be read before the next request
+            AppExecutorUtil.getAppExecutorService().execute(() -> drain(worker));
+            throw e;
+        } catch (RenderWorker.RenderWorkerException e) {
+            release(worker, true);
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            release(worker, false);
+            throw new RuntimeException("render worker failed " + worker, e);
+        }
+    }
+
+    private void drain(Worker worker) {
+        try {
+            worker.readResponse(null);
+            release(worker, true);
+        } catch (RenderWorker.RenderWorkerException e) {
+            release(worker, true);
+        } catch (Throwable e) {
+            LOG.debug("render worker failed ", worker, " ", e);
+            release(worker, false);
+        }
+    }
+
+    /**
+     * destroys idle workers which would not be used - of another classpath or heap, or over the count
+     */
+    public synchronized void settingsChanged() {
+        if (idle.isEmpty()) {
+            return;
+        }
+        PlantUmlSettings settings = PlantUmlSettings.getInstance();
+        destroyIdle(key(settings, Classloaders.getWorkerClasspath()), settings.getRenderWorkersAsInt());
+        notifyAll();
+    }
+
+    private synchronized void dispose() {
+        LOG.debug("disposing ", idle.size(), " idle render workers, ", running, " running");
+        disposed = true;
+        for (Worker worker : idle) {
+            destroy(worker);
+        }
+        idle.clear();
+        notifyAll();
+    }
+
+    private void destroyIdle(String key, int maxWorkers) {
+        for (Iterator<Worker> iterator = idle.iterator(); iterator.hasNext(); ) {
+            Worker worker = iterator.next();
+            if (!worker.key.equals(key) || !worker.process.isAlive() || running > maxWorkers) {
+                iterator.remove();
+                destroy(worker);
+            }
+        }
+    }
+
+    private static String key(PlantUmlSettings settings, String classpath) {
+        return settings.getRenderWorkerHeapMBAsInt() + "|" + classpath;
+    }
+
+    private synchronized Worker acquire(PlantUmlSettings settings, String sourceFilePath) {
+        String classpath = Classloaders.getWorkerClasspath();
+        String key = key(settings, classpath);
+        while (true) {
+            if (disposed) {
+                throw new RenderingCancelledException();
+            }
+            destroyIdle(key, settings.getRenderWorkersAsInt());
+            Worker worker = null;
+            for (Worker w : idle) {
+                if (worker == null || sourceFilePath != null && sourceFilePath.equals(w.lastSourceFilePath)) {
+                    worker = w;
+                }
+            }
+            if (worker != null) {
+                idle.remove(worker);
+                worker.lastSourceFilePath = sourceFilePath;
+                return worker;
+            }
+            if (running < settings.getRenderWorkersAsInt()) {
+                if (!registered) {
+                    registered = true;
+                    Disposer.register(ApplicationManager.getApplication(), this::dispose);
+                }
+                worker = start(key, settings.getRenderWorkerHeapMBAsInt(), classpath);
+                worker.lastSourceFilePath = sourceFilePath;
+                running++;
+                return worker;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RenderingCancelledException(e);
+            }
+        }
+    }
+
+    private synchronized void release(Worker worker, boolean reusable) {
+        if (reusable && !disposed && worker.process.isAlive() && running <= PlantUmlSettings.getInstance().getRenderWorkersAsInt()) {
+            idle.add(worker);
+        } else {
+            destroy(worker);
+        }
+        notifyAll();
+    }
+
+    private void destroy(Worker worker) {
+        LOG.debug("destroying ", worker);
+        running--;
+        worker.process.destroy();
+    }
+
+    @NotNull
+    private static Worker start(String key, int heapMB, String classpath) {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath());
+        command.add("-Xmx" + heapMB + "m");
+        command.add("-Djava.awt.headless=true");
+        List<String> archiveOptions = RenderWorkerArchive.getInstance().jvmOptions(classpath);
+        command.addAll(archiveOptions);
+        command.add("-cp");
+        command.add(classpath);
+        command.add(RenderWorker.class.getName());
+
+        File log = new File(PathManager.getLogPath(), "plantuml-worker.log");
+        try {
+            Process process = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.appendTo(log))
+                    .start();
+            Worker worker = new Worker(key, process, archiveOptions);
+            LOG.info("started " + worker + ", heap " + heapMB + "MB, " + archiveOptions + ", log " + log);
+            return worker;
+        } catch (IOException e) {
+            throw new RuntimeException("cannot start render worker " + command, e);
+        }
+    }
+
+    private static class Worker {
+        private final String key;
+        private final Process process;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+        private final List<String> archiveOptions;
+        private final long startNanos = System.nanoTime();
+        private boolean rendered;
+        @Nullable
+        private String lastSourceFilePath;
+        /**
+         * blocking read of the response, kept when the rendering is cancelled - the response is drained later
+         */
+        @Nullable
+        private Future<RenderResult> response;
+
+        Worker(String key, Process process, List<String> archiveOptions) {
+            this.key = key;
+            this.process = process;
+            this.archiveOptions = archiveOptions;
+            this.out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        RenderResult render(String serializedSettings, RenderRequest renderRequest) throws IOException {
+            RenderWorker.writeRequest(serializedSettings, renderRequest, out);
+            out.flush();
+            try {
+                return readResponse(renderRequest);
+            } finally {
+                if (!rendered) {
+                    rendered = true;
+                    //cold start, with or without the class data archive
+                    long ms = RenderingMetrics.getInstance().recordSince(RenderingMetrics.Phase.WORKER_FIRST_RENDER, startNanos);
+                    LOG.info("first rendering of " + this + " done " + ms + "ms after start, " + archiveOptions);
+                }
+            }
+        }
+
+        /**
+         * @param renderRequest checked for cancellation while waiting, null = wait until the worker responds or dies
+         */
+        RenderResult readResponse(@Nullable RenderRequest renderRequest) throws IOException {
+            if (response == null) {
+                //ends with EOF when the worker dies
+                response = AppExecutorUtil.getAppExecutorService().submit(() -> RenderWorker.readResponse(in));
+            }
+            while (true) {
+                if (renderRequest != null && renderRequest.isCancelled()) {
+                    throw new RenderingCancelledException();
+                }
+                try {
+                    RenderResult renderResult = response.get(CANCELLATION_CHECK_MS, TimeUnit.MILLISECONDS);
+                    response = null;
+                    return renderResult;
+                } catch (TimeoutException e) {
+                    //check the cancellation
+                } catch (InterruptedException e) {
+                    if (renderRequest != null) {
+                        Thread.currentThread().interrupt();
+                        throw new RenderingCancelledException(e);
+                    }
+                } catch (ExecutionException e) {
+                    response = null;
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IOException(cause);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "RenderWorker{" + process + "}";
+        }
+    }
+}
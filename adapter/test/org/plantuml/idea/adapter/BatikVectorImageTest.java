@@ -0,0 +1,29 @@
+package org.plantuml.idea.adapter;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatikVectorImageTest {
+    private static final String SVG = "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"100\" height=\"50\">"
+            + "<rect x=\"50\" y=\"0\" width=\"50\" height=\"50\" fill=\"#FF0000\"/></svg>";
+
+    @Test
+    public void rendersScaledTiles() throws Exception {
+        BatikVectorImage image = new BatikVectorImage(new ByteArrayInputStream(SVG.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(100, image.getWidth(), 0.001);
+        assertEquals(50, image.getHeight(), 0.001);
+
+        BufferedImage right = image.renderTile(new Rectangle(100, 0, 100, 100), 2);
+        assertEquals(100, right.getWidth());
+        assertEquals(0xFFFF0000, right.getRGB(50, 50));
+
+        BufferedImage left = image.renderTile(new Rectangle(0, 0, 100, 100), 2);
+        assertEquals(0, left.getRGB(50, 50) >>> 24);
+    }
+}
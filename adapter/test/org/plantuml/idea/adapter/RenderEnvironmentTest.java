@@ -0,0 +1,121 @@
+package org.plantuml.idea.adapter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RenderEnvironmentTest {
+
+    @Test
+    public void sameEnvironmentIsShared() {
+        RenderEnvironment environment = new RenderEnvironment();
+        List<String> applied = new ArrayList<>();
+
+        RenderEnvironment.Lease first = environment.enter("a", () -> applied.add("a"));
+        RenderEnvironment.Lease second = environment.enter("a", () -> applied.add("a"));
+        assertEquals(2, environment.getActive());
+        first.close();
+        second.close();
+        first.close();
+
+        assertEquals(0, environment.getActive());
+        assertEquals(1, applied.size());
+    }
+
+    @Test
+    public void differentEnvironmentWaitsForActiveRenderings() throws Exception {
+        RenderEnvironment environment = new RenderEnvironment();
+        List<String> applied = new ArrayList<>();
+        RenderEnvironment.Lease lease = environment.enter("a", () -> applied.add("a"));
+
+        CountDownLatch entered = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try (RenderEnvironment.Lease ignored = environment.enter("b", () -> applied.add("b"))) {
+                entered.countDown();
+            }
+        });
+        thread.start();
+
+        assertFalse(entered.await(200, TimeUnit.MILLISECONDS));
+        lease.close();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        thread.join();
+
+        assertEquals(2, applied.size());
+        assertEquals("b", applied.get(1));
+    }
+
+    @Test
+    public void waitingRenderingIsNotOvertaken() throws Exception {
+        RenderEnvironment environment = new RenderEnvironment();
+        RenderEnvironment.Lease lease = environment.enter("a", () -> {
+        });
+
+        CountDownLatch enteredB = new CountDownLatch(1);
+        CountDownLatch closeB = new CountDownLatch(1);
+        Thread b = new Thread(() -> {
+            try (RenderEnvironment.Lease ignored = environment.enter("b", () -> {
+            })) {
+                enteredB.countDown();
+                closeB.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        b.start();
+        waitForWaiting(b);
+
+        CountDownLatch enteredA = new CountDownLatch(1);
+        Thread a = new Thread(() -> {
+            try (RenderEnvironment.Lease ignored = environment.enter("a", () -> {
+            })) {
+                enteredA.countDown();
+            }
+        });
+        a.start();
+
+        assertFalse(enteredA.await(200, TimeUnit.MILLISECONDS));
+        lease.close();
+        assertTrue(enteredB.await(5, TimeUnit.SECONDS));
+        assertEquals(1, enteredA.getCount());
+        closeB.countDown();
+        assertTrue(enteredA.await(5, TimeUnit.SECONDS));
+        a.join();
+        b.join();
+    }
+
+    @Test
+    public void waitingRenderingIsNotOvertakenWhenNothingIsActive() throws Exception {
+        RenderEnvironment environment = new RenderEnvironment();
+        List<String> applied = Collections.synchronizedList(new ArrayList<>());
+        RenderEnvironment.Lease lease = environment.enter("a", () -> applied.add("a"));
+
+        Thread b = new Thread(() -> environment.enter("b", () -> applied.add("b")).close());
+        b.start();
+        while (!environment.isWaiting("b")) {
+            Thread.sleep(10);
+        }
+
+        //b is notified, but cannot wake up before a new rendering of the current environment arrives
+        synchronized (environment) {
+            lease.close();
+            environment.enter("a", () -> applied.add("a")).close();
+        }
+        b.join();
+
+        assertEquals(Arrays.asList("a", "b", "a"), applied);
+    }
+
+    private static void waitForWaiting(Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.plantuml.idea.adapter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UnsavedIncludesTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void inlinesUnsavedInclude() throws Exception {
+        File dir = folder.newFolder("diagrams");
+        File common = new File(dir, "common.iuml");
+        Map<File, String> texts = new HashMap<>();
+        texts.put(UnsavedIncludes.normalize(common), "@startuml\nclass A\n@enduml");
+
+        UnsavedIncludes includes = new UnsavedIncludes(texts, Collections.emptyList());
+        String source = includes.inlineSource("@startuml\n!include common.iuml\nA -> B\n@enduml", dir);
+
+        assertEquals("@startuml\nclass A\nA -> B\n@enduml", source);
+        assertEquals(Collections.singleton(UnsavedIncludes.normalize(common)), includes.getInlinedFiles());
+    }
+
+    @Test
+    public void savedIncludesAreLeftToPlantUml() throws Exception {
+        File dir = folder.newFolder("diagrams");
+        Map<File, String> texts = new HashMap<>();
+        texts.put(UnsavedIncludes.normalize(new File(dir, "other.iuml")), "class B");
+
+        UnsavedIncludes includes = new UnsavedIncludes(texts, Collections.emptyList());
+        String source = "@startuml\n!include common.iuml\n!include <C4/C4_Container>\n@enduml";
+
+        assertEquals(source, includes.inlineSource(source, dir));
+        assertTrue(includes.getInlinedFiles().isEmpty());
+    }
+
+    @Test
+    public void nestedIncludesAreRelativeToTheInlinedFile() throws Exception {
+        File dir = folder.newFolder("diagrams");
+        File lib = folder.newFolder("diagrams", "lib");
+        File style = new File(lib, "style.iuml");
+        assertTrue(style.createNewFile());
+        Map<File, String> texts = new HashMap<>();
+        texts.put(UnsavedIncludes.normalize(new File(lib, "common.iuml")), "!include style.iuml\nclass A");
+
+        UnsavedIncludes includes = new UnsavedIncludes(texts, Collections.emptyList());
+        String source = includes.inlineSource("@startuml\n!include lib/common.iuml\n@enduml", dir);
+
+        assertEquals("@startuml\n!include " + UnsavedIncludes.normalize(style).getPath() + "\nclass A\n@enduml", source);
+    }
+
+    @Test
+    public void unsavedIncludeOfSavedIncludeIsInlined() throws Exception {
+        File dir = folder.newFolder("diagrams");
+        File saved = new File(dir, "saved.iuml");
+        write(saved, "@startuml\n!include unsaved.iuml\nclass S\n@enduml");
+        File other = new File(dir, "other.iuml");
+        write(other, "class O");
+        File unsaved = UnsavedIncludes.normalize(new File(dir, "unsaved.iuml"));
+        Map<File, String> texts = new HashMap<>();
+        texts.put(unsaved, "class U");
+
+        UnsavedIncludes includes = new UnsavedIncludes(texts, Collections.emptyList());
+        String source = includes.inlineSource("@startuml\n!include saved.iuml\n!include other.iuml\n@enduml", dir);
+
+        assertEquals("@startuml\nclass U\nclass S\n!include other.iuml\n@enduml", source);
+        assertEquals(Collections.singleton(unsaved), includes.getInlinedFiles());
+        assertEquals(Collections.singleton(UnsavedIncludes.normalize(saved)), includes.getInlinedSavedFiles());
+    }
+
+    @Test
+    public void partialIncludesAreSaved() throws Exception {
+        File dir = folder.newFolder("diagrams");
+        File common = UnsavedIncludes.normalize(new File(dir, "common.iuml"));
+        Map<File, String> texts = new HashMap<>();
+        texts.put(common, "@startuml(id=A)\nclass A\n@enduml");
+
+        UnsavedIncludes includes = new UnsavedIncludes(texts, Collections.emptyList());
+        includes.inlineSource("@startuml\n!include common.iuml!A\n!include_once common.iuml\n!include_once common.iuml\n@enduml", dir);
+
+        assertEquals(Collections.singleton(common), includes.getFilesToSave());
+        assertEquals(Collections.singleton(common), includes.getInlinedFiles());
+    }
+
+    @Test
+    public void recursiveIncludeIsNotInlinedAgain() throws Exception {
+        File dir = folder.newFolder("diagrams");
+        Map<File, String> texts = new HashMap<>();
+        texts.put(UnsavedIncludes.normalize(new File(dir, "a.iuml")), "class A\n!include a.iuml");
+
+        UnsavedIncludes includes = new UnsavedIncludes(texts, Collections.emptyList());
+        String source = includes.inlineSource("!include a.iuml", dir);
+
+        assertEquals("class A\n!include a.iuml", source);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes("UTF-8"));
+        }
+    }
+}
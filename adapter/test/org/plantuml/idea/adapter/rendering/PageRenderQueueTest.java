@@ -0,0 +1,100 @@
+package org.plantuml.idea.adapter.rendering;
+
+import com.intellij.openapi.util.Pair;
+import org.junit.Test;
+import org.plantuml.idea.plantuml.PlantUml;
+import org.plantuml.idea.rendering.ImageItem;
+import org.plantuml.idea.rendering.RenderResult;
+import org.plantuml.idea.rendering.RenderingCancelledException;
+import org.plantuml.idea.rendering.RenderingType;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PageRenderQueueTest {
+
+    @Test
+    public void pagesAreAddedInPageOrder() {
+        PageRenderQueue queue = new PageRenderQueue(null, 2, false);
+        queue.cached(item(0, "cached"), null);
+        queue.rendered(1, () -> new Pair<>(item(1, "rendered"), null));
+        queue.updatedTitle(item(2, RenderResult.TITLE_ONLY));
+        queue.rendered(3, () -> new Pair<>(item(3, "rendered"), null));
+
+        RenderResult renderResult = new RenderResult(RenderingType.NORMAL, 4);
+        queue.renderInto(renderResult);
+
+        List<ImageItem> imageItems = renderResult.getImageItems();
+        assertEquals(4, imageItems.size());
+        for (int i = 0; i < imageItems.size(); i++) {
+            assertEquals(i, imageItems.get(i).getPage());
+        }
+        assertEquals(2, renderResult.getRendered());
+        assertEquals(1, renderResult.getCached());
+        assertEquals(1, renderResult.getUpdatedTitles());
+    }
+
+    @Test
+    public void pagesClosestToPriorityPageAreRenderedFirst() {
+        List<Integer> executed = new ArrayList<>();
+        PageRenderQueue queue = new PageRenderQueue(null, 3, false);
+        for (int i = 0; i < 6; i++) {
+            int page = i;
+            queue.rendered(page, () -> {
+                executed.add(page);
+                return new Pair<>(item(page, "rendered"), null);
+            });
+        }
+
+        queue.renderInto(new RenderResult(RenderingType.NORMAL, 6));
+
+        assertEquals(Arrays.asList(3, 2, 4, 1, 5, 0), executed);
+    }
+
+    @Test
+    public void includedFilesAreCollected() {
+        LinkedHashMap<File, Long> includedFiles = new LinkedHashMap<>();
+        includedFiles.put(new File("included.puml"), 1L);
+        PageRenderQueue queue = new PageRenderQueue(null, -1, false);
+        queue.rendered(0, () -> new Pair<>(item(0, "rendered"), includedFiles));
+
+        RenderResult renderResult = new RenderResult(RenderingType.PARTIAL, 1);
+        queue.renderInto(renderResult);
+
+        assertTrue(renderResult.includedFilesContains(new File("included.puml")));
+    }
+
+    @Test
+    public void cancellationStopsRemainingPages() {
+        List<Integer> executed = new ArrayList<>();
+        PageRenderQueue queue = new PageRenderQueue(null, -1, false);
+        for (int i = 0; i < 3; i++) {
+            int page = i;
+            queue.rendered(page, () -> {
+                executed.add(page);
+                if (page == 1) {
+                    throw new RenderingCancelledException();
+                }
+                return new Pair<>(item(page, "rendered"), null);
+            });
+        }
+
+        RenderResult renderResult = new RenderResult(RenderingType.NORMAL, 3);
+        try {
+            queue.renderInto(renderResult);
+            fail();
+        } catch (RenderingCancelledException e) {
+            assertEquals(Arrays.asList(0, 1), executed);
+            assertTrue(renderResult.getImageItems().isEmpty());
+        }
+    }
+
+    private static ImageItem item(int page, String description) {
+        return new ImageItem(null, PlantUml.ImageFormat.PNG, "source", "page" + page, page, description, null, null, RenderingType.NORMAL, null, null);
+    }
+}
@@ -0,0 +1,82 @@
+package org.plantuml.idea.adapter.rendering;
+
+import net.sourceforge.plantuml.AbstractPSystem;
+import org.junit.Test;
+import org.plantuml.idea.plantuml.PlantUml;
+import org.plantuml.idea.rendering.RenderCommand;
+import org.plantuml.idea.rendering.RenderRequest;
+
+import static org.junit.Assert.*;
+
+public class ParsedDiagramCacheTest {
+    private static final String SOURCE = "@startuml\nAlice -> Bob : hello\n@enduml";
+
+    @Test
+    public void diagramIsReusedWithOriginalScale() {
+        ParsedDiagramCache cache = new ParsedDiagramCache();
+        RenderRequest request = request(100, RenderCommand.Reason.SOURCE_PAGE_ZOOM);
+        ParsedDiagramCache.ParsedDiagram parsedDiagram = cache.take(request, SOURCE);
+        PlantUmlRendererUtil.zoomDiagram(parsedDiagram.getReader(), 200);
+        assertNotNull(diagram(parsedDiagram).getScale());
+        cache.release(request, SOURCE, parsedDiagram);
+
+        ParsedDiagramCache.ParsedDiagram reused = cache.take(request(300, RenderCommand.Reason.SOURCE_PAGE_ZOOM), SOURCE);
+        assertSame(parsedDiagram, reused);
+        assertNull(diagram(reused).getScale());
+        //taken diagrams are not shared
+        assertEquals(0, cache.size());
+        assertNotSame(reused, cache.take(request, SOURCE));
+    }
+
+    @Test
+    public void refreshParsesAgain() {
+        ParsedDiagramCache cache = new ParsedDiagramCache();
+        RenderRequest request = request(100, RenderCommand.Reason.SOURCE_PAGE_ZOOM);
+        ParsedDiagramCache.ParsedDiagram parsedDiagram = cache.take(request, SOURCE);
+        cache.release(request, SOURCE, parsedDiagram);
+
+        assertNotSame(parsedDiagram, cache.take(request(100, RenderCommand.Reason.REFRESH), SOURCE));
+        assertNotSame(parsedDiagram, cache.take(request, SOURCE + "\n"));
+    }
+
+    @Test
+    public void diagramOfVisiblePagesIsKeptForRemainingPages() {
+        ParsedDiagramCache cache = new ParsedDiagramCache();
+        RenderRequest visible = request(100, RenderCommand.Reason.REFRESH);
+        visible.setRemainingPagesFollow(true);
+        ParsedDiagramCache.ParsedDiagram parsedDiagram = cache.take(visible, SOURCE);
+        cache.release(visible, SOURCE, parsedDiagram);
+        assertTrue(cache.isPinned(parsedDiagram));
+
+        assertSame(parsedDiagram, cache.take(request(100, RenderCommand.Reason.SOURCE_PAGE_ZOOM), SOURCE));
+        assertFalse(cache.isPinned(parsedDiagram));
+    }
+
+    @Test
+    public void pinnedDiagramIsCachedAfterNextRendering() {
+        ParsedDiagramCache cache = new ParsedDiagramCache();
+        RenderRequest visible = request(100, RenderCommand.Reason.SOURCE_PAGE_ZOOM);
+        visible.setRemainingPagesFollow(true);
+        ParsedDiagramCache.ParsedDiagram parsedDiagram = cache.take(visible, SOURCE);
+        cache.release(visible, SOURCE, parsedDiagram);
+
+        String other = SOURCE + "
+";
+        RenderRequest request = request(100, RenderCommand.Reason.SOURCE_PAGE_ZOOM);
+        cache.release(request, other, cache.take(request, other));
+
+        assertFalse(cache.isPinned(parsedDiagram));
+        assertEquals(2, cache.size());
+        assertSame(parsedDiagram, cache.take(request, SOURCE));
+    }
+
+    private static AbstractPSystem diagram(ParsedDiagramCache.ParsedDiagram parsedDiagram) {
+        return (AbstractPSystem) parsedDiagram.getReader().getBlocks().get(0).getDiagram();
+    }
+
+    private static RenderRequest request(int zoom, RenderCommand.Reason reason) {
+        RenderRequest request = new RenderRequest("dir/a.puml", SOURCE, PlantUml.ImageFormat.PNG, -1, zoom, 0, false, reason);
+        request.setUseSettings(false);
+        return request;
+    }
+}
@@ -0,0 +1,82 @@
+package org.plantuml.idea.adapter.rendering;
+
+import org.junit.Test;
+import org.plantuml.idea.plantuml.PlantUml;
+import org.plantuml.idea.rendering.ImageItem;
+import org.plantuml.idea.rendering.RenderCommand;
+import org.plantuml.idea.rendering.RenderRequest;
+import org.plantuml.idea.rendering.RenderingType;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+
+import static org.junit.Assert.*;
+
+public class PartialRenderCacheTest {
+    private static final String PAGE = "@startuml\nlegend\nshared\nendlegend\n@enduml";
+
+    @Test
+    public void pageIsSharedBetweenFiles() {
+        PartialRenderCache cache = new PartialRenderCache();
+        RenderRequest first = request("dir/a.puml", 100);
+        cache.put(first, PAGE, item(first, 0), new LinkedHashMap<>());
+
+        RenderRequest second = request("dir/b.puml", 100);
+        PartialRenderCache.Entry entry = cache.get(second, PAGE, 3);
+        assertNotNull(entry);
+        assertEquals(3, entry.getImageItem().getPage());
+        assertEquals(second.getSource(), entry.getImageItem().getDocumentSource());
+
+        assertNull(cache.get(request("dir/b.puml", 200), PAGE, 0));
+        assertNotNull(cache.get(request("other/b.puml", 100), PAGE, 0));
+    }
+
+    @Test
+    public void pageWithRelativeIncludeIsSharedWithinDirectory() {
+        PartialRenderCache cache = new PartialRenderCache();
+        String page = "@startuml\n!include common.iuml\n@enduml";
+        RenderRequest first = request("dir/a.puml", 100);
+        cache.put(first, page, item(first, 0), new LinkedHashMap<>());
+
+        assertNotNull(cache.get(request("dir/b.puml", 100), page, 0));
+        assertNull(cache.get(request("other/b.puml", 100), page, 0));
+
+        String absolute = "@startuml\n!include /shared/common.iuml\n@enduml";
+        cache.put(first, absolute, item(first, 0), new LinkedHashMap<>());
+        assertNotNull(cache.get(request("other/b.puml", 100), absolute, 0));
+    }
+
+    @Test
+    public void changedIncludeInvalidatesPage() {
+        PartialRenderCache cache = new PartialRenderCache();
+        RenderRequest request = request("dir/a.puml", 100);
+        LinkedHashMap<File, Long> includedFiles = new LinkedHashMap<>();
+        includedFiles.put(new File("dir/missing.iuml"), 42L);
+        cache.put(request, PAGE, item(request, 0), includedFiles);
+
+        assertNull(cache.get(request, PAGE, 0));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void evictsBySize() {
+        PartialRenderCache cache = new PartialRenderCache(10);
+        RenderRequest request = request("dir/a.puml", 100);
+        cache.put(request, "a", item(request, 0), new LinkedHashMap<>());
+        cache.put(request, "b", item(request, 0), new LinkedHashMap<>());
+
+        assertEquals(1, cache.size());
+        assertNull(cache.get(request, "a", 0));
+        assertNotNull(cache.get(request, "b", 0));
+    }
+
+    private static RenderRequest request(String file, int zoom) {
+        return new RenderRequest(file, "source of " + file, PlantUml.ImageFormat.PNG, -1, zoom, 0, false, RenderCommand.Reason.SOURCE_PAGE_ZOOM);
+    }
+
+    private static ImageItem item(RenderRequest request, int page) {
+        return new ImageItem(PlantUml.ImageFormat.PNG, request.getSource(), PAGE, page, "ok", new byte[8],
+                Collections.emptyList(), RenderingType.PARTIAL, null, null);
+    }
+}
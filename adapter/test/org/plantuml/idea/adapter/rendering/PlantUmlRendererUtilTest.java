@@ -4,9 +4,11 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.plantuml.idea.adapter.FacadeImpl;
 import org.plantuml.idea.plantuml.PlantUml;
+import org.plantuml.idea.rendering.RenderCacheItem;
 import org.plantuml.idea.rendering.RenderCommand;
 import org.plantuml.idea.rendering.RenderRequest;
 import org.plantuml.idea.rendering.RenderResult;
+import org.plantuml.idea.rendering.RenderingMetrics;
 
 import java.io.File;
 
@@ -33,6 +35,30 @@ public class PlantUmlRendererUtilTest {
         Assert.assertTrue(render.hasError());
     }
 
+    @Test
+    public void visiblePagesFirst() throws Exception {
+        String source = "@startuml\na->b\nnewpage\nb->c\nnewpage\nc->d\n@enduml";
+        RenderRequest visible = new RenderRequest("dir/visible.puml", source, PlantUml.ImageFormat.PNG, -1, 100, 0, false, RenderCommand.Reason.REFRESH);
+        visible.setRenderedPages(1, 1);
+        visible.setRemainingPagesFollow(true);
+        RenderResult visibleResult = new FacadeImpl().render(visible, null);
+        Assert.assertEquals(3, visibleResult.getPages());
+        Assert.assertEquals(1, visibleResult.getRendered());
+        Assert.assertEquals(2, visibleResult.getUpdatedTitles());
+        Assert.assertTrue(visibleResult.getImageItem(1).hasImageBytes());
+
+        RenderingMetrics metrics = RenderingMetrics.getInstance();
+        long parsed = metrics.getCount(RenderingMetrics.Counter.DIAGRAM_CACHE_MISS);
+        RenderRequest remaining = new RenderRequest("dir/visible.puml", source, PlantUml.ImageFormat.PNG, -1, 100, 0, false, RenderCommand.Reason.SOURCE_PAGE_ZOOM);
+        remaining.setPriorityPage(1);
+        RenderResult result = new FacadeImpl().render(remaining, new RenderCacheItem(visible, visibleResult, -1, 0));
+
+        Assert.assertEquals(parsed, metrics.getCount(RenderingMetrics.Counter.DIAGRAM_CACHE_MISS));
+        Assert.assertEquals(1, result.getCached());
+        Assert.assertEquals(2, result.getRendered());
+        Assert.assertSame(visibleResult.getImageItem(1), result.getImageItem(1));
+    }
+
     @Test
     public void splitNewPage() throws Exception {
         String[] strings = NEW_PAGE_PATTERN.split("@startuml\n" +
@@ -0,0 +1,112 @@
+package org.plantuml.idea.adapter.rendering;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RenderWorkerArchiveTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keyChangesWithJarContent() throws Exception {
+        File dir = folder.newFolder("plantuml-cds");
+        File jar = new File(dir, "plantuml.jar");
+        write(jar, "1");
+        String classpath = jar.getAbsolutePath() + File.pathSeparator + new File(dir, "*").getAbsolutePath();
+
+        String key = RenderWorkerArchive.key(classpath, "13");
+        assertEquals(key, RenderWorkerArchive.key(classpath, "13"));
+        assertFalse(key.equals(RenderWorkerArchive.key(classpath, "14")));
+        write(jar, "2");
+        assertFalse(key.equals(RenderWorkerArchive.key(classpath, "13")));
+    }
+
+    @Test
+    public void keyChangesWithWildcardJars() throws Exception {
+        File dir = folder.newFolder("plantuml-cds");
+        File lib = folder.newFolder("lib");
+        File jar = new File(dir, "plantuml.jar");
+        write(jar, "1");
+        write(new File(lib, "a.jar"), "a");
+        String classpath = jar.getAbsolutePath() + File.pathSeparator + new File(lib, "*").getAbsolutePath();
+
+        String key = RenderWorkerArchive.key(classpath, "13");
+        write(new File(lib, "not-a-jar.txt"), "x");
+        assertEquals(key, RenderWorkerArchive.key(classpath, "13"));
+        write(new File(lib, "b.jar"), "b");
+        String withB = RenderWorkerArchive.key(classpath, "13");
+        assertFalse(key.equals(withB));
+        write(new File(lib, "b.jar"), "bb");
+        assertFalse(withB.equals(RenderWorkerArchive.key(classpath, "13")));
+    }
+
+    @Test
+    public void archiveIsDumpedOnceThenUsed() throws Exception {
+        File dir = folder.newFolder("plantuml-cds");
+        File jar = new File(dir, "plantuml.jar");
+        write(jar, "1");
+        File archiveDir = new File(dir, "cds");
+        RenderWorkerArchive archive = new RenderWorkerArchive(archiveDir);
+
+        assertTrue(archive.jvmOptions(jar.getAbsolutePath(), 11).isEmpty());
+
+        List<String> dump = archive.jvmOptions(jar.getAbsolutePath(), 13);
+        assertEquals(1, dump.size());
+        assertTrue(dump.get(0).startsWith("-XX:ArchiveClassesAtExit="));
+        assertTrue(archive.jvmOptions(jar.getAbsolutePath(), 13).isEmpty());
+
+        write(archiveFile(dump), "archive");
+        List<String> use = archive.jvmOptions(jar.getAbsolutePath(), 13);
+        assertEquals(1, use.size());
+        assertTrue(use.get(0).startsWith("-XX:SharedArchiveFile="));
+    }
+
+    @Test
+    public void onlyArchivesOfUnusedClasspathsAreDeleted() throws Exception {
+        File dir = folder.newFolder("plantuml-cds");
+        File bundled = new File(dir, "bundled.jar");
+        write(bundled, "1");
+        File custom = new File(dir, "custom.jar");
+        write(custom, "2");
+        File archiveDir = new File(dir, "cds");
+        RenderWorkerArchive archive = new RenderWorkerArchive(archiveDir);
+
+        File bundledArchive = archiveFile(archive.jvmOptions(bundled.getAbsolutePath(), 13));
+        write(bundledArchive, "archive");
+        File stale = new File(archiveDir, "worker-0.jsa");
+        write(stale, "stale");
+        archive.jvmOptions(custom.getAbsolutePath(), 13);
+
+        assertTrue(bundledArchive.isFile());
+        assertFalse(stale.exists());
+    }
+
+    @Test
+    public void noArchiveWithDirectoryOnClasspath() throws Exception {
+        File dir = folder.newFolder("plantuml-cds");
+        File classes = folder.newFolder("classes");
+        write(new File(classes, "A.class"), "A");
+        RenderWorkerArchive archive = new RenderWorkerArchive(new File(dir, "cds"));
+
+        assertTrue(archive.jvmOptions(classes.getAbsolutePath(), 13).isEmpty());
+    }
+
+    private static File archiveFile(List<String> options) {
+        String option = options.get(0);
+        return new File(option.substring(option.indexOf('=') + 1));
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes("UTF-8"));
+        }
+    }
+}
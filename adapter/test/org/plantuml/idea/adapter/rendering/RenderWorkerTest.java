@@ -0,0 +1,63 @@
+package org.plantuml.idea.adapter.rendering;
+
+import org.junit.Test;
+import org.plantuml.idea.plantuml.PlantUml;
+import org.plantuml.idea.rendering.RenderCommand;
+import org.plantuml.idea.rendering.RenderRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import static org.junit.Assert.*;
+
+public class RenderWorkerTest {
+
+    @Test
+    public void requestIsTransferred() throws Exception {
+        RenderRequest request = new RenderRequest("dir/a.puml", "@startuml\nAlice -> Bob\n@enduml", PlantUml.ImageFormat.PNG, -1, 150, 3, true, RenderCommand.Reason.REFRESH);
+        request.setTiled(true);
+        request.setRenderedPages(2, 5);
+        request.setPriorityPage(3);
+        request.setRemainingPagesFollow(true);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RenderWorker.writeRequest("<settings/>", request, new DataOutputStream(bytes));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        in.readFully(new byte[in.readInt()]);
+        RenderRequest read = RenderWorker.readRequest(in);
+
+        assertEquals(request.getSourceFilePath(), read.getSourceFilePath());
+        assertEquals(request.getSource(), read.getSource());
+        assertEquals(PlantUml.ImageFormat.PNG, read.getFormat());
+        assertEquals(-1, read.getPage());
+        assertEquals(150, read.getScaledZoom());
+        assertTrue(read.isRenderUrlLinks());
+        assertEquals(RenderCommand.Reason.REFRESH, read.getReason());
+        assertTrue(read.isUseSettings());
+        assertTrue(read.isTiled());
+        assertEquals(2, read.getFirstRenderedPage());
+        assertEquals(5, read.getLastRenderedPage());
+        assertEquals(3, read.getPriorityPage());
+        assertTrue(read.isRemainingPagesFollow());
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    public void failureIsReported() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(RenderWorker.FAILED);
+        byte[] message = "java.lang.IllegalStateException: broken".getBytes("UTF-8");
+        out.writeInt(message.length);
+        out.write(message);
+
+        try {
+            RenderWorker.readResponse(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            fail();
+        } catch (RenderWorker.RenderWorkerException e) {
+            assertTrue(e.getMessage().contains("broken"));
+        }
+    }
+}
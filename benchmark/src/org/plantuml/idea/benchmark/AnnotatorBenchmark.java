@@ -0,0 +1,27 @@
+package org.plantuml.idea.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import org.plantuml.idea.lang.annotator.PlantUmlExternalAnnotator;
+import org.plantuml.idea.lang.annotator.SourceAnnotationResult;
+
+/**
+ * Syntax highlighting of keywords and comments, without the PlantUML syntax check.
+ */
+public class AnnotatorBenchmark extends CorpusBenchmark {
+
+    private PlantUmlExternalAnnotator annotator;
+
+    @Setup(Level.Trial)
+    public void createAnnotator() {
+        annotator = new PlantUmlExternalAnnotator();
+    }
+
+    @Benchmark
+    public SourceAnnotationResult annotateByLine() {
+        SourceAnnotationResult result = new SourceAnnotationResult(0);
+        annotator.annotateByLine(result, source);
+        return result;
+    }
+}
@@ -0,0 +1,52 @@
+package org.plantuml.idea.benchmark;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.EdtTestUtil;
+import com.intellij.testFramework.LightProjectDescriptor;
+import com.intellij.testFramework.fixtures.IdeaProjectTestFixture;
+import com.intellij.testFramework.fixtures.IdeaTestFixtureFactory;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Light IDE application for the benchmarks, the plugin services (settings) are not available without it.
+ * Paths are relative to the project directory, which must be the working directory.
+ */
+public class BenchmarkEnvironment {
+    public static final String CORPUS_DIR = "testData/benchmark";
+
+    private static IdeaProjectTestFixture fixture;
+
+    public static synchronized void setUp() throws Exception {
+        if (fixture != null) {
+            return;
+        }
+        IdeaProjectTestFixture newFixture = IdeaTestFixtureFactory.getFixtureFactory()
+                .createLightFixtureBuilder(LightProjectDescriptor.EMPTY_PROJECT_DESCRIPTOR)
+                .getFixture();
+        EdtTestUtil.runInEdtAndWait(newFixture::setUp);
+        fixture = newFixture;
+    }
+
+    public static synchronized void tearDown() throws Exception {
+        if (fixture == null) {
+            return;
+        }
+        IdeaProjectTestFixture oldFixture = fixture;
+        fixture = null;
+        EdtTestUtil.runInEdtAndWait(oldFixture::tearDown);
+    }
+
+    @NotNull
+    public static File corpusFile(@NotNull String name) {
+        return new File(CORPUS_DIR, name + ".puml").getAbsoluteFile();
+    }
+
+    @NotNull
+    public static String loadCorpus(@NotNull String name) throws IOException {
+        return FileUtil.loadFile(corpusFile(name), StandardCharsets.UTF_8, true);
+    }
+}
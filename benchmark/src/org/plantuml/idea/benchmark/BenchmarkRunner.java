@@ -0,0 +1,14 @@
+package org.plantuml.idea.benchmark;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs all benchmarks, or those matching the arguments - see <code>-h</code> for JMH options.
+ * The working directory must be the project directory.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        Main.main(args);
+    }
+}
@@ -0,0 +1,36 @@
+package org.plantuml.idea.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark state shared by all benchmarks - one of the files in {@link BenchmarkEnvironment#CORPUS_DIR}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g", "-Djava.awt.headless=true"})
+public abstract class CorpusBenchmark {
+
+    @Param({"small", "medium", "huge"})
+    public String corpus;
+
+    protected File file;
+    protected String source;
+
+    @Setup(Level.Trial)
+    public void loadCorpus() throws Exception {
+        BenchmarkEnvironment.setUp();
+        file = BenchmarkEnvironment.corpusFile(corpus);
+        source = BenchmarkEnvironment.loadCorpus(corpus);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownEnvironment() throws Exception {
+        BenchmarkEnvironment.tearDown();
+    }
+}
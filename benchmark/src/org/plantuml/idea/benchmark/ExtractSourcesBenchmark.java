@@ -0,0 +1,43 @@
+package org.plantuml.idea.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+import org.plantuml.idea.plantuml.PlantUml;
+import org.plantuml.idea.plantuml.PlantUmlSourceIndex;
+
+import java.util.Map;
+
+public class ExtractSourcesBenchmark extends CorpusBenchmark {
+
+    private PlantUmlSourceIndex index;
+
+    @Setup
+    public void buildIndex() {
+        index = new PlantUmlSourceIndex(source);
+    }
+
+    @Benchmark
+    public Map<Integer, String> extractSources() {
+        return PlantUml.extractSources(source);
+    }
+
+    @Benchmark
+    public String extractSourceAtCaret() {
+        return PlantUml.extractSource(source, source.length() / 2);
+    }
+
+    @Benchmark
+    public String extractSourceAtCaretIndexed() {
+        return index.extractSource(source, source.length() / 2);
+    }
+
+    /**
+     * typing one character in the middle of the file
+     */
+    @Benchmark
+    public PlantUmlSourceIndex updateIndex() {
+        int offset = source.length() / 2;
+        index.update(source, offset, 1, 1);
+        return index;
+    }
+}
@@ -0,0 +1,20 @@
+package org.plantuml.idea.benchmark;
+
+import com.intellij.lexer.Lexer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.plantuml.idea.grammar.PumlLexerAdapter;
+
+public class LexerBenchmark extends CorpusBenchmark {
+
+    @Benchmark
+    public int tokenize() {
+        Lexer lexer = new PumlLexerAdapter();
+        lexer.start(source);
+        int tokens = 0;
+        while (lexer.getTokenType() != null) {
+            tokens++;
+            lexer.advance();
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,32 @@
+package org.plantuml.idea.benchmark;
+
+import net.sourceforge.plantuml.FileFormat;
+import net.sourceforge.plantuml.FileFormatOption;
+import net.sourceforge.plantuml.SourceStringReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import org.plantuml.idea.rendering.ImageItem;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+/**
+ * Parsing of links from the SVG of the first page, done when the mouse enters the page.
+ */
+public class ParseLinksBenchmark extends CorpusBenchmark {
+
+    private byte[] svgBytes;
+
+    @Setup(Level.Trial)
+    public void generateSvg() throws Exception {
+        ByteArrayOutputStream svgStream = new ByteArrayOutputStream();
+        new SourceStringReader(source).outputImage(svgStream, 0, new FileFormatOption(FileFormat.SVG));
+        svgBytes = svgStream.toByteArray();
+    }
+
+    @Benchmark
+    public List<ImageItem.LinkData> parseLinks() {
+        return ImageItem.parseLinks(svgBytes, file.getParentFile());
+    }
+}
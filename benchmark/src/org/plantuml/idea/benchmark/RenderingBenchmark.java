@@ -0,0 +1,38 @@
+package org.plantuml.idea.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.plantuml.idea.adapter.rendering.PlantUmlRendererUtil;
+import org.plantuml.idea.lang.annotator.LanguageDescriptor;
+import org.plantuml.idea.plantuml.PlantUml;
+import org.plantuml.idea.rendering.RenderCommand;
+import org.plantuml.idea.rendering.RenderRequest;
+import org.plantuml.idea.rendering.RenderResult;
+import org.plantuml.idea.rendering.RenderingType;
+
+/**
+ * Rendering of the whole document without any cache, the same as the Reload action.
+ */
+public class RenderingBenchmark extends CorpusBenchmark {
+
+    @Param({"NORMAL", "PARTIAL"})
+    public RenderingType mode;
+
+    private String renderedSource;
+
+    @Setup(Level.Trial)
+    public void prepareSource() {
+        renderedSource = source;
+        if (mode == RenderingType.PARTIAL) {
+            renderedSource = source.replaceFirst("@startuml\n", "@startuml\n'" + LanguageDescriptor.IDEA_PARTIAL_RENDER + "\n");
+        }
+    }
+
+    @Benchmark
+    public RenderResult render() {
+        RenderRequest renderRequest = new RenderRequest(file.getPath(), renderedSource, PlantUml.ImageFormat.PNG, -1, 100, 0, false, RenderCommand.Reason.REFRESH);
+        return PlantUmlRendererUtil.render(renderRequest, null);
+    }
+}
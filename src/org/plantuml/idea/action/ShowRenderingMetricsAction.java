@@ -0,0 +1,55 @@
+package org.plantuml.idea.action;
+
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileChooser.FileChooserFactory;
+import com.intellij.openapi.fileChooser.FileSaverDescriptor;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFileWrapper;
+import org.jetbrains.annotations.NotNull;
+import org.plantuml.idea.rendering.RenderingMetrics;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Displays p50/p95/p99 of the rendering phases, see {@link RenderingMetrics}.
+ */
+public class ShowRenderingMetricsAction extends DumbAwareAction {
+    private static final Logger logger = Logger.getInstance(ShowRenderingMetricsAction.class);
+    private static final String[] OPTIONS = {"Close", "Export to JSON...", "Reset"};
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        RenderingMetrics metrics = RenderingMetrics.getInstance();
+        String message = "<html><pre>" + StringUtil.escapeXml(metrics.toText()) + "</pre></html>";
+        int option = Messages.showDialog(project, message, "PlantUML Rendering Metrics", OPTIONS, 0, Messages.getInformationIcon());
+        if (option == 1) {
+            export(project, metrics);
+        } else if (option == 2) {
+            metrics.reset();
+        }
+    }
+
+    private void export(Project project, RenderingMetrics metrics) {
+        FileSaverDescriptor fsd = new FileSaverDescriptor("Export Rendering Metrics", "Please choose where to save the metrics", "json");
+        VirtualFileWrapper wrapper = FileChooserFactory.getInstance().createSaveFileDialog(fsd, project).save(null, "plantuml-metrics.json");
+        if (wrapper == null) {
+            return;
+        }
+        File file = wrapper.getFile();
+        try {
+            FileUtil.writeToFile(file, metrics.toJson());
+        } catch (IOException e) {
+            String title = "Error writing metrics";
+            String message = title + " to file:" + file + " : " + e.toString();
+            logger.warn(message);
+            Messages.showErrorDialog(message, title);
+        }
+    }
+}
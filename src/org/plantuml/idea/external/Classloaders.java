@@ -3,7 +3,12 @@ package org.plantuml.idea.external;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.extensions.ExtensionPointName;
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.util.xmlb.XmlSerializer;
+import gnu.trove.THashMap;
 import org.apache.commons.lang.StringUtils;
+import org.jdom.Element;
 import org.jetbrains.annotations.NotNull;
 import org.plantuml.idea.lang.settings.PlantUmlSettings;
 
@@ -19,10 +24,16 @@ import java.util.stream.Collectors;
 public class Classloaders {
 
     private static final Logger LOG = Logger.getInstance(Classloaders.class);
+    /**
+     * set by the render worker process, which runs without an application
+     */
+    public static final String RENDER_WORKER_PROPERTY = "plantuml4idea.renderWorker";
 
     private static ClassLoader bundled;
+    private static List<File> bundledJars;
     private static String customPlantumlJarPath;
     private static ClassLoader custom;
+    private static List<File> customJars;
 
 
     private static ClassLoader getClassloader() {
@@ -57,6 +68,7 @@ public class Classloaders {
 
 
             bundled = classLoader(jarFiles);
+            bundledJars = jarFiles;
         }
         return bundled;
     }
@@ -81,10 +93,15 @@ public class Classloaders {
             if (!new File(customPlantumlJarPath).exists()) {
                 throw new IllegalArgumentException("Custom PlantUML jar does not exist! path=" + customPlantumlJarPath);
             }
+            if (custom != null) {
+                FacadeRegistry.invalidate(custom);
+                custom = null;
+            }
             Classloaders.customPlantumlJarPath = customPlantumlJarPath;
             jars.add(new File(customPlantumlJarPath));
             jars.add(new File(getPluginHome(), "adapter.jar"));
             custom = classLoader(jars);
+            customJars = jars;
             return custom;
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -114,6 +131,33 @@ public class Classloaders {
         }
     }
 
+    /**
+     * Classpath of a render worker process - the jars of the PlantUML classloader first, then the plugin and only the
+     * IDE libraries the worker uses: util with xmlb, jdom, trove4j and extensions.
+     */
+    @NotNull
+    public static String getWorkerClasspath() {
+        ClassLoader classloader = getClassloader();
+        List<File> jars = classloader == custom ? customJars : bundledJars;
+        List<String> entries = new ArrayList<>();
+        for (File jar : jars) {
+            entries.add(jar.getAbsolutePath());
+        }
+        String pluginJar = PathManager.getJarPathForClass(Classloaders.class);
+        if (pluginJar != null) {
+            entries.add(pluginJar);
+        }
+        entries.add(new File(getPluginHome(), "*").getAbsolutePath());
+        Class<?>[] platformClasses = {JDOMUtil.class, XmlSerializer.class, Element.class, THashMap.class, ExtensionPointName.class};
+        for (Class<?> aClass : platformClasses) {
+            String jar = PathManager.getJarPathForClass(aClass);
+            if (jar != null && !entries.contains(jar)) {
+                entries.add(jar);
+            }
+        }
+        return StringUtils.join(entries, File.pathSeparator);
+    }
+
     @NotNull
     private static File getPluginHome() {
         if (isUnitTest()) {
@@ -134,6 +178,10 @@ public class Classloaders {
         throw new RuntimeException("Plugin home not found! Did you install the whole zip file?! (PathManager.getPluginsPath()=" + PathManager.getPluginsPath() + ")");
     }
 
+    public static boolean isRenderWorker() {
+        return Boolean.getBoolean(RENDER_WORKER_PROPERTY);
+    }
+
     public static boolean isUnitTest() {
         return ApplicationManager.getApplication() == null || ApplicationManager.getApplication().isUnitTestMode();
     }
@@ -145,11 +193,7 @@ public class Classloaders {
 
     @NotNull
     static PlantUmlFacade getFacade(ClassLoader classloader) {
-        try {
-            return (PlantUmlFacade) Class.forName("org.plantuml.idea.adapter.FacadeImpl", true, classloader).getConstructor().newInstance();
-        } catch (Throwable e) {
-            throw new RuntimeException(e);
-        }
+        return FacadeRegistry.get(classloader);
     }
 
 }
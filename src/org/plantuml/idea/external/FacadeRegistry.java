@@ -0,0 +1,48 @@
+package org.plantuml.idea.external;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One facade per PlantUML classloader - created by reflection once, not on every call. The facade of a replaced
+ * custom classloader is dropped by {@link #invalidate}, so that the classloader can be collected.
+ */
+class FacadeRegistry {
+    private static final Logger LOG = Logger.getInstance(FacadeRegistry.class);
+    private static final Map<ClassLoader, PlantUmlFacade> facades = new IdentityHashMap<>();
+
+    @NotNull
+    static synchronized PlantUmlFacade get(@NotNull ClassLoader classloader) {
+        PlantUmlFacade facade = facades.get(classloader);
+        if (facade == null) {
+            facade = new MeteredFacade(create(classloader));
+            facades.put(classloader, facade);
+        }
+        return facade;
+    }
+
+    @NotNull
+    static synchronized List<PlantUmlFacade> getAll() {
+        return new ArrayList<>(facades.values());
+    }
+
+    static synchronized void invalidate(@NotNull ClassLoader classloader) {
+        if (facades.remove(classloader) != null) {
+            LOG.debug("facade invalidated ", classloader);
+        }
+    }
+
+    @NotNull
+    private static PlantUmlFacade create(ClassLoader classloader) {
+        try {
+            return (PlantUmlFacade) Class.forName("org.plantuml.idea.adapter.FacadeImpl", true, classloader).getConstructor().newInstance();
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
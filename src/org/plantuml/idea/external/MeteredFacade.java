@@ -0,0 +1,111 @@
+package org.plantuml.idea.external;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.ImageLoader;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.lang.annotator.SourceAnnotation;
+import org.plantuml.idea.plantuml.PlantUml;
+import org.plantuml.idea.rendering.RenderCacheItem;
+import org.plantuml.idea.rendering.RenderRequest;
+import org.plantuml.idea.rendering.RenderResult;
+import org.plantuml.idea.rendering.RenderingMetrics;
+import org.plantuml.idea.rendering.VectorImage;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collection;
+
+import static org.plantuml.idea.rendering.RenderingMetrics.FacadeMethod.*;
+
+/**
+ * Records count and latency of the calls in {@link RenderingMetrics}.
+ */
+class MeteredFacade implements PlantUmlFacade {
+    private static final RenderingMetrics METRICS = RenderingMetrics.getInstance();
+
+    private final PlantUmlFacade facade;
+
+    MeteredFacade(@NotNull PlantUmlFacade facade) {
+        this.facade = facade;
+    }
+
+    @Nullable
+    @Override
+    public Collection<SourceAnnotation> annotateSyntaxErrors(String source, VirtualFile virtualFile) {
+        long start = System.nanoTime();
+        try {
+            return facade.annotateSyntaxErrors(source, virtualFile);
+        } finally {
+            METRICS.recordSince(ANNOTATE_SYNTAX_ERRORS, start);
+        }
+    }
+
+    @Override
+    public void renderAndSave(String source, File sourceFile, PlantUml.ImageFormat format, String path, String pathPrefix, int zoom, int pageNumber) throws IOException {
+        long start = System.nanoTime();
+        try {
+            facade.renderAndSave(source, sourceFile, format, path, pathPrefix, zoom, pageNumber);
+        } finally {
+            METRICS.recordSince(RENDER_AND_SAVE, start);
+        }
+    }
+
+    @Override
+    public RenderResult render(RenderRequest renderRequest, RenderCacheItem cachedItem) {
+        long start = System.nanoTime();
+        try {
+            return facade.render(renderRequest, cachedItem);
+        } finally {
+            METRICS.recordSince(RENDER, start);
+        }
+    }
+
+    @Override
+    public BufferedImage loadWithoutCache(@Nullable URL url, @NotNull InputStream stream, double scale, @Nullable ImageLoader.Dimension2DDouble docSize) {
+        long start = System.nanoTime();
+        try {
+            return facade.loadWithoutCache(url, stream, scale, docSize);
+        } finally {
+            METRICS.recordSince(LOAD_WITHOUT_CACHE, start);
+        }
+    }
+
+    @Override
+    public VectorImage loadVectorImage(@NotNull InputStream stream) {
+        long start = System.nanoTime();
+        try {
+            return facade.loadVectorImage(stream);
+        } finally {
+            METRICS.recordSince(LOAD_VECTOR_IMAGE, start);
+        }
+    }
+
+    @Override
+    public String version() {
+        long start = System.nanoTime();
+        try {
+            return facade.version();
+        } finally {
+            METRICS.recordSince(VERSION, start);
+        }
+    }
+
+    @Override
+    public String encode(String source) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return facade.encode(source);
+        } finally {
+            METRICS.recordSince(ENCODE, start);
+        }
+    }
+
+    @Override
+    public void settingsChanged() {
+        facade.settingsChanged();
+    }
+}
@@ -1,13 +1,20 @@
 package org.plantuml.idea.external;
 
 import com.intellij.notification.Notifications;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.ui.MessageType;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
+import java.io.File;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 import static org.plantuml.idea.util.UIUtils.NOTIFICATION;
 
@@ -16,8 +23,16 @@ import static org.plantuml.idea.util.UIUtils.NOTIFICATION;
  * doing because java really prefers parent-first.
  * <p/>
  * For those not familiar with class loading trickery, be wary
+ * <p/>
+ * Parallel capable - PlantUML loads thousands of classes on the first rendering. The classes in the jars are indexed,
+ * so that a class of the parent is not looked up in the jars first, and classes found nowhere are remembered.
  */
 public class ParentLastURLClassLoader extends ClassLoader {
+    private static final Logger LOG = Logger.getInstance(ParentLastURLClassLoader.class);
+
+    static {
+        registerAsParallelCapable();
+    }
 
     final static Set<String> loadFromParent = new HashSet<String>();
 
@@ -36,11 +51,19 @@ public class ParentLastURLClassLoader extends ClassLoader {
     }
 
     private ChildURLClassLoader childClassLoader;
+    /**
+     * classes found neither in the jars nor in the parent
+     */
+    private final Set<String> notFound = ConcurrentHashMap.newKeySet();
 
     /**
      * This class allows me to call findClass on a classloader
      */
     private static class FindClassClassLoader extends ClassLoader {
+        static {
+            registerAsParallelCapable();
+        }
+
         public FindClassClassLoader(ClassLoader parent) {
             super(parent);
         }
@@ -56,45 +79,89 @@ public class ParentLastURLClassLoader extends ClassLoader {
      * findClass is protected in URLClassLoader
      */
     private static class ChildURLClassLoader extends URLClassLoader {
+        static {
+            registerAsParallelCapable();
+        }
+
         private FindClassClassLoader realParent;
-        boolean shownIncompatibleNotification;
+        /**
+         * classes in the jars, null when a URL is not a jar file
+         */
+        @Nullable
+        private final Set<String> classIndex;
+        volatile boolean shownIncompatibleNotification;
 
         public ChildURLClassLoader(URL[] urls, FindClassClassLoader realParent) {
             super(urls, null);
 
             this.realParent = realParent;
+            this.classIndex = indexClasses(urls);
         }
 
         @Override
         public Class<?> findClass(String name) throws ClassNotFoundException {
+            if (loadFromParent.contains(name)) {
+                return realParent.loadClass(name);
+            }
+            if (classIndex != null && !classIndex.contains(name)) {
+                checkCanLoadFromParent(name, null);
+                return realParent.loadClass(name);
+            }
             try {
-                if (loadFromParent.contains(name)) {
-                    return realParent.loadClass(name);
-                }
-
                 //calling twic #findClass with the same classname, you will get a LinkageError, this fixes it
-                Class<?> loaded = super.findLoadedClass(name);
-                if (loaded != null)
-                    return loaded;
+                synchronized (getClassLoadingLock(name)) {
+                    Class<?> loaded = super.findLoadedClass(name);
+                    if (loaded != null)
+                        return loaded;
 
-                // first try to use the URLClassLoader findClass
-                return super.findClass(name);
+                    // first try to use the URLClassLoader findClass
+                    return super.findClass(name);
+                }
             } catch (ClassNotFoundException e) {
-                for (String forbiddenParentPrefixes : neverLoadFromParentWithPrefix) {
-                    if (name.startsWith(forbiddenParentPrefixes)) {
-                        if (!shownIncompatibleNotification) {
-                            shownIncompatibleNotification = true;
-                            SwingUtilities.invokeLater(() -> {
-                                Notifications.Bus.notify(NOTIFICATION.createNotification("Incompatible PlantUML Version!", MessageType.ERROR));
-                            });
+                checkCanLoadFromParent(name, e);
+                // if that fails, we ask our real parent classloader to load the class (we give up)
+                return realParent.loadClass(name);
+            }
+        }
+
+        private void checkCanLoadFromParent(String name, @Nullable ClassNotFoundException e) {
+            for (String forbiddenParentPrefixes : neverLoadFromParentWithPrefix) {
+                if (name.startsWith(forbiddenParentPrefixes)) {
+                    if (!shownIncompatibleNotification) {
+                        shownIncompatibleNotification = true;
+                        SwingUtilities.invokeLater(() -> {
+                            Notifications.Bus.notify(NOTIFICATION.createNotification("Incompatible PlantUML Version!", MessageType.ERROR));
+                        });
+                    }
+                    throw new IncompatiblePlantUmlVersionException(
+                            name + " not found in child classloader, and cannot be loaded from parent", e);
+                }
+            }
+        }
+
+        @Nullable
+        private static Set<String> indexClasses(URL[] urls) {
+            long start = System.currentTimeMillis();
+            Set<String> index = new HashSet<>();
+            for (URL url : urls) {
+                if (!"file".equals(url.getProtocol()) || !url.getPath().endsWith(".jar")) {
+                    return null;
+                }
+                try (JarFile jarFile = new JarFile(new File(url.toURI()))) {
+                    Enumeration<JarEntry> entries = jarFile.entries();
+                    while (entries.hasMoreElements()) {
+                        String entryName = entries.nextElement().getName();
+                        if (entryName.endsWith(".class") && !entryName.startsWith("META-INF/")) {
+                            index.add(entryName.substring(0, entryName.length() - ".class".length()).replace('/', '.'));
                         }
-                        throw new IncompatiblePlantUmlVersionException(
-                                name + " not found in child classloader, and cannot be loaded from parent", e);
                     }
+                } catch (Exception e) {
+                    LOG.warn("cannot index " + url, e);
+                    return null;
                 }
-                // if that fails, we ask our real parent classloader to load the class (we give up)
-                return realParent.loadClass(name);
             }
+            LOG.debug("indexed ", index.size(), " classes in ", System.currentTimeMillis() - start, "ms");
+            return index;
         }
     }
 
@@ -107,13 +174,21 @@ public class ParentLastURLClassLoader extends ClassLoader {
     }
 
     @Override
-    protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (notFound.contains(name)) {
+            throw new ClassNotFoundException(name);
+        }
         try {
             // first we try to find a class inside the child classloader
             return childClassLoader.findClass(name);
         } catch (ClassNotFoundException e) {
             // didn't find it, try the parent
-            return super.loadClass(name, resolve);
+            try {
+                return super.loadClass(name, resolve);
+            } catch (ClassNotFoundException notFoundInParent) {
+                notFound.add(name);
+                throw notFoundInParent;
+            }
         }
     }
 }
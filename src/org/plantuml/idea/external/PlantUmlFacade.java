@@ -9,6 +9,7 @@ import org.plantuml.idea.plantuml.PlantUml;
 import org.plantuml.idea.rendering.RenderCacheItem;
 import org.plantuml.idea.rendering.RenderRequest;
 import org.plantuml.idea.rendering.RenderResult;
+import org.plantuml.idea.rendering.VectorImage;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -26,6 +27,15 @@ public interface PlantUmlFacade {
         return Classloaders.getFacade(Classloaders.getBundled());
     }
 
+    /**
+     * notifies facades of all loaded PlantUML versions, including one no longer used with the new settings
+     */
+    static void applySettings() {
+        for (PlantUmlFacade facade : FacadeRegistry.getAll()) {
+            facade.settingsChanged();
+        }
+    }
+
     @Nullable
     Collection<SourceAnnotation> annotateSyntaxErrors(String source, VirtualFile virtualFile);
 
@@ -36,7 +46,14 @@ public interface PlantUmlFacade {
 
     BufferedImage loadWithoutCache(@Nullable URL url, @NotNull InputStream stream, double scale, @Nullable ImageLoader.Dimension2DDouble docSize /*OUT*/);
 
+    VectorImage loadVectorImage(@NotNull InputStream stream);
+
     String version();
 
     String encode(String source) throws IOException;
+
+    /**
+     * releases resources not needed with the current settings, e.g. idle render workers
+     */
+    void settingsChanged();
 }
@@ -36,14 +36,27 @@ import static org.plantuml.idea.util.UIUtils.NOTIFICATION;
 public class PlantUmlSettings implements PersistentStateComponent<PlantUmlSettings> {
     private static final Logger LOG = Logger.getInstance(PlantUmlSettings.class);
 
-    private static final int CACHE_SIZE_DEFAULT_VALUE = 5;
+    private static final int CACHE_SIZE_MB_DEFAULT_VALUE = 128;
+    private static final int DISK_CACHE_SIZE_MB_DEFAULT_VALUE = 256;
     private static final int RENDER_DELAY_DEFAULT_VALUE = 100;
+    private static final int RENDER_THREADS_DEFAULT_VALUE = 1;
+    private static final int RENDER_WORKERS_DEFAULT_VALUE = 0;
+    private static final int RENDER_WORKER_HEAP_MB_DEFAULT_VALUE = 512;
+    private static final int MIN_RENDER_DELAY_DEFAULT_VALUE = 20;
+    private static final int MAX_RENDER_DELAY_DEFAULT_VALUE = 1000;
 
     private String dotExecutable = "";
     private boolean errorAnnotationEnabled = true;
     private boolean autoHide = true;
     private String renderDelay = String.valueOf(RENDER_DELAY_DEFAULT_VALUE);
-    private String cacheSize = String.valueOf(CACHE_SIZE_DEFAULT_VALUE);
+    private String cacheSizeMB = String.valueOf(CACHE_SIZE_MB_DEFAULT_VALUE);
+    private String diskCacheSizeMB = String.valueOf(DISK_CACHE_SIZE_MB_DEFAULT_VALUE);
+    private String renderThreads = String.valueOf(RENDER_THREADS_DEFAULT_VALUE);
+    private String renderWorkers = String.valueOf(RENDER_WORKERS_DEFAULT_VALUE);
+    private String renderWorkerHeapMB = String.valueOf(RENDER_WORKER_HEAP_MB_DEFAULT_VALUE);
+    private boolean adaptiveRenderDelay = true;
+    private String minRenderDelay = String.valueOf(MIN_RENDER_DELAY_DEFAULT_VALUE);
+    private String maxRenderDelay = String.valueOf(MAX_RENDER_DELAY_DEFAULT_VALUE);
     private boolean autoRender = true;
     private boolean autoComplete = true;
     private boolean usePreferentiallyGRAPHIZ_DOT = false;
@@ -51,6 +64,10 @@ public class PlantUmlSettings implements PersistentStateComponent<PlantUmlSettin
     private String config = "";
 
     private boolean renderLinks = true;
+    private boolean renderLinksFromSvg = false;
+    private boolean tiledDisplay = false;
+    private boolean smetanaLayout = false;
+    private boolean warmUp = true;
     private boolean showUrlLinksBorder;
     private boolean linkOpensSearchBar = true;
 
@@ -59,6 +76,10 @@ public class PlantUmlSettings implements PersistentStateComponent<PlantUmlSettin
     private boolean doNotDisplayErrors = false;
 
     private static boolean migratedCfg = false;
+    /**
+     * settings of a render worker process, which runs without the IDE
+     */
+    private static PlantUmlSettings standalone;
     private String customPlantumlJarPath;
 
     private boolean switchToBundledAfterUpdate = true;
@@ -71,8 +92,8 @@ public class PlantUmlSettings implements PersistentStateComponent<PlantUmlSettin
 
 
     public static PlantUmlSettings getInstance() {
-        if (Classloaders.isUnitTest()) {
-            return new PlantUmlSettings();
+        if (Classloaders.isRenderWorker() || Classloaders.isUnitTest()) {
+            return standalone != null ? standalone : new PlantUmlSettings();
         }
         PlantUmlSettings service = ServiceManager.getService(PlantUmlSettings.class);
         if (!migratedCfg) {
@@ -87,6 +108,10 @@ public class PlantUmlSettings implements PersistentStateComponent<PlantUmlSettin
         return service;
     }
 
+    public static void setStandalone(@Nullable PlantUmlSettings settings) {
+        standalone = settings;
+    }
+
     public String getLastBundledVersion() {
         return lastBundledVersion;
     }
@@ -103,6 +128,44 @@ public class PlantUmlSettings implements PersistentStateComponent<PlantUmlSettin
         this.renderLinks = renderLinks;
     }
 
+    public boolean isRenderLinksFromSvg() {
+        return renderLinksFromSvg;
+    }
+
+    public void setRenderLinksFromSvg(boolean renderLinksFromSvg) {
+        this.renderLinksFromSvg = renderLinksFromSvg;
+    }
+
+    public boolean isTiledDisplay() {
+        return tiledDisplay;
+    }
+
+    public void setTiledDisplay(boolean tiledDisplay) {
+        this.tiledDisplay = tiledDisplay;
+    }
+
+    /**
+     * layout by the Java port of Graphviz in PlantUML, without starting the dot executable
+     */
+    public boolean isSmetanaLayout() {
+        return smetanaLayout;
+    }
+
+    public void setSmetanaLayout(boolean smetanaLayout) {
+        this.smetanaLayout = smetanaLayout;
+    }
+
+    /**
+     * render a tiny diagram in the background after the start of the IDE
+     */
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    public void setWarmUp(boolean warmUp) {
+        this.warmUp = warmUp;
+    }
+
     public String getDotExecutable() {
         return dotExecutable;
     }
@@ -127,16 +190,28 @@ public class PlantUmlSettings implements PersistentStateComponent<PlantUmlSettin
         this.autoHide = autoHide;
     }
 
-    public String getCacheSize() {
-        return cacheSize;
+    public String getCacheSizeMB() {
+        return cacheSizeMB;
+    }
+
+    public int getCacheSizeMBAsInt() {
+        return Utils.asInt(cacheSizeMB, CACHE_SIZE_MB_DEFAULT_VALUE);
+    }
+
+    public void setCacheSizeMB(String cacheSizeMB) {
+        this.cacheSizeMB = String.valueOf(Math.max(0, Utils.asInt(cacheSizeMB, CACHE_SIZE_MB_DEFAULT_VALUE)));
     }
 
-    public int getCacheSizeAsInt() {
-        return Utils.asInt(cacheSize, CACHE_SIZE_DEFAULT_VALUE);
+    public String getDiskCacheSizeMB() {
+        return diskCacheSizeMB;
     }
 
-    public void setCacheSize(String cacheSize) {
-        this.cacheSize = String.valueOf(Math.max(0, Utils.asInt(cacheSize, CACHE_SIZE_DEFAULT_VALUE)));
+    public int getDiskCacheSizeMBAsInt() {
+        return Utils.asInt(diskCacheSizeMB, DISK_CACHE_SIZE_MB_DEFAULT_VALUE);
+    }
+
+    public void setDiskCacheSizeMB(String diskCacheSizeMB) {
+        this.diskCacheSizeMB = String.valueOf(Math.max(0, Utils.asInt(diskCacheSizeMB, DISK_CACHE_SIZE_MB_DEFAULT_VALUE)));
     }
 
     public String getRenderDelay() {
@@ -151,6 +226,77 @@ public class PlantUmlSettings implements PersistentStateComponent<PlantUmlSettin
         this.renderDelay = String.valueOf(Math.max(0, Utils.asInt(renderDelay, RENDER_DELAY_DEFAULT_VALUE)));
     }
 
+    public boolean isAdaptiveRenderDelay() {
+        return adaptiveRenderDelay;
+    }
+
+    public void setAdaptiveRenderDelay(boolean adaptiveRenderDelay) {
+        this.adaptiveRenderDelay = adaptiveRenderDelay;
+    }
+
+    public String getMinRenderDelay() {
+        return minRenderDelay;
+    }
+
+    public int getMinRenderDelayAsInt() {
+        return Utils.asInt(minRenderDelay, MIN_RENDER_DELAY_DEFAULT_VALUE);
+    }
+
+    public void setMinRenderDelay(String minRenderDelay) {
+        this.minRenderDelay = String.valueOf(Math.max(0, Utils.asInt(minRenderDelay, MIN_RENDER_DELAY_DEFAULT_VALUE)));
+    }
+
+    public String getMaxRenderDelay() {
+        return maxRenderDelay;
+    }
+
+    public int getMaxRenderDelayAsInt() {
+        return Utils.asInt(maxRenderDelay, MAX_RENDER_DELAY_DEFAULT_VALUE);
+    }
+
+    public void setMaxRenderDelay(String maxRenderDelay) {
+        this.maxRenderDelay = String.valueOf(Math.max(0, Utils.asInt(maxRenderDelay, MAX_RENDER_DELAY_DEFAULT_VALUE)));
+    }
+
+    public String getRenderThreads() {
+        return renderThreads;
+    }
+
+    public int getRenderThreadsAsInt() {
+        return Utils.asInt(renderThreads, RENDER_THREADS_DEFAULT_VALUE);
+    }
+
+    public void setRenderThreads(String renderThreads) {
+        this.renderThreads = String.valueOf(Math.max(1, Utils.asInt(renderThreads, RENDER_THREADS_DEFAULT_VALUE)));
+    }
+
+    public String getRenderWorkers() {
+        return renderWorkers;
+    }
+
+    /**
+     * @return count of render worker processes, 0 = rendering in the IDE process
+     */
+    public int getRenderWorkersAsInt() {
+        return Utils.asInt(renderWorkers, RENDER_WORKERS_DEFAULT_VALUE);
+    }
+
+    public void setRenderWorkers(String renderWorkers) {
+        this.renderWorkers = String.valueOf(Math.max(0, Utils.asInt(renderWorkers, RENDER_WORKERS_DEFAULT_VALUE)));
+    }
+
+    public String getRenderWorkerHeapMB() {
+        return renderWorkerHeapMB;
+    }
+
+    public int getRenderWorkerHeapMBAsInt() {
+        return Utils.asInt(renderWorkerHeapMB, RENDER_WORKER_HEAP_MB_DEFAULT_VALUE);
+    }
+
+    public void setRenderWorkerHeapMB(String renderWorkerHeapMB) {
+        this.renderWorkerHeapMB = String.valueOf(Math.max(64, Utils.asInt(renderWorkerHeapMB, RENDER_WORKER_HEAP_MB_DEFAULT_VALUE)));
+    }
+
     public void setAutoRender(boolean autoRender) {
         this.autoRender = autoRender;
     }
@@ -203,6 +349,7 @@ public class PlantUmlSettings implements PersistentStateComponent<PlantUmlSettin
     }
 
     public void applyState() {
+        PlantUmlFacade.applySettings();
         for (Project project : ProjectManager.getInstance().getOpenProjects()) {
             PlantUmlToolWindow toolWindow = UIUtils.getPlantUmlToolWindow(project);
             if (toolWindow != null) {
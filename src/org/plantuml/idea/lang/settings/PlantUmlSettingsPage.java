@@ -31,12 +31,23 @@ public class PlantUmlSettingsPage implements Configurable {
     private JButton browse;
     private JTextField renderDelay;
     private JTextField cacheSize;
+    private JTextField diskCacheSize;
+    private JTextField renderThreads;
+    private JTextField renderWorkers;
+    private JTextField renderWorkerHeap;
+    private JCheckBox adaptiveDelay;
+    private JTextField minRenderDelay;
+    private JTextField maxRenderDelay;
     private JCheckBox renderUrlLinks;
     private JCheckBox usePreferentiallyGRAPHIZ_DOT;
     private JTextField encoding;
     private JTextArea config;
     private JTextArea configExample;
     private JCheckBox showUrlLinksBorder;
+    private JCheckBox renderLinksFromSvg;
+    private JCheckBox tiledDisplay;
+    private JCheckBox smetanaLayout;
+    private JCheckBox warmUp;
     private JTextField PLANTUML_LIMIT_SIZE;
     private JTextArea includePaths;
     private JTextField customPlantumlJar;
@@ -175,7 +186,14 @@ public class PlantUmlSettingsPage implements Configurable {
         switchToBundledAfterUpdate.setSelected(data.isSwitchToBundledAfterUpdate());
         customPlantumlJar.setText(data.getCustomPlantumlJarPath());
         renderDelay.setText(data.getRenderDelay());
-        cacheSize.setText(data.getCacheSize());
+        adaptiveDelay.setSelected(data.isAdaptiveRenderDelay());
+        minRenderDelay.setText(data.getMinRenderDelay());
+        maxRenderDelay.setText(data.getMaxRenderDelay());
+        cacheSize.setText(data.getCacheSizeMB());
+        diskCacheSize.setText(data.getDiskCacheSizeMB());
+        renderThreads.setText(data.getRenderThreads());
+        renderWorkers.setText(data.getRenderWorkers());
+        renderWorkerHeap.setText(data.getRenderWorkerHeapMB());
         PLANTUML_LIMIT_SIZE.setText(data.getPLANTUML_LIMIT_SIZE());
         showUrlLinksBorder.setSelected(data.isShowUrlLinksBorder());
         usePageTitles.setSelected(data.isUsePageTitles());
@@ -183,6 +201,10 @@ public class PlantUmlSettingsPage implements Configurable {
         plantUMLErrorAnnotationExperimentalCheckBox.setSelected(data.isErrorAnnotationEnabled());
         keywordHighlighting.setSelected(data.isKeywordHighlighting());
         renderUrlLinks.setSelected(data.isRenderLinks());
+        renderLinksFromSvg.setSelected(data.isRenderLinksFromSvg());
+        tiledDisplay.setSelected(data.isTiledDisplay());
+        smetanaLayout.setSelected(data.isSmetanaLayout());
+        warmUp.setSelected(data.isWarmUp());
         insertPair.setSelected(data.isInsertPair());
         linkOpensSearchBar.setSelected(data.isLinkOpensSearchBar());
     }
@@ -196,7 +218,14 @@ public class PlantUmlSettingsPage implements Configurable {
         data.setSwitchToBundledAfterUpdate(switchToBundledAfterUpdate.isSelected());
         data.setCustomPlantumlJarPath(customPlantumlJar.getText());
         data.setRenderDelay(renderDelay.getText());
-        data.setCacheSize(cacheSize.getText());
+        data.setAdaptiveRenderDelay(adaptiveDelay.isSelected());
+        data.setMinRenderDelay(minRenderDelay.getText());
+        data.setMaxRenderDelay(maxRenderDelay.getText());
+        data.setCacheSizeMB(cacheSize.getText());
+        data.setDiskCacheSizeMB(diskCacheSize.getText());
+        data.setRenderThreads(renderThreads.getText());
+        data.setRenderWorkers(renderWorkers.getText());
+        data.setRenderWorkerHeapMB(renderWorkerHeap.getText());
         data.setPLANTUML_LIMIT_SIZE(PLANTUML_LIMIT_SIZE.getText());
         data.setShowUrlLinksBorder(showUrlLinksBorder.isSelected());
         data.setUsePageTitles(usePageTitles.isSelected());
@@ -204,6 +233,10 @@ public class PlantUmlSettingsPage implements Configurable {
         data.setErrorAnnotationEnabled(plantUMLErrorAnnotationExperimentalCheckBox.isSelected());
         data.setKeywordHighlighting(keywordHighlighting.isSelected());
         data.setRenderLinks(renderUrlLinks.isSelected());
+        data.setRenderLinksFromSvg(renderLinksFromSvg.isSelected());
+        data.setTiledDisplay(tiledDisplay.isSelected());
+        data.setSmetanaLayout(smetanaLayout.isSelected());
+        data.setWarmUp(warmUp.isSelected());
         data.setInsertPair(insertPair.isSelected());
         data.setLinkOpensSearchBar(linkOpensSearchBar.isSelected());
     }
@@ -223,7 +256,20 @@ public class PlantUmlSettingsPage implements Configurable {
             return true;
         if (renderDelay.getText() != null ? !renderDelay.getText().equals(data.getRenderDelay()) : data.getRenderDelay() != null)
             return true;
-        if (cacheSize.getText() != null ? !cacheSize.getText().equals(data.getCacheSize()) : data.getCacheSize() != null)
+        if (adaptiveDelay.isSelected() != data.isAdaptiveRenderDelay()) return true;
+        if (minRenderDelay.getText() != null ? !minRenderDelay.getText().equals(data.getMinRenderDelay()) : data.getMinRenderDelay() != null)
+            return true;
+        if (maxRenderDelay.getText() != null ? !maxRenderDelay.getText().equals(data.getMaxRenderDelay()) : data.getMaxRenderDelay() != null)
+            return true;
+        if (cacheSize.getText() != null ? !cacheSize.getText().equals(data.getCacheSizeMB()) : data.getCacheSizeMB() != null)
+            return true;
+        if (diskCacheSize.getText() != null ? !diskCacheSize.getText().equals(data.getDiskCacheSizeMB()) : data.getDiskCacheSizeMB() != null)
+            return true;
+        if (renderThreads.getText() != null ? !renderThreads.getText().equals(data.getRenderThreads()) : data.getRenderThreads() != null)
+            return true;
+        if (renderWorkers.getText() != null ? !renderWorkers.getText().equals(data.getRenderWorkers()) : data.getRenderWorkers() != null)
+            return true;
+        if (renderWorkerHeap.getText() != null ? !renderWorkerHeap.getText().equals(data.getRenderWorkerHeapMB()) : data.getRenderWorkerHeapMB() != null)
             return true;
         if (PLANTUML_LIMIT_SIZE.getText() != null ? !PLANTUML_LIMIT_SIZE.getText().equals(data.getPLANTUML_LIMIT_SIZE()) : data.getPLANTUML_LIMIT_SIZE() != null)
             return true;
@@ -233,6 +279,10 @@ public class PlantUmlSettingsPage implements Configurable {
         if (plantUMLErrorAnnotationExperimentalCheckBox.isSelected() != data.isErrorAnnotationEnabled()) return true;
         if (keywordHighlighting.isSelected() != data.isKeywordHighlighting()) return true;
         if (renderUrlLinks.isSelected() != data.isRenderLinks()) return true;
+        if (renderLinksFromSvg.isSelected() != data.isRenderLinksFromSvg()) return true;
+        if (tiledDisplay.isSelected() != data.isTiledDisplay()) return true;
+        if (smetanaLayout.isSelected() != data.isSmetanaLayout()) return true;
+        if (warmUp.isSelected() != data.isWarmUp()) return true;
         if (insertPair.isSelected() != data.isInsertPair()) return true;
         if (linkOpensSearchBar.isSelected() != data.isLinkOpensSearchBar()) return true;
         return false;
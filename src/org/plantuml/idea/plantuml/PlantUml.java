@@ -69,22 +69,25 @@ public class PlantUml {
             Matcher matcher = LanguagePatternHolder.INSTANCE.sourcePatternMarkdown.matcher(text);
 
             while (matcher.find()) {
-                String group = matcher.group();
-                group = group.substring("``` plantuml".length(), group.length() - 3);
-                if (!group.trim().startsWith("@startuml")) {
-                    group = "@startuml\n" + group + "\n@enduml";
-                }
-                result.put(matcher.start(), group);
+                result.put(matcher.start(), markdownSource(matcher.group()));
             }
         }
 
         return result;
     }
 
+    static String markdownSource(String group) {
+        group = group.substring("``` plantuml".length(), group.length() - 3);
+        if (!group.trim().startsWith("@startuml")) {
+            group = "@startuml\n" + group + "\n@enduml";
+        }
+        return group;
+    }
+
     private static Pattern sourceCommentPattern =
             Pattern.compile("^\\s*\\*\\s", Pattern.MULTILINE);
 
-    private static String stripComments(String source) {
+    static String stripComments(String source) {
         if (isCommented(source)) {
             Matcher matcher = sourceCommentPattern.matcher(source);
             return matcher.replaceAll("");
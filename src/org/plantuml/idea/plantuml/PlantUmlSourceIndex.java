@@ -0,0 +1,202 @@
+package org.plantuml.idea.plantuml;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.UserDataHolderEx;
+import org.jetbrains.annotations.NotNull;
+import org.plantuml.idea.lang.annotator.LanguagePatternHolder;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Ranges of the diagram sources in a document, same as found by {@link PlantUml#extractSources}, so that finding the
+ * source at the caret is a binary search.
+ * <p>
+ * Kept up to date from document changes - only the text from the block before the change up to the first block which
+ * is unchanged is matched again. The index of a document lives as long as the given parent Disposable - the listener is
+ * removed with it and the next call creates a new index.
+ */
+public class PlantUmlSourceIndex {
+    private static final Key<PlantUmlSourceIndex> KEY = Key.create("PlantUmlSourceIndex");
+    /**
+     * longer than any start tag - a tag can be completed by a change right after it
+     */
+    private static final int MAX_TAG_LENGTH = 32;
+
+    private final Blocks blocks = new Blocks(LanguagePatternHolder.INSTANCE.sourcePattern, true);
+    private final Blocks markdownBlocks = new Blocks(LanguagePatternHolder.INSTANCE.sourcePatternMarkdown, false);
+
+    public PlantUmlSourceIndex(@NotNull CharSequence text) {
+        blocks.update(text, 0, 0, text.length());
+        markdownBlocks.update(text, 0, 0, text.length());
+    }
+
+    /**
+     * Must be called in a read action, the document must not change before the listener is added.
+     *
+     * @see PlantUml#extractSource(String, int)
+     */
+    @NotNull
+    public static String extractSource(@NotNull Document document, int offset, @NotNull Disposable parentDisposable) {
+        PlantUmlSourceIndex index = document.getUserData(KEY);
+        if (index == null) {
+            index = create(document, parentDisposable);
+        }
+        return index.extractSource(document.getImmutableCharSequence(), offset);
+    }
+
+    @NotNull
+    private static PlantUmlSourceIndex create(@NotNull Document document, @NotNull Disposable parentDisposable) {
+        UserDataHolderEx holder = (UserDataHolderEx) document;
+        PlantUmlSourceIndex created = new PlantUmlSourceIndex(document.getImmutableCharSequence());
+        PlantUmlSourceIndex index = holder.putUserDataIfAbsent(KEY, created);
+        if (index == created) {
+            document.addDocumentListener(new Updater(index), parentDisposable);
+            Disposer.register(parentDisposable, () -> holder.replace(KEY, index, null));
+        }
+        return index;
+    }
+
+    /**
+     * @param text the text after the change
+     */
+    public synchronized void update(@NotNull CharSequence text, int offset, int oldLength, int newLength) {
+        blocks.update(text, offset, oldLength, newLength);
+        markdownBlocks.update(text, offset, oldLength, newLength);
+    }
+
+    @NotNull
+    public synchronized String extractSource(@NotNull CharSequence text, int offset) {
+        int i = blocks.indexAt(offset);
+        if (i >= 0) {
+            return PlantUml.stripComments(blocks.getText(text, i));
+        }
+        i = markdownBlocks.indexAt(offset);
+        if (i >= 0) {
+            return PlantUml.stripComments(PlantUml.markdownSource(markdownBlocks.getText(text, i)));
+        }
+        return "";
+    }
+
+    synchronized int size() {
+        return blocks.size + markdownBlocks.size;
+    }
+
+    private static class Blocks {
+        private final Pattern pattern;
+        /**
+         * a block without the end tag extends to the end of the text
+         */
+        private final boolean openEnded;
+        private int[] starts = new int[0];
+        private int[] ends = new int[0];
+        private int size;
+
+        Blocks(Pattern pattern, boolean openEnded) {
+            this.pattern = pattern;
+            this.openEnded = openEnded;
+        }
+
+        void update(CharSequence text, int offset, int oldLength, int newLength) {
+            int delta = newLength - oldLength;
+            int first = firstEndingAfter(offset - MAX_TAG_LENGTH);
+            int prevEnd = first > 0 ? ends[first - 1] : 0;
+            int from;
+            if (first < size) {
+                from = Math.min(starts[first], Math.max(prevEnd, offset - MAX_TAG_LENGTH));
+            } else {
+                //an unterminated start tag before the change can be terminated by it
+                from = openEnded ? Math.max(prevEnd, offset - MAX_TAG_LENGTH) : prevEnd;
+            }
+
+            int[] newStarts = Arrays.copyOf(starts, Math.max(starts.length, 16));
+            int[] newEnds = Arrays.copyOf(ends, newStarts.length);
+            int newSize = first;
+            int next = first;
+            Matcher matcher = pattern.matcher(text);
+            while (from < text.length() && matcher.find(from)) {
+                int start = matcher.start();
+                int end = matcher.end();
+                while (next < size && (starts[next] < offset + oldLength || starts[next] + delta < start)) {
+                    next++;
+                }
+                if (next < size && starts[next] + delta == start && ends[next] + delta == end) {
+                    //the rest of the text is unchanged
+                    int rest = size - next;
+                    newStarts = ensureCapacity(newStarts, newSize + rest);
+                    newEnds = ensureCapacity(newEnds, newSize + rest);
+                    for (int i = 0; i < rest; i++) {
+                        newStarts[newSize + i] = starts[next + i] + delta;
+                        newEnds[newSize + i] = ends[next + i] + delta;
+                    }
+                    newSize += rest;
+                    break;
+                }
+                newStarts = ensureCapacity(newStarts, newSize + 1);
+                newEnds = ensureCapacity(newEnds, newSize + 1);
+                newStarts[newSize] = start;
+                newEnds[newSize] = end;
+                newSize++;
+                from = end;
+            }
+            starts = newStarts;
+            ends = newEnds;
+            size = newSize;
+        }
+
+        private static int[] ensureCapacity(int[] array, int capacity) {
+            return array.length >= capacity ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+        }
+
+        /**
+         * @return index of the first block with the end at or after the offset, or size
+         */
+        private int firstEndingAfter(int offset) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ends[mid] < offset) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return index of the block containing the offset, including its end, or -1
+         */
+        int indexAt(int offset) {
+            int i = firstEndingAfter(offset);
+            if (i < size && starts[i] <= offset) {
+                return i;
+            }
+            return -1;
+        }
+
+        String getText(CharSequence text, int i) {
+            return text.subSequence(starts[i], ends[i]).toString();
+        }
+    }
+
+    private static class Updater implements DocumentListener {
+        private final PlantUmlSourceIndex index;
+
+        Updater(PlantUmlSourceIndex index) {
+            this.index = index;
+        }
+
+        @Override
+        public void documentChanged(@NotNull DocumentEvent event) {
+            index.update(event.getDocument().getImmutableCharSequence(), event.getOffset(), event.getOldLength(), event.getNewLength());
+        }
+    }
+}
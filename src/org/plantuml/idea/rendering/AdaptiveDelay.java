@@ -0,0 +1,60 @@
+package org.plantuml.idea.rendering;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Render delay of each file following the moving average of its render time - cheap diagrams are rendered almost
+ * immediately, expensive ones wait until the typing stops.
+ * <p>
+ * The delay is the average clamped to [min, max]. Files which were not rendered yet use the fixed delay.
+ */
+public class AdaptiveDelay {
+    /**
+     * weight of the last render time in the average
+     */
+    protected static final double ALPHA = 0.3;
+    private static final int MAX_FILES = 100;
+
+    private final Map<String, Double> averages = new LinkedHashMap<String, Double>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Double> eldest) {
+            return size() > MAX_FILES;
+        }
+    };
+    private boolean enabled;
+    private long minMillis;
+    private long maxMillis;
+
+    public synchronized void setBounds(boolean enabled, long minMillis, long maxMillis) {
+        this.enabled = enabled;
+        this.minMillis = minMillis;
+        this.maxMillis = Math.max(minMillis, maxMillis);
+    }
+
+    public synchronized void record(@NotNull String file, long renderMillis) {
+        Double average = averages.get(file);
+        if (average == null) {
+            averages.put(file, (double) renderMillis);
+        } else {
+            averages.put(file, ALPHA * renderMillis + (1 - ALPHA) * average);
+        }
+    }
+
+    public synchronized long getDelayMillis(@NotNull String file, long fixedDelayMillis) {
+        if (!enabled) {
+            return fixedDelayMillis;
+        }
+        Double average = averages.get(file);
+        if (average == null) {
+            return Math.min(maxMillis, Math.max(minMillis, fixedDelayMillis));
+        }
+        return Math.min(maxMillis, Math.max(minMillis, Math.round(average)));
+    }
+
+    public synchronized void clear() {
+        averages.clear();
+    }
+}
@@ -6,38 +6,46 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.plantuml.idea.external.PlantUmlFacade;
 import org.plantuml.idea.plantuml.PlantUml;
-import org.plantuml.idea.util.UIUtils;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.*;
+
+import javax.imageio.ImageIO;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.net.URISyntaxException;
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
 import static org.plantuml.idea.intentions.ReverseArrowIntention.logger;
 
 public class ImageItem {
+    private static final String XLINK_NAMESPACE = "http://www.w3.org/1999/xlink";
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
 
     private final int page;
     @Nullable
     private final String description;
     @NotNull
     private final RenderingType renderingType;
+    /**
+     * decoded lazily from {@link #imageBytes}, strongly referenced only by the displayed label
+     */
     @Nullable
-    private BufferedImage image;
-    @NotNull
-    private final List<LinkData> links;
+    private volatile SoftReference<BufferedImage> image;
+    /**
+     * parsed lazily from {@link #svgBytes} - only when the user moves the mouse over the image
+     */
+    @Nullable
+    private volatile List<LinkData> links;
+    @Nullable
+    private volatile byte[] svgBytes;
+    @Nullable
+    private final File baseDir;
     @Nullable
     private final String title;
     /**
@@ -51,7 +59,13 @@ public class ImageItem {
     private final String pageSource;
     @NotNull
     private final String documentSource;
-    private byte[] imageBytes;
+    @Nullable
+    private final OffHeapBytes imageBytes;
+    /**
+     * for the tiled display, prepared lazily from the SVG {@link #imageBytes}
+     */
+    @Nullable
+    private volatile VectorImage vectorImage;
 
     public ImageItem(@Nullable File baseDir,
                      @NotNull PlantUml.ImageFormat format,
@@ -72,8 +86,36 @@ public class ImageItem {
         this.renderingType = renderingType;
         this.title = title;
         this.filename = filename;
-        this.imageBytes = imageBytes;
-        this.links = this.parseLinks(svgBytes, baseDir);
+        this.imageBytes = OffHeapBytes.of(imageBytes);
+        this.baseDir = baseDir;
+        if (svgBytes == null || svgBytes.length == 0 || baseDir == null) {
+            this.links = Collections.emptyList();
+        } else {
+            this.svgBytes = svgBytes;
+        }
+    }
+
+    public ImageItem(@NotNull PlantUml.ImageFormat format,
+                     @NotNull String documentSource,
+                     @Nullable String pageSource,
+                     int page,
+                     @Nullable String description,
+                     @Nullable byte[] imageBytes,
+                     @NotNull List<LinkData> links,
+                     @NotNull RenderingType renderingType,
+                     @Nullable String title,
+                     @Nullable String filename) {
+        this.format = format;
+        this.pageSource = pageSource;
+        this.documentSource = documentSource;
+        this.page = page;
+        this.description = description;
+        this.renderingType = renderingType;
+        this.title = title;
+        this.filename = filename;
+        this.imageBytes = OffHeapBytes.of(imageBytes);
+        this.links = links;
+        this.baseDir = null;
     }
 
     public ImageItem(int page, ImageItem item, @NotNull PlantUml.ImageFormat format) {
@@ -82,7 +124,11 @@ public class ImageItem {
         this.pageSource = item.pageSource;
         this.documentSource = item.documentSource;
         this.image = item.image;
+        this.vectorImage = item.vectorImage;
+        //svgBytes first, they are released after links are parsed
+        this.svgBytes = item.svgBytes;
         this.links = item.links;
+        this.baseDir = item.baseDir;
         this.imageBytes = item.imageBytes;
         this.renderingType = item.renderingType;
         this.title = item.title;
@@ -90,6 +136,24 @@ public class ImageItem {
         this.format = format;
     }
 
+    public ImageItem(int page, @NotNull String documentSource, ImageItem item) {
+        this.page = page;
+        this.description = item.description;
+        this.pageSource = item.pageSource;
+        this.documentSource = documentSource;
+        this.image = item.image;
+        this.vectorImage = item.vectorImage;
+        //svgBytes first, they are released after links are parsed
+        this.svgBytes = item.svgBytes;
+        this.links = item.links;
+        this.baseDir = item.baseDir;
+        this.imageBytes = item.imageBytes;
+        this.renderingType = item.renderingType;
+        this.title = item.title;
+        this.filename = item.filename;
+        this.format = item.format;
+    }
+
     @Nullable
     public String getTitle() {
         return title;
@@ -103,14 +167,21 @@ public class ImageItem {
 
     @Nullable
     public BufferedImage getImage() {
+        BufferedImage image = getDecodedImage();
         if (image == null && imageBytes != null) {
-            initImage();
+            image = initImage();
         }
         return image;
     }
 
     public void setImage(@Nullable BufferedImage image) {
-        this.image = image;
+        this.image = image != null ? new SoftReference<>(image) : null;
+    }
+
+    @Nullable
+    private BufferedImage getDecodedImage() {
+        SoftReference<BufferedImage> image = this.image;
+        return image != null ? image.get() : null;
     }
 
     @NotNull
@@ -132,15 +203,64 @@ public class ImageItem {
         return page;
     }
 
-    public boolean hasImage() {
-        if (image == null && imageBytes != null) {
-            initImage();
+    /**
+     * @return a copy of the encoded image, see {@link #hasImageBytes()}
+     */
+    @Nullable
+    public byte[] getImageBytes() {
+        return imageBytes != null ? imageBytes.toByteArray() : null;
+    }
+
+    /**
+     * presence check without decoding, the decoded image is softly referenced
+     */
+    public boolean hasImageBytes() {
+        return imageBytes != null;
+    }
+
+    public boolean hasVectorImage() {
+        return format == PlantUml.ImageFormat.SVG && imageBytes != null;
+    }
+
+    /**
+     * @return the SVG page prepared for painting by tiles, without rasterizing the whole page
+     */
+    @Nullable
+    public VectorImage getVectorImage() {
+        VectorImage vectorImage = this.vectorImage;
+        if (vectorImage == null && hasVectorImage()) {
+            synchronized (this) {
+                vectorImage = this.vectorImage;
+                if (vectorImage == null) {
+                    vectorImage = PlantUmlFacade.get().loadVectorImage(imageBytes.openStream());
+                    this.vectorImage = vectorImage;
+                }
+            }
         }
-        return image != null;
+        return vectorImage;
     }
 
-    public byte[] getImageBytes() {
-        return imageBytes;
+    /**
+     * approximate heap retained by this page - SVG for links plus the decoded image, if currently decoded
+     */
+    public long getRetainedBytes() {
+        long size = 0;
+        byte[] svgBytes = this.svgBytes;
+        if (svgBytes != null) {
+            size += svgBytes.length;
+        }
+        BufferedImage image = getDecodedImage();
+        if (image != null) {
+            size += (long) image.getWidth() * image.getHeight() * 4;
+        }
+        return size;
+    }
+
+    /**
+     * encoded image, outside of the heap
+     */
+    public long getOffHeapBytes() {
+        return imageBytes != null ? imageBytes.length() : 0;
     }
 
     @Nullable
@@ -150,9 +270,41 @@ public class ImageItem {
 
     @NotNull
     public List<LinkData> getLinks() {
+        List<LinkData> links = this.links;
+        if (links == null) {
+            synchronized (this) {
+                links = this.links;
+                if (links == null) {
+                    links = parseLinks(svgBytes, baseDir);
+                    this.links = links;
+                    svgBytes = null;
+                }
+            }
+        }
+        return links;
+    }
+
+    /**
+     * @return the links if they were already parsed, otherwise null and the SVG is in {@link #getUnparsedLinks()}
+     */
+    @Nullable
+    List<LinkData> getParsedLinks() {
         return links;
     }
 
+    /**
+     * SVG to parse the links from, null once parsed
+     */
+    @Nullable
+    byte[] getUnparsedLinks() {
+        return svgBytes;
+    }
+
+    @Nullable
+    File getBaseDir() {
+        return baseDir;
+    }
+
     protected boolean hasError() {
         String description = getDescription();
         if (description == null || description.isEmpty() || "(Error)".equals(description)) {
@@ -161,22 +313,29 @@ public class ImageItem {
         return false;
     }
 
-    void initImage() {
-        if (getImageBytes() != null) {
+    BufferedImage initImage() {
+        BufferedImage bufferedImage = null;
+        if (imageBytes != null) {
             if (format == PlantUml.ImageFormat.PNG) {
                 try {
-                    setImage(UIUtils.getBufferedImage(getImageBytes()));
+                    bufferedImage = ImageIO.read(imageBytes.openStream());
                 } catch (Exception e) {
                     throw new RuntimeException(e);
                 }
             } else if (format == PlantUml.ImageFormat.SVG) {  //could be done parallelly
-                BufferedImage bufferedImage = PlantUmlFacade.get().loadWithoutCache(null, new ByteArrayInputStream(getImageBytes()), 1.0f, null);
-                setImage(bufferedImage);
+                bufferedImage = PlantUmlFacade.get().loadWithoutCache(null, imageBytes.openStream(), 1.0f, null);
             }
+            setImage(bufferedImage);
         }
+        return bufferedImage;
     }
 
-    public class LinkData {
+    @NotNull
+    public PlantUml.ImageFormat getFormat() {
+        return format;
+    }
+
+    public static class LinkData {
         private final String text;
         private final Rectangle clickArea;
         private final boolean link;
@@ -209,115 +368,124 @@ public class ImageItem {
         }
     }
 
-    private List<LinkData> parseLinks(byte[] svgData, File baseDir) {
+    /**
+     * Extracts links and texts (for navigation to the source) from the SVG in a single pass, without building a DOM.
+     * Links come first.
+     * <pre>
+     * &lt;a href="ddd" target="_top" title="ddd" xlink:actuate="onRequest" xlink:href="ddd" xlink:show="new"
+     * xlink:title="ddd" xlink:type="simple"&gt;
+     * &lt;text fill="#0000FF" font-family="sans-serif" font-size="13" lengthAdjust="spacingAndGlyphs"
+     * text-decoration="underline" textLength="21" x="1235.5" y="3587.8857"&gt;ddd
+     * &lt;/text&gt;
+     * &lt;/a&gt;
+     * </pre>
+     */
+    @NotNull
+    public static List<LinkData> parseLinks(@Nullable byte[] svgData, @Nullable File baseDir) {
         if (svgData == null || svgData.length == 0 || baseDir == null) {
             return Collections.emptyList();
         }
+        List<LinkData> links = new ArrayList<>();
+        List<LinkData> texts = new ArrayList<>();
+        XMLStreamReader reader = null;
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            //http://stackoverflow.com/a/155874/685796
-            factory.setValidating(false);
-            factory.setNamespaceAware(true);
-            factory.setFeature("http://xml.org/sax/features/namespaces", false);
-            factory.setFeature("http://xml.org/sax/features/validation", false);
-            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-dtd-grammar", false);
-            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.parse(new ByteArrayInputStream(svgData));
-
-            ArrayList<LinkData> linkData = new ArrayList<>();
-            linkData.addAll(parseHyperLinks(document));
-            linkData.addAll(parseText(document));
-
-            return linkData;
-
-        } catch (Exception e) {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(svgData));
+            StringBuilder textContent = new StringBuilder();
+            int depth = 0;
+            int linkDepth = -1;
+            String href = null;
+            int textDepth = -1;
+            boolean textInLink = false;
+            Rectangle textArea = null;
+
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        String name = reader.getLocalName();
+                        if ("a".equals(name)) {
+                            linkDepth = depth;
+                            href = reader.getAttributeValue(XLINK_NAMESPACE, "href");
+                            if (href == null) {
+                                href = reader.getAttributeValue(null, "href");
+                            }
+                        } else if ("text".equals(name) && textDepth < 0) {
+                            textDepth = depth;
+                            textInLink = linkDepth >= 0 && linkDepth == depth - 1;
+                            textArea = textArea(reader);
+                            textContent.setLength(0);
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (textDepth >= 0 && !textInLink) {
+                            textContent.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (depth == textDepth) {
+                            if (textArea != null) {
+                                if (textInLink) {
+                                    if (href != null) {
+                                        links.add(new LinkData(href, textArea, true));
+                                    }
+                                } else if (textContent.length() > 0) {
+                                    texts.add(new LinkData(textContent.toString(), textArea, false));
+                                }
+                            }
+                            textDepth = -1;
+                        } else if (depth == linkDepth) {
+                            linkDepth = -1;
+                            href = null;
+                        }
+                        depth--;
+                        break;
+                }
+            }
+        } catch (XMLStreamException | RuntimeException e) {
             logger.debug(e);
             return Collections.emptyList();
-        }
-    }
-
-    @NotNull
-    private List<LinkData> parseHyperLinks(Document document) throws XPathExpressionException, URISyntaxException {
-        String xpathExpression = "//a";
-
-        XPathFactory xpf = XPathFactory.newInstance();
-        XPath xpath = xpf.newXPath();
-        XPathExpression expression = xpath.compile(xpathExpression);
-
-        NodeList svgPaths = (NodeList) expression.evaluate(document, XPathConstants.NODESET);
-
-        List<LinkData> urls = new ArrayList<LinkData>();
-        for (int i = 0; i < svgPaths.getLength(); i++) {
-            urls.addAll(createLink(svgPaths.item(i)));
-        }
-        return urls;
-    }
-
-    private Collection<? extends LinkData> parseText(Document document) throws XPathExpressionException {
-        String xpathExpression = "//text";
-
-        XPathFactory xpf = XPathFactory.newInstance();
-        XPath xpath = xpf.newXPath();
-        XPathExpression expression = xpath.compile(xpathExpression);
-
-        NodeList nodes = (NodeList) expression.evaluate(document, XPathConstants.NODESET);
-
-        List<LinkData> urls = new ArrayList<LinkData>();
-        for (int i = 0; i < nodes.getLength(); i++) {
-            Node node = nodes.item(i);
-            if (node.getParentNode() != null && node.getParentNode().getNodeName().equals("a")) {
-                continue;
-            }
-            String textContent = node.getTextContent();
-            if (StringUtils.isEmpty(textContent)) {
-                continue;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    logger.debug(e);
+                }
             }
-            urls.add(textNodeToUrlData(textContent, node, false));
         }
-        return urls;
+        links.addAll(texts);
+        return links;
     }
 
-    /**
-     * <a href="ddd" target="_top" title="ddd" xlink:actuate="onRequest" xlink:href="ddd" xlink:show="new"
-     * xlink:title="ddd" xlink:type="simple">
-     * <text fill="#0000FF" font-family="sans-serif" font-size="13" lengthAdjust="spacingAndGlyphs"
-     * text-decoration="underline" textLength="21" x="1235.5" y="3587.8857">ddd
-     * </text>
-     * </a>
-     */
-    private List<LinkData> createLink(Node linkNode) throws URISyntaxException {
-        List<LinkData> urls = new ArrayList<LinkData>();
-
-        String nodeValue = linkNode.getAttributes().getNamedItem("xlink:href").getNodeValue();
-
-        for (int i = 0; i < linkNode.getChildNodes().getLength(); i++) {
-            Node child = linkNode.getChildNodes().item(i);
-            if (child.getNodeName().equals("text")) {
-                urls.add(textNodeToUrlData(nodeValue, child, true));
-            }
+    @Nullable
+    private static Rectangle textArea(XMLStreamReader reader) {
+        String x = reader.getAttributeValue(null, "x");
+        String y = reader.getAttributeValue(null, "y");
+        String textLength = reader.getAttributeValue(null, "textLength");
+        String fontSize = reader.getAttributeValue(null, "font-size");
+        if (x == null || y == null || textLength == null || fontSize == null) {
+            return null;
+        }
+        try {
+            int height = (int) Float.parseFloat(fontSize);
+            return new Rectangle(
+                    (int) Float.parseFloat(x),
+                    (int) Float.parseFloat(y) - height,
+                    (int) Float.parseFloat(textLength),
+                    height
+            );
+        } catch (NumberFormatException e) {
+            return null;
         }
-
-        return urls;
     }
 
-    @NotNull
-    private LinkData textNodeToUrlData(String text, Node child, boolean link) {
-        NamedNodeMap nodeAttributes = child.getAttributes();
-        int x = (int) Float.parseFloat(nodeAttributes.getNamedItem("x").getNodeValue());
-        int y = (int) Float.parseFloat(nodeAttributes.getNamedItem("y").getNodeValue());
-        int textLength = (int) Float.parseFloat(nodeAttributes.getNamedItem("textLength").getNodeValue());
-        int height = (int) Float.parseFloat(nodeAttributes.getNamedItem("font-size").getNodeValue());
-
-        Rectangle rect = new Rectangle(
-                x,
-                y - height,
-                textLength,
-                height
-        );
-
-        return new LinkData(text, rect, link);
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
     }
 
     @Override
@@ -326,7 +494,8 @@ public class ImageItem {
                 .append("page", page)
                 .append("description", description)
                 .append("title", title)
-                .append("hasImage", hasImage())
+                .append("retainedBytes", getRetainedBytes())
+                .append("offHeapBytes", getOffHeapBytes())
                 .toString();
     }
 
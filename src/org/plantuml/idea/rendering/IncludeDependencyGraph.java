@@ -0,0 +1,155 @@
+package org.plantuml.idea.rendering;
+
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which diagrams include which files, so that a change of an included file invalidates only the diagrams depending on
+ * it, without checking timestamps of all included files on every rendering.
+ * <p>
+ * The included files of a diagram are all files included transitively - as collected by PlantUML. Fed by the rendering
+ * results, updated from VFS and document changes. A change is recorded as a stamp of the included file; a cached
+ * diagram is outdated when any of its included files changed after its rendering started.
+ * <p>
+ * Included files of a diagram are known only after its rendering, so changes of unknown files are remembered while any
+ * rendering is in progress - a file included for the first time can be changed before the diagram is registered.
+ */
+public class IncludeDependencyGraph {
+    private static final Logger LOG = Logger.getInstance(IncludeDependencyGraph.class);
+
+    private final Map<String, Set<String>> includesByDiagram = new HashMap<>();
+    private final Map<String, Set<String>> diagramsByInclude = new HashMap<>();
+    private final Map<String, Long> changeStamps = new HashMap<>();
+    /**
+     * changed during renderings, not included by any registered diagram
+     */
+    private final Set<String> unknownChanged = new HashSet<>();
+    private int renderings;
+    private long stamp;
+
+    public static IncludeDependencyGraph getInstance() {
+        return ServiceManager.getService(IncludeDependencyGraph.class);
+    }
+
+    /**
+     * @return stamp to be taken before the included files are read
+     */
+    public synchronized long getStamp() {
+        return stamp;
+    }
+
+    /**
+     * to be called before {@link #getStamp()} of the rendering, paired with {@link #renderingFinished()}
+     */
+    public synchronized void renderingStarted() {
+        renderings++;
+    }
+
+    /**
+     * to be called after the diagram was {@link #register registered}
+     */
+    public synchronized void renderingFinished() {
+        if (--renderings == 0) {
+            for (String path : unknownChanged) {
+                if (!diagramsByInclude.containsKey(path)) {
+                    changeStamps.remove(path);
+                }
+            }
+            unknownChanged.clear();
+        }
+    }
+
+    public synchronized void register(@NotNull String diagramPath, @Nullable Collection<File> includedFiles) {
+        Set<String> includes = new HashSet<>();
+        if (includedFiles != null) {
+            for (File file : includedFiles) {
+                includes.add(path(file));
+            }
+        }
+        Set<String> previous = includesByDiagram.put(diagramPath, includes);
+        if (previous != null) {
+            for (String include : previous) {
+                if (!includes.contains(include)) {
+                    removeDependency(include, diagramPath);
+                }
+            }
+        }
+        for (String include : includes) {
+            diagramsByInclude.computeIfAbsent(include, k -> new HashSet<>()).add(diagramPath);
+        }
+    }
+
+    private void removeDependency(String include, String diagramPath) {
+        Set<String> diagrams = diagramsByInclude.get(include);
+        if (diagrams != null) {
+            diagrams.remove(diagramPath);
+            if (diagrams.isEmpty()) {
+                diagramsByInclude.remove(include);
+                if (!unknownChanged.contains(include)) {
+                    changeStamps.remove(include);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param paths system independent paths of changed, moved or deleted files
+     * @return diagrams depending on any of the files
+     */
+    @NotNull
+    public synchronized Set<String> filesChanged(@NotNull Collection<String> paths) {
+        Set<String> affected = null;
+        for (String path : paths) {
+            Set<String> diagrams = diagramsByInclude.get(path);
+            if (diagrams == null) {
+                if (renderings > 0) {
+                    changeStamps.put(path, ++stamp);
+                    unknownChanged.add(path);
+                }
+                continue;
+            }
+            changeStamps.put(path, ++stamp);
+            if (affected == null) {
+                affected = new HashSet<>();
+            }
+            affected.addAll(diagrams);
+        }
+        if (affected == null) {
+            return Collections.emptySet();
+        }
+        LOG.debug("included files changed ", paths, ", affected diagrams ", affected);
+        return affected;
+    }
+
+    /**
+     * @param stamp {@link #getStamp()} taken before the rendering
+     */
+    public synchronized boolean changedSince(@Nullable Collection<File> includedFiles, long stamp) {
+        if (includedFiles == null) {
+            return false;
+        }
+        for (File file : includedFiles) {
+            Long changed = changeStamps.get(path(file));
+            if (changed != null && changed > stamp) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NotNull
+    private static String path(File file) {
+        return FileUtil.toSystemIndependentName(file.getAbsolutePath());
+    }
+}
@@ -0,0 +1,69 @@
+package org.plantuml.idea.rendering;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of one rendering phase. Percentiles are computed from the last {@link #WINDOW} samples, count, total and
+ * max cover all of them.
+ */
+public class LatencyHistogram {
+    public static final int WINDOW = 1024;
+
+    private final long[] samples;
+    private int next;
+    private int size;
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    public LatencyHistogram() {
+        this(WINDOW);
+    }
+
+    public LatencyHistogram(int window) {
+        this.samples = new long[window];
+    }
+
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        size = Math.min(size + 1, samples.length);
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public synchronized long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * @param percentile 0-100
+     * @return nearest-rank percentile of the recent samples, 0 when empty
+     */
+    public synchronized long getPercentileNanos(double percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * size);
+        return sorted[Math.min(size - 1, Math.max(0, rank - 1))];
+    }
+
+    public synchronized void reset() {
+        next = 0;
+        size = 0;
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+}
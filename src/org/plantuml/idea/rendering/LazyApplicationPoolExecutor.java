@@ -5,13 +5,19 @@ import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.plantuml.idea.toolwindow.ExecutionStatusPanel;
 
-import java.util.concurrent.Future;
-
 
 /**
  * This Executor executes Runnables sequentially and is so lazy that it executes only last RenderCommand submitted while
  * previously scheduled RenderCommand is running. Useful when you want to submit a lot of cumulative Runnables without
  * performance impact.
+ * <p>
+ * The running command is preempted when the new one renders something else and has at least the same
+ * {@link RenderCommand.Reason#getPriority() priority}, or when the source of the same file changed - typing always wins
+ * over stale work. Preempted command is cancelled at the next checkpoint and its thread is interrupted, which stops
+ * the Graphviz process. The next command starts only after the preempted one returned - there is never more than one
+ * rendering at a time, PlantUML has global state.
+ * <p>
+ * The delay is per file when {@link AdaptiveDelay adaptive}, following the time it takes to render it.
  *
  * @author Eugene Steinberg
  * @author Vojtech Krasa
@@ -24,8 +30,15 @@ public class LazyApplicationPoolExecutor {
     protected RenderCommand nextCommand;
     protected long startAfterNanos;
 
-    protected Future<?> future;
+    /**
+     * a pooled thread is scheduled or running, cleared only by that thread
+     */
+    protected boolean workerRunning;
+    private Thread workerThread;
+    protected volatile RenderCommand runningCommand;
     protected long delayNanos; // delay between command executions
+    protected final AdaptiveDelay adaptiveDelay = new AdaptiveDelay();
+    protected String lastFile;
     protected final Object POOL_THREAD_STICK = new Object();
 
     public LazyApplicationPoolExecutor(int delayMillis, @NotNull ExecutionStatusPanel executionStatusPanel) {
@@ -37,12 +50,29 @@ public class LazyApplicationPoolExecutor {
     public void setDelay(long delayMillis) {
         this.delayNanos = delayMillis * MILLION;
         logger.debug("settings delayNanos=", delayNanos);
-        setStartAfter();
+        setStartAfter(lastFile);
         synchronized (POOL_THREAD_STICK) {
             POOL_THREAD_STICK.notifyAll();
         }
     }
 
+    public void setAdaptiveDelay(boolean enabled, long minMillis, long maxMillis) {
+        logger.debug("settings adaptiveDelay=", enabled, " min=", minMillis, " max=", maxMillis);
+        adaptiveDelay.setBounds(enabled, minMillis, maxMillis);
+        setStartAfter(lastFile);
+    }
+
+    /**
+     * @return delay before rendering the file
+     */
+    public long getDelayMillis(String sourceFilePath) {
+        long fixedDelay = delayNanos / MILLION;
+        if (sourceFilePath == null) {
+            return fixedDelay;
+        }
+        return adaptiveDelay.getDelayMillis(sourceFilePath, fixedDelay);
+    }
+
     /**
      * Lazily executes the RenderCommand. Command will be queued for execution, but can be swallowed by another command
      * if it will be submitted before this command will be scheduled for execution
@@ -52,10 +82,13 @@ public class LazyApplicationPoolExecutor {
     public synchronized void execute(@NotNull final RenderCommand command) {
         Delay delay = command.delay;
         logger.debug("#execute ", command, " delay=", delay);
+        if (nextCommand != null) {
+            RenderingMetrics.getInstance().increment(RenderingMetrics.Counter.COALESCED_COMMANDS);
+        }
         nextCommand = command;
 
         if (delay == Delay.RESET_DELAY) {
-            setStartAfter();
+            setStartAfter(command.sourceFilePath);
         } else if (delay == Delay.NOW) {
             startAfterNanos = 0;
             synchronized (POOL_THREAD_STICK) {
@@ -63,16 +96,40 @@ public class LazyApplicationPoolExecutor {
             }
         }
 
-        if (future == null || future.isDone()) {
+        if (!workerRunning) {
             scheduleNext(null);
-        } else if (command.reason == RenderCommand.Reason.REFRESH) {
-            // TODO  https://forum.plantuml.net/9921/detecting-stacktrace-illegalstateexception-timeout4-timeout
-//            future.cancel(true);   
+        } else {
+            RenderCommand running = runningCommand;
+            if (running != null && shouldPreempt(running, command)) {
+                logger.debug("preempting ", running);
+                running.cancel();
+                //interrupted Graphviz fails with IllegalStateException, handled as cancellation by RenderCommand
+                workerThread.interrupt();
+            }
+            //the worker schedules the next command when the running one returns
         }
     }
 
-    private synchronized void setStartAfter() {
-        startAfterNanos = System.nanoTime() + this.delayNanos;
+    protected static boolean shouldPreempt(@NotNull RenderCommand running, @NotNull RenderCommand next) {
+        if (running.isCancelled() || isSameAs(running, next)) {
+            return false;
+        }
+        boolean sourceChanged = running.sourceFilePath.equals(next.sourceFilePath) && !running.source.equals(next.source);
+        return sourceChanged || next.reason.getPriority() >= running.reason.getPriority();
+    }
+
+    private static boolean isSameAs(RenderCommand previousCommand, RenderCommand nextCommand) {
+        return previousCommand.page == nextCommand.page
+                && previousCommand.scaledZoom == nextCommand.scaledZoom
+                && previousCommand.sourceFilePath.equals(nextCommand.sourceFilePath)
+                && previousCommand.source.equals(nextCommand.source);
+    }
+
+    private synchronized void setStartAfter(String sourceFilePath) {
+        lastFile = sourceFilePath;
+        long delayMillis = getDelayMillis(sourceFilePath);
+        startAfterNanos = System.nanoTime() + delayMillis * MILLION;
+        executionStatusPanel.setDelay(delayMillis);
     }
 
     private synchronized long getRemainingDelayMillis() {
@@ -82,25 +139,35 @@ public class LazyApplicationPoolExecutor {
     private synchronized RenderCommand pollCommand() {
         RenderCommand next = LazyApplicationPoolExecutor.this.nextCommand;
         LazyApplicationPoolExecutor.this.nextCommand = null;
+        runningCommand = next;
+        workerThread = Thread.currentThread();
         Thread.interrupted(); //clear flag
         return next;
     }
 
+    private synchronized void workerDone(RenderCommand polledCommand) {
+        runningCommand = null;
+        workerThread = null;
+        //a preemption could interrupt this thread after the command returned, the pooled thread is reused
+        Thread.interrupted();
+        workerRunning = false;
+        scheduleNext(polledCommand); //needed to execute the very last command
+    }
+
     private synchronized void scheduleNext(final RenderCommand previousCommand) {
         logger.debug("scheduleNext");
-        if (previousCommand != null && nextCommand != null && nextCommand.reason != RenderCommand.Reason.INCLUDES && nextCommand.reason != RenderCommand.Reason.REFRESH) {
-            if (previousCommand.page == nextCommand.page
-                    && previousCommand.scaledZoom == nextCommand.scaledZoom
-                    && previousCommand.sourceFilePath.equals(nextCommand.sourceFilePath)
-                    && previousCommand.source.equals(nextCommand.source)) {
+        if (previousCommand != null && !previousCommand.isCancelled() && nextCommand != null && nextCommand.reason != RenderCommand.Reason.INCLUDES && nextCommand.reason != RenderCommand.Reason.REFRESH) {
+            if (isSameAs(previousCommand, nextCommand)) {
                 logger.debug("nextCommand is same as previous, skipping");
+                RenderingMetrics.getInstance().increment(RenderingMetrics.Counter.COALESCED_COMMANDS);
                 nextCommand = null;
             }
         }
 
 
         if (nextCommand != null) {
-            future = ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+            workerRunning = true;
+            executeOnPooledThread(new Runnable() {
                 @Override
                 public void run() {
                     executionStatusPanel.update(ExecutionStatusPanel.State.WAITING);
@@ -121,12 +188,19 @@ public class LazyApplicationPoolExecutor {
                             long start = System.currentTimeMillis();
                             polledCommand.run();
                             logger.debug("command executed in ", System.currentTimeMillis() - start, "ms");
-                            setStartAfter();
+                            long renderTime = polledCommand.getRenderTime();
+                            if (renderTime >= 0) {
+                                adaptiveDelay.record(polledCommand.sourceFilePath, renderTime);
+                            }
+                            if (!polledCommand.isCancelled()) {
+                                //the preempting command already has its delay
+                                setStartAfter(polledCommand.sourceFilePath);
+                            }
                         }
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
                     } finally {
-                        scheduleNext(polledCommand); //needed to execute the very last command
+                        workerDone(polledCommand);
                     }
                 }
 
@@ -134,10 +208,16 @@ public class LazyApplicationPoolExecutor {
         }
     }
 
+    protected void executeOnPooledThread(Runnable runnable) {
+        ApplicationManager.getApplication().executeOnPooledThread(runnable);
+    }
+
     public synchronized void cancel() {
-        logger.debug("cancelling rendering: ", future);
+        logger.debug("cancelling rendering: ", runningCommand);
         nextCommand = null;
-        future.cancel(false);
+        synchronized (POOL_THREAD_STICK) {
+            POOL_THREAD_STICK.notifyAll();
+        }
     }
 
     public enum Delay {
@@ -0,0 +1,89 @@
+package org.plantuml.idea.rendering;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Encoded image kept in a direct buffer, outside of the IDE heap, so that cached diagrams do not add to GC pauses.
+ * The memory is released together with this object.
+ */
+public final class OffHeapBytes {
+    private final ByteBuffer buffer;
+
+    private OffHeapBytes(@NotNull byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        this.buffer = buffer.asReadOnlyBuffer();
+    }
+
+    @Nullable
+    @Contract("null -> null; !null -> !null")
+    public static OffHeapBytes of(@Nullable byte[] bytes) {
+        return bytes != null ? new OffHeapBytes(bytes) : null;
+    }
+
+    public int length() {
+        return buffer.capacity();
+    }
+
+    /**
+     * @return a copy on the heap
+     */
+    @NotNull
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[length()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * for decoding without a copy on the heap
+     */
+    @NotNull
+    public InputStream openStream() {
+        return new BufferInputStream(buffer.duplicate());
+    }
+
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(@NotNull byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
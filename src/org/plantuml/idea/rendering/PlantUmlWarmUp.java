@@ -0,0 +1,48 @@
+package org.plantuml.idea.rendering;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import org.plantuml.idea.external.PlantUmlFacade;
+import org.plantuml.idea.lang.settings.PlantUmlSettings;
+import org.plantuml.idea.plantuml.PlantUml;
+
+/**
+ * Renders tiny diagrams in the background after the start of the IDE, so that the first preview does not pay for
+ * loading PlantUML classes, the dot detection and font metrics. Disabled by {@link PlantUmlSettings#isWarmUp()} or
+ * when the heap is small.
+ */
+public class PlantUmlWarmUp {
+    private static final Logger LOG = Logger.getInstance(PlantUmlWarmUp.class);
+    private static final long MIN_MAX_HEAP_MB = 768;
+    private static final String SEQUENCE = "@startuml\nAlice -> Bob: warm-up\n@enduml";
+
+    public static void start() {
+        if (!PlantUmlSettings.getInstance().isWarmUp()) {
+            return;
+        }
+        long maxHeapMB = Runtime.getRuntime().maxMemory() / 1024 / 1024;
+        if (maxHeapMB < MIN_MAX_HEAP_MB) {
+            LOG.info("skipping PlantUML warm-up, max heap " + maxHeapMB + "MB");
+            return;
+        }
+        ApplicationManager.getApplication().executeOnPooledThread(PlantUmlWarmUp::warmUp);
+    }
+
+    private static void warmUp() {
+        long start = System.currentTimeMillis();
+        try {
+            PlantUmlFacade facade = PlantUmlFacade.get();
+            facade.render(request(PlantUml.TESTDOT, PlantUml.ImageFormat.PNG), null);
+            facade.render(request(SEQUENCE, PlantUml.ImageFormat.SVG), null);
+            LOG.info("PlantUML warm-up done in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (Throwable e) {
+            LOG.warn("PlantUML warm-up failed", e);
+        }
+    }
+
+    private static RenderRequest request(String source, PlantUml.ImageFormat format) {
+        RenderRequest renderRequest = new RenderRequest("", source, format, 0, 100, null, false, RenderCommand.Reason.REFRESH);
+        renderRequest.setUseSettings(true);
+        return renderRequest;
+    }
+}
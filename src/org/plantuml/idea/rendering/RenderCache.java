@@ -1,95 +1,167 @@
 package org.plantuml.idea.rendering;
 
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.fileEditor.FileDocumentManager;
-import com.intellij.openapi.vfs.VirtualFileManager;
+import org.jetbrains.annotations.NotNull;
+import org.plantuml.idea.plantuml.PlantUml;
 
-import java.util.ArrayDeque;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.NoSuchElementException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 
 
+/**
+ * LRU cache of rendered diagrams, bounded by the image bytes - encoded images off the heap plus the decoded images on
+ * the heap at the time of caching. Decoded images are softly referenced, see {@link ImageItem#getImage()}.
+ * <p>
+ * Items are keyed by the source file, a hash of the source, zoom and format, so a lookup of an already rendered diagram
+ * is a single map access. The last item per file and zoom is tracked separately, it is used as a base for incremental
+ * rendering when the exact source is not cached. Changes of included files are checked by the caller
+ * ({@link RenderCacheItem#includedFilesChanged()}).
+ * <p>
+ * Looked up from a background thread, updated on the EDT.
+ */
 public class RenderCache {
     public static final Logger logger = Logger.getInstance(RenderCache.class);
+    private static final long MB = 1024 * 1024;
 
-    private ArrayDeque<RenderCacheItem> cacheItems;
-    private int maxCacheSize;
+    private final LinkedHashMap<Key, RenderCacheItem> cacheItems = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, RenderCacheItem> lastItemByFile = new HashMap<>();
+    private final Map<RenderCacheItem, Footprint> footprints = new HashMap<>();
+    private long maxCacheSizeBytes;
+    private long cacheSizeBytes;
+    private long retainedBytes;
+    private long offHeapBytes;
     private RenderCacheItem displayedItem;
+    private RenderCacheItem lastAddedItem;
 
-    public RenderCache(int maxCacheSize) {
-        cacheItems = new ArrayDeque<RenderCacheItem>(maxCacheSize);
-        this.maxCacheSize = maxCacheSize;
+    public RenderCache(int maxCacheSizeMB) {
+        this.maxCacheSizeBytes = maxCacheSizeMB * MB;
     }
 
-    public void setMaxCacheSize(int maxCacheSize) {
-        this.maxCacheSize = maxCacheSize;
-        while (cacheItems.size() > maxCacheSize) {
-            cacheItems.removeFirst();
-        }
+    public synchronized void setMaxCacheSize(int maxCacheSizeMB) {
+        this.maxCacheSizeBytes = maxCacheSizeMB * MB;
+        evict();
     }
 
-    public RenderCacheItem getCachedItem(String sourceFilePath, String source, int selectedPage, int scaledZoom, FileDocumentManager fileDocumentManager, VirtualFileManager virtualFileManager) {
-        RenderCacheItem cacheItem = null;
-
-        //error not cached in ArrayDeque
+    /**
+     * Called in a background read action.
+     */
+    public RenderCacheItem getCachedItem(String sourceFilePath, String source, int selectedPage, int scaledZoom, PlantUml.ImageFormat format) {
+        RenderCacheItem displayedItem = getDisplayedItem();
+        //error not cached
         if (displayedItem != null
                 && displayedItem.getRenderResult().hasError()
-                && !displayedItem.includedFilesChanged(fileDocumentManager, virtualFileManager)
+                && !displayedItem.includedFilesChanged()
                 && !displayedItem.imageMissingOrSourceOrZoomChanged(source, selectedPage, scaledZoom)) {
             logger.debug("returning displayedItem (error=true, requiresRendering=false)");
             return displayedItem;
         }
+        return getCachedItem(sourceFilePath, source, scaledZoom, format, displayedItem);
+    }
 
+    private synchronized RenderCacheItem getCachedItem(String sourceFilePath, String source, int scaledZoom, PlantUml.ImageFormat format, RenderCacheItem displayedItem) {
+        RenderCacheItem cacheItem = cacheItems.get(new Key(sourceFilePath, source, scaledZoom, format));
+        if (cacheItem != null && cacheItem.getSource().equals(source)) {
+            logger.debug("returning cached item");
+            RenderingMetrics.getInstance().increment(RenderingMetrics.Counter.CACHE_HIT);
+            return cacheItem;
+        }
+        RenderingMetrics.getInstance().increment(RenderingMetrics.Counter.CACHE_MISS);
 
         if (displayedItem != null && displayedItem.getSourceFilePath().equals(sourceFilePath) && displayedItem.getScaledZoom() == scaledZoom) {
-            cacheItem = displayedItem;
-            if (cacheItem.getSource().equals(source)) {
-                logger.debug("returning displayedItem");
-                return cacheItem;
-            }
+            logger.debug("returning displayedItem");
+            return displayedItem;
         }
+        return lastItemByFile.get(fileKey(sourceFilePath, scaledZoom));
+    }
 
+    public synchronized void addToCache(RenderCacheItem cacheItem) {
+        Key key = new Key(cacheItem);
+        RenderCacheItem previous = cacheItems.put(key, cacheItem);
+        if (previous != null && previous != cacheItem) {
+            forget(previous);
+        }
+        Footprint footprint = new Footprint(cacheItem.getRetainedBytes(), cacheItem.getOffHeapBytes());
+        Footprint previousFootprint = footprints.put(cacheItem, footprint);
+        if (previousFootprint != null) {
+            subtract(previousFootprint);
+        }
+        add(footprint, 1);
+        logger.debug("cached item retainedBytes=", footprint.retainedBytes, " offHeapBytes=", footprint.offHeapBytes);
+        lastItemByFile.put(fileKey(cacheItem.getSourceFilePath(), cacheItem.getScaledZoom()), cacheItem);
+        lastAddedItem = cacheItem;
+        evict();
+    }
 
-        Iterator<RenderCacheItem> iterator = cacheItems.descendingIterator();
-        while (iterator.hasNext()) {
-            RenderCacheItem next = iterator.next();
-            if (next.getSourceFilePath().equals(sourceFilePath) && next.getScaledZoom() == scaledZoom) {
-                if (cacheItem == null) {
-                    cacheItem = next;
-                    if (cacheItem.getSource().equals(source)) {
-                        break;
-                    }
-                } else {
-                    if (next.getSource().equals(source)) {
-                        cacheItem = next;
-                        break;
-                    }
-                }
-            }
+    private void evict() {
+        Iterator<RenderCacheItem> iterator = cacheItems.values().iterator();
+        //always keep the most recent item
+        while (cacheSizeBytes > maxCacheSizeBytes && cacheItems.size() > 1 && iterator.hasNext()) {
+            RenderCacheItem eldest = iterator.next();
+            iterator.remove();
+            logger.debug("evicting ", eldest);
+            forget(eldest);
         }
-        return cacheItem;
     }
 
-    public void addToCache(RenderCacheItem cacheItem) {
-        if (cacheItems.size() > 0 && cacheItems.size() + 1 > maxCacheSize) {
-            cacheItems.removeFirst();
+    private void forget(RenderCacheItem item) {
+        Footprint footprint = footprints.remove(item);
+        if (footprint != null) {
+            subtract(footprint);
+        }
+        lastItemByFile.remove(fileKey(item.getSourceFilePath(), item.getScaledZoom()), item);
+        if (lastAddedItem == item) {
+            lastAddedItem = null;
         }
-        cacheItems.add(cacheItem);
     }
 
-    public boolean isDisplayed(RenderCacheItem cachedItem, int page) {
+    private void add(Footprint footprint, int sign) {
+        retainedBytes += sign * footprint.retainedBytes;
+        offHeapBytes += sign * footprint.offHeapBytes;
+        cacheSizeBytes += sign * footprint.size();
+        RenderingMetrics metrics = RenderingMetrics.getInstance();
+        metrics.addRetainedBytes(sign * footprint.retainedBytes);
+        metrics.addOffHeapBytes(sign * footprint.offHeapBytes);
+    }
+
+    private void subtract(Footprint footprint) {
+        add(footprint, -1);
+    }
+
+    public synchronized long getCacheSizeBytes() {
+        return cacheSizeBytes;
+    }
+
+    /**
+     * heap retained by the cached images when they were cached
+     */
+    public synchronized long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    public synchronized long getOffHeapBytes() {
+        return offHeapBytes;
+    }
+
+    public synchronized int size() {
+        return cacheItems.size();
+    }
+
+    public synchronized boolean isDisplayed(RenderCacheItem cachedItem, int page) {
         return displayedItem == cachedItem && cachedItem.getRequestedPage() == page;
     }
 
-    public RenderCacheItem getDisplayedItem() {
+    public synchronized RenderCacheItem getDisplayedItem() {
         return displayedItem;
     }
 
-    public void setDisplayedItem(RenderCacheItem displayedItem) {
+    public synchronized void setDisplayedItem(RenderCacheItem displayedItem) {
         this.displayedItem = displayedItem;
     }
 
-    public boolean isOlderRequest(RenderCacheItem cachedItem) {
+    public synchronized boolean isOlderRequest(RenderCacheItem cachedItem) {
         if (displayedItem != null) {
             return displayedItem.getVersion() > cachedItem.getVersion();
         } else {
@@ -98,30 +170,92 @@ public class RenderCache {
     }
 
 
-    public void removeFromCache(RenderCacheItem cachedItem) {
+    public synchronized void removeFromCache(RenderCacheItem cachedItem) {
         logger.debug("force removing from cache " + cachedItem);
-        cacheItems.remove(cachedItem);
+        Key key = new Key(cachedItem);
+        if (cacheItems.get(key) == cachedItem) {
+            cacheItems.remove(key);
+        }
+        forget(cachedItem);
         if (displayedItem == cachedItem) {
             displayedItem = null;
         }
     }
 
-    public boolean isSameFile(RenderCacheItem cachedItem) {
+    public synchronized boolean isSameFile(RenderCacheItem cachedItem) {
         if (displayedItem != null && cachedItem != null) {
             return displayedItem.getSourceFilePath().equals(cachedItem.getSourceFilePath());
         }
         return false;
     }
 
-    public void clear() {
+    public synchronized void clear() {
         cacheItems.clear();
+        lastItemByFile.clear();
+        for (Footprint footprint : footprints.values()) {
+            subtract(footprint);
+        }
+        footprints.clear();
+        lastAddedItem = null;
+    }
+
+    public synchronized RenderCacheItem getLast() {
+        return lastAddedItem;
+    }
+
+    @NotNull
+    private static String fileKey(String sourceFilePath, int scaledZoom) {
+        return scaledZoom + ":" + sourceFilePath;
+    }
+
+    private static class Footprint {
+        private final long retainedBytes;
+        private final long offHeapBytes;
+
+        Footprint(long retainedBytes, long offHeapBytes) {
+            this.retainedBytes = retainedBytes;
+            this.offHeapBytes = offHeapBytes;
+        }
+
+        long size() {
+            return retainedBytes + offHeapBytes;
+        }
     }
 
-    public RenderCacheItem getLast() {
-        try {
-            return cacheItems.getLast();
-        } catch (NoSuchElementException e) {
-            return null;
+    private static class Key {
+        private final String sourceFilePath;
+        private final int sourceHash;
+        private final int sourceLength;
+        private final int scaledZoom;
+        private final PlantUml.ImageFormat format;
+
+        Key(RenderCacheItem item) {
+            this(item.getSourceFilePath(), item.getSource(), item.getScaledZoom(), item.getRenderRequest().getFormat());
+        }
+
+        Key(String sourceFilePath, String source, int scaledZoom, PlantUml.ImageFormat format) {
+            this.sourceFilePath = sourceFilePath;
+            this.sourceHash = source.hashCode();
+            this.sourceLength = source.length();
+            this.scaledZoom = scaledZoom;
+            this.format = format;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return sourceHash == key.sourceHash
+                    && sourceLength == key.sourceLength
+                    && scaledZoom == key.scaledZoom
+                    && format == key.format
+                    && Objects.equals(sourceFilePath, key.sourceFilePath);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sourceFilePath, sourceHash, sourceLength, scaledZoom, format);
         }
     }
 }
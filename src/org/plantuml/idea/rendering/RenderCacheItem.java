@@ -11,8 +11,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
-import java.util.Arrays;
-import java.util.Map;
+import java.util.*;
 
 public class RenderCacheItem {
     private static final Logger LOG = Logger.getInstance(RenderCacheItem.class);
@@ -40,6 +39,31 @@ public class RenderCacheItem {
     }
 
 
+    /**
+     * heap retained by the images, see {@link ImageItem#getRetainedBytes()}
+     */
+    public long getRetainedBytes() {
+        Set<ImageItem> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+        long size = 0;
+        for (ImageItem imageItem : imageItems) {
+            if (imageItem != null && counted.add(imageItem)) {
+                size += imageItem.getRetainedBytes();
+            }
+        }
+        return size;
+    }
+
+    public long getOffHeapBytes() {
+        Set<ImageItem> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+        long size = 0;
+        for (ImageItem imageItem : imageItems) {
+            if (imageItem != null && counted.add(imageItem)) {
+                size += imageItem.getOffHeapBytes();
+            }
+        }
+        return size;
+    }
+
     public RenderRequest getRenderRequest() {
         return renderRequest;
     }
@@ -49,7 +73,14 @@ public class RenderCacheItem {
     }
 
     public boolean imageMissingOrSourceOrZoomChanged(String source, int page, int scaledZoom) {
-        if (imageMissing(page)) {
+        return imageMissingOrSourceOrZoomChanged(source, page, scaledZoom, -1, -1);
+    }
+
+    /**
+     * @param firstVisiblePage when all pages are displayed, only images of visible pages are required, -1 = all
+     */
+    public boolean imageMissingOrSourceOrZoomChanged(String source, int page, int scaledZoom, int firstVisiblePage, int lastVisiblePage) {
+        if (imageMissing(page, firstVisiblePage, lastVisiblePage)) {
             LOG.debug("image missing");
             return true;
         }
@@ -65,9 +96,15 @@ public class RenderCacheItem {
         return false;
     }
 
-    private boolean imageMissing(int page) {
+    private boolean imageMissing(int page, int firstVisiblePage, int lastVisiblePage) {
         if (page == -1) {
-            for (int i = 0; i < imageItems.length; i++) {
+            int from = 0;
+            int to = imageItems.length - 1;
+            if (firstVisiblePage != -1) {
+                from = firstVisiblePage;
+                to = Math.min(lastVisiblePage, to);
+            }
+            for (int i = from; i <= to; i++) {
                 if (!hasImage(i)) {
                     return true;
                 }
@@ -101,6 +138,17 @@ public class RenderCacheItem {
         return imageItems;
     }
 
+    /**
+     * included files changed since the rendering started, see {@link IncludeDependencyGraph}
+     */
+    public boolean includedFilesChanged() {
+        Map<File, Long> includedFiles = renderResult.getIncludedFiles();
+        return includedFiles != null && IncludeDependencyGraph.getInstance().changedSince(includedFiles.keySet(), renderRequest.getIncludesStamp());
+    }
+
+    /**
+     * by the timestamps of the included files, for results of previous sessions
+     */
     public boolean includedFilesChanged(FileDocumentManager fileDocumentManager, VirtualFileManager virtualFileManager) {
         boolean result = false;
         Map<File, Long> includedFiles = renderResult.getIncludedFiles();
@@ -181,10 +229,13 @@ public class RenderCacheItem {
         return imageItems.length > page ? imageItems[page] : null;
     }
 
+    /**
+     * presence of the encoded image, nothing is decoded - a tiled SVG page is never rasterized as a whole
+     */
     public boolean hasImage(int i) {
         ImageItem imageItem = getImageItem(i);
         if (imageItem != null) {
-            return imageItem.hasImage();
+            return imageItem.hasImageBytes();
         }
         return false;
     }
@@ -3,6 +3,7 @@ package org.plantuml.idea.rendering;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import org.apache.commons.lang.builder.ToStringBuilder;
+import org.jetbrains.annotations.NotNull;
 import org.plantuml.idea.external.PlantUmlFacade;
 import org.plantuml.idea.plantuml.PlantUml;
 import org.plantuml.idea.toolwindow.ExecutionStatusPanel;
@@ -12,6 +13,10 @@ import java.util.List;
 
 public abstract class RenderCommand implements Runnable {
     public static final Logger logger = Logger.getInstance(RenderCommand.class);
+    /**
+     * pages around the visible ones rendered together with them, the rest is rendered when scrolled to
+     */
+    public static final int PREFETCH_PAGES = 2;
 
     protected Reason reason;
     protected String sourceFilePath;
@@ -23,14 +28,33 @@ public abstract class RenderCommand implements Runnable {
     protected boolean renderUrlLinks;
     protected LazyApplicationPoolExecutor.Delay delay;
     protected ExecutionStatusPanel label;
+    protected int firstVisiblePage = -1;
+    protected int lastVisiblePage = -1;
+    protected boolean tiled;
 
+    protected volatile boolean cancelled;
+    protected volatile long renderTime = -1;
+
+    /**
+     * priority decides whether a new command preempts the running one, see {@link LazyApplicationPoolExecutor}
+     */
     public enum Reason {
-        INCLUDES,
-        FILE_SWITCHED,
-        REFRESH,
-        CARET,
-        MANUAL_UPDATE, /* no function*/
-        SOURCE_PAGE_ZOOM
+        INCLUDES(1),
+        FILE_SWITCHED(2),
+        REFRESH(3),
+        CARET(0),
+        MANUAL_UPDATE(1), /* no function*/
+        SOURCE_PAGE_ZOOM(2);
+
+        private final int priority;
+
+        Reason(int priority) {
+            this.priority = priority;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
     }
 
     public RenderCommand(Reason reason, String sourceFilePath, String source, int page, int scaledZoom, RenderCacheItem cachedItem, int version, boolean renderUrlLinks, LazyApplicationPoolExecutor.Delay delay, ExecutionStatusPanel label) {
@@ -46,50 +70,179 @@ public abstract class RenderCommand implements Runnable {
         this.label = label;
     }
 
+    /**
+     * pages visible in the tool window, when all pages are displayed - they are rendered and displayed first
+     */
+    public void setVisiblePages(int firstVisiblePage, int lastVisiblePage) {
+        this.firstVisiblePage = firstVisiblePage;
+        this.lastVisiblePage = lastVisiblePage;
+    }
+
+    /**
+     * render SVG at 100% for the tiled display, images are not rasterized
+     */
+    public void setTiled(boolean tiled) {
+        this.tiled = tiled;
+    }
+
+    /**
+     * the command stops at the next checkpoint, the thread should be interrupted too to stop Graphviz
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return time of the last rendering in ms, or -1 when nothing was rendered (cancelled, loaded from disk cache)
+     */
+    public long getRenderTime() {
+        return renderTime;
+    }
+
+    @NotNull
+    private RenderRequest newRenderRequest(PlantUml.ImageFormat imageFormat, Reason reason) {
+        RenderRequest renderRequest = new RenderRequest(sourceFilePath, source, imageFormat, page, scaledZoom, version, renderUrlLinks, reason);
+        renderRequest.setCancellationCheck(this::isCancelled);
+        renderRequest.setTiled(tiled);
+        renderRequest.setIncludesStamp(IncludeDependencyGraph.getInstance().getStamp());
+        return renderRequest;
+    }
+
     @Override
     public void run() {
+        if (source.isEmpty()) {
+            logger.debug("source is empty");
+            return;
+        }
+        IncludeDependencyGraph includeGraph = IncludeDependencyGraph.getInstance();
+        includeGraph.renderingStarted();
+        try {
+            render(includeGraph);
+        } finally {
+            includeGraph.renderingFinished();
+        }
+    }
+
+    private void render(IncludeDependencyGraph includeGraph) {
+        RenderingMetrics metrics = RenderingMetrics.getInstance();
         try {
-            if (source.isEmpty()) {
-                logger.debug("source is empty");
-                return;
-            }
             long start = System.currentTimeMillis();
             label.update(version, ExecutionStatusPanel.State.EXECUTING);
 
 
             PlantUml.ImageFormat imageFormat = PlantUml.ImageFormat.PNG;
 
-            final RenderRequest renderRequest = new RenderRequest(sourceFilePath, source, imageFormat, page, scaledZoom, version, renderUrlLinks, reason);
-            long s1 = System.currentTimeMillis();
-            final RenderResult result = PlantUmlFacade.get().render(renderRequest, cachedItem);
-            logger.debug("render ", (System.currentTimeMillis() - s1), "ms");
+            RenderRequest renderRequest = newRenderRequest(imageFormat, reason);
+            long s1 = System.nanoTime();
+            RenderDiskCache diskCache = RenderDiskCache.getInstance();
+            boolean useDiskCache = diskCache.isEnabled();
+            RenderResult result = null;
+            boolean rendered = false;
+            if (useDiskCache && cachedItem == null && reason != Reason.REFRESH) {
+                result = diskCache.load(renderRequest);
+                metrics.increment(result != null ? RenderingMetrics.Counter.DISK_CACHE_HIT : RenderingMetrics.Counter.DISK_CACHE_MISS);
+            }
+            if (result == null) {
+                RenderCacheItem baseItem = cachedItem;
+                if (isProgressive()) {
+                    RenderResult visibleResult = renderVisiblePages(imageFormat, start);
+                    if (visibleResult.hasError() || (firstVisiblePage == 0 && visibleResult.getPages() <= lastVisiblePage + 1)) {
+                        result = visibleResult;
+                    } else {
+                        baseItem = new RenderCacheItem(renderRequest, visibleResult, page, version);
+                        renderRequest = newRenderRequest(imageFormat, Reason.SOURCE_PAGE_ZOOM);
+                        renderRequest.setRenderedPages(Math.max(0, firstVisiblePage - PREFETCH_PAGES), lastVisiblePage + PREFETCH_PAGES);
+                        renderRequest.setPriorityPage(firstVisiblePage);
+                    }
+                }
+                if (result == null) {
+                    result = PlantUmlFacade.get().render(renderRequest, baseItem);
+                }
+                logger.debug("render ", metrics.recordSince(RenderingMetrics.Phase.RENDER, s1), "ms");
+                rendered = true;
+                if (useDiskCache) {
+                    diskCache.storeLater(renderRequest, result);
+                }
+            } else {
+                logger.debug("loaded from disk cache ", (System.nanoTime() - s1) / 1000000, "ms");
+            }
+
+            includeGraph.register(sourceFilePath, result.getIncludedFiles() != null ? result.getIncludedFiles().keySet() : null);
 
-            long s2 = System.currentTimeMillis();
+            long s2 = System.nanoTime();
             initImages(result);
-            logger.debug("initImages ", (System.currentTimeMillis() - s2), "ms");
+            logger.debug("initImages ", metrics.recordSince(RenderingMetrics.Phase.INIT_IMAGES, s2), "ms");
 
             final RenderCacheItem newItem = new RenderCacheItem(renderRequest, result, page, version);
             final long total = System.currentTimeMillis() - start;
 
+            final RenderResult finalResult = result;
+            if (cancelled) {
+                throw new RenderingCancelledException();
+            }
+            if (rendered) {
+                renderTime = total;
+                metrics.record(RenderingMetrics.Phase.TOTAL, total * 1000000);
+            }
             if (!Thread.currentThread().isInterrupted() && hasImages(newItem.getImageItems())) {
-                ApplicationManager.getApplication().invokeLater(() -> displayResultOnEDT(newItem, total, result));
+                ApplicationManager.getApplication().invokeLater(() -> displayResultOnEDT(newItem, total, finalResult));
             } else {
                 logger.debug("no images rendered");
                 label.update(version, ExecutionStatusPanel.State.DONE, total, result);
             }
         } catch (RenderingCancelledException e) {
             logger.info("command interrupted", e);
+            metrics.increment(RenderingMetrics.Counter.CANCELLED_COMMANDS);
             label.update(version, ExecutionStatusPanel.State.CANCELLED);
         } catch (Throwable e) {
+            if (cancelled) {
+                //interrupted PlantUML or Graphviz fails with various exceptions
+                logger.debug("command cancelled ", e);
+                metrics.increment(RenderingMetrics.Counter.CANCELLED_COMMANDS);
+                label.update(version, ExecutionStatusPanel.State.CANCELLED);
+                return;
+            }
             label.update(version, ExecutionStatusPanel.State.ERROR);
             logger.error("Exception occurred rendering " + this, e);
         }
     }
 
+    private boolean isProgressive() {
+        return page == -1 && firstVisiblePage >= 0;
+    }
+
+    /**
+     * Renders and displays only the pages visible in the tool window, so that the user does not wait for the whole
+     * document.
+     */
+    private RenderResult renderVisiblePages(PlantUml.ImageFormat imageFormat, long start) {
+        RenderRequest visibleRequest = newRenderRequest(imageFormat, reason);
+        visibleRequest.setRenderedPages(firstVisiblePage, lastVisiblePage);
+        visibleRequest.setRemainingPagesFollow(true);
+        RenderResult result = PlantUmlFacade.get().render(visibleRequest, cachedItem);
+        initImages(result);
+
+        RenderCacheItem item = new RenderCacheItem(visibleRequest, result, page, version);
+        long total = System.currentTimeMillis() - start;
+        logger.debug("visible pages ", firstVisiblePage, "-", lastVisiblePage, " rendered in ", total, "ms");
+        if (!cancelled && !Thread.currentThread().isInterrupted() && hasImages(item.getImageItems())) {
+            ApplicationManager.getApplication().invokeLater(() -> displayResultOnEDT(item, total, result));
+        }
+        return result;
+    }
+
     private void initImages(RenderResult result) {
         List<ImageItem> imageItems = result.getImageItems();
         for (ImageItem imageItem : imageItems) {
-            imageItem.initImage();
+            if (tiled && imageItem.hasVectorImage()) {
+                imageItem.getVectorImage();
+            } else {
+                imageItem.initImage();
+            }
         }
     }
 
@@ -97,7 +250,7 @@ public abstract class RenderCommand implements Runnable {
 
     private boolean hasImages(ImageItem[] imageItems) {
         for (ImageItem imageItem : imageItems) {
-            if (imageItem != null && imageItem.hasImage()) {
+            if (imageItem != null && imageItem.hasImageBytes()) {
                 return true;
             }
         }
@@ -114,6 +267,8 @@ public abstract class RenderCommand implements Runnable {
                 .append("scaledZoom", scaledZoom)
                 .append("cachedItem", cachedItem)
                 .append("version", version)
+                .append("cancelled", cancelled)
+                .append("visiblePages", firstVisiblePage + "-" + lastVisiblePage)
                 .toString();
     }
 }
@@ -0,0 +1,210 @@
+package org.plantuml.idea.rendering;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.external.PlantUmlFacade;
+import org.plantuml.idea.lang.settings.PlantUmlSettings;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Second tier of {@link RenderCache}, stored in the IDE system directory so that diagrams rendered before a restart
+ * do not need to be rendered again.
+ * <p>
+ * Entries are keyed by a hash of the source, zoom, format, PlantUML version and the settings affecting the output.
+ * Included files are checked on load. Least recently used entries are deleted on a pooled thread once the size limit is
+ * exceeded.
+ */
+public class RenderDiskCache {
+    private static final Logger LOG = Logger.getInstance(RenderDiskCache.class);
+    private static final long MB = 1024 * 1024;
+    private static final String EXTENSION = ".bin";
+
+    private final File cacheDir;
+    private final AtomicBoolean evictionScheduled = new AtomicBoolean();
+
+    public static RenderDiskCache getInstance() {
+        return ServiceManager.getService(RenderDiskCache.class);
+    }
+
+    public RenderDiskCache() {
+        this(new File(PathManager.getSystemPath(), "plantuml4idea/render-cache"));
+    }
+
+    public RenderDiskCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public boolean isEnabled() {
+        return PlantUmlSettings.getInstance().getDiskCacheSizeMBAsInt() > 0;
+    }
+
+    /**
+     * @throws RenderingCancelledException when the request was cancelled before or while reading, so that a cancelled
+     *                                     or outdated rendering does not wait for the disk
+     */
+    @Nullable
+    public RenderResult load(@NotNull RenderRequest renderRequest) {
+        checkCancelled(renderRequest);
+        File file = getFile(renderRequest);
+        if (!file.isFile()) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            RenderResult result = RenderResultSerializer.read(in);
+            checkCancelled(renderRequest);
+            RenderCacheItem item = new RenderCacheItem(renderRequest, result, renderRequest.getPage(), 0);
+            if (item.includedFilesChanged(FileDocumentManager.getInstance(), VirtualFileManager.getInstance())) {
+                LOG.debug("included files changed, deleting ", file);
+                FileUtil.delete(file);
+                return null;
+            }
+            //used as access time for eviction
+            file.setLastModified(System.currentTimeMillis());
+            LOG.debug("loaded ", file, " in ", RenderingMetrics.getInstance().recordSince(RenderingMetrics.Phase.DISK_CACHE_LOAD, start), "ms");
+            return result;
+        } catch (RenderingCancelledException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("unable to read " + file + ", deleting", e);
+            FileUtil.delete(file);
+            return null;
+        }
+    }
+
+    private static void checkCancelled(@NotNull RenderRequest renderRequest) {
+        if (renderRequest.isCancelled() || Thread.currentThread().isInterrupted()) {
+            throw new RenderingCancelledException();
+        }
+    }
+
+    public void storeLater(@NotNull RenderRequest renderRequest, @NotNull RenderResult result) {
+        if (!isStorable(result)) {
+            return;
+        }
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            store(renderRequest, result);
+            evictLater();
+        });
+    }
+
+    /**
+     * only complete and successful results, so that a cached result can be displayed as it is
+     */
+    private static boolean isStorable(RenderResult result) {
+        if (result.hasError() || result.getImageItems().isEmpty()) {
+            return false;
+        }
+        for (ImageItem imageItem : result.getImageItems()) {
+            if (imageItem == null || !imageItem.hasImageBytes()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void store(@NotNull RenderRequest renderRequest, @NotNull RenderResult result) {
+        File file = getFile(renderRequest);
+        File tmp = new File(cacheDir, file.getName() + ".tmp");
+        try {
+            FileUtil.createParentDirs(tmp);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                RenderResultSerializer.write(result, out);
+            }
+            FileUtil.rename(tmp, file);
+            LOG.debug("stored ", file);
+        } catch (IOException e) {
+            LOG.warn("unable to write " + file, e);
+            FileUtil.delete(tmp);
+        }
+    }
+
+    private void evictLater() {
+        if (evictionScheduled.compareAndSet(false, true)) {
+            ApplicationManager.getApplication().executeOnPooledThread(() -> {
+                try {
+                    evict(PlantUmlSettings.getInstance().getDiskCacheSizeMBAsInt() * MB);
+                } finally {
+                    evictionScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    void evict(long maxSizeBytes) {
+        File[] files = cacheDir.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= maxSizeBytes) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (size <= maxSizeBytes) {
+                break;
+            }
+            long length = file.length();
+            if (FileUtil.delete(file)) {
+                LOG.debug("evicted ", file);
+                size -= length;
+            }
+        }
+    }
+
+    public void clear() {
+        FileUtil.delete(cacheDir);
+    }
+
+    @NotNull
+    private File getFile(RenderRequest renderRequest) {
+        return new File(cacheDir, key(renderRequest) + EXTENSION);
+    }
+
+    @NotNull
+    static String key(RenderRequest renderRequest) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(PlantUmlFacade.get().version()).append('\n');
+        sb.append(renderRequest.getFormat()).append('\n');
+        sb.append(renderRequest.getScaledZoom()).append('\n');
+        sb.append(renderRequest.isRenderUrlLinks()).append('\n');
+        sb.append(renderRequest.isTiled()).append('\n');
+        //relative includes
+        sb.append(renderRequest.getBaseDir()).append('\n');
+        sb.append(renderRequest.getSettingsFingerprint()).append('\n');
+        sb.append(renderRequest.getSource());
+        return sha1(sb.toString());
+    }
+
+    @NotNull
+    private static String sha1(String s) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
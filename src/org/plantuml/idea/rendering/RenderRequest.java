@@ -2,10 +2,13 @@ package org.plantuml.idea.rendering;
 
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.lang.settings.PlantUmlSettings;
 import org.plantuml.idea.plantuml.PlantUml;
 import org.plantuml.idea.util.UIUtils;
 
 import java.io.File;
+import java.util.function.BooleanSupplier;
 
 public class RenderRequest {
     private final String sourceFilePath;
@@ -19,6 +22,29 @@ public class RenderRequest {
     private boolean renderUrlLinks;
     private RenderCommand.Reason reason;
     protected boolean useSettings = true;
+    /**
+     * SVG rendered at 100% for {@link org.plantuml.idea.toolwindow.TiledImageIcon}, zoomed without rendering again
+     */
+    private boolean tiled;
+    /**
+     * {@link IncludeDependencyGraph#getStamp()} before the rendering
+     */
+    private long includesStamp;
+    /**
+     * when all pages are requested, only pages in this range are rendered, the rest is deferred, -1 = no limit
+     */
+    private int firstRenderedPage = -1;
+    private int lastRenderedPage = -1;
+    /**
+     * page rendered first, when pages are rendered in parallel
+     */
+    private int priorityPage = -1;
+    /**
+     * the remaining pages are rendered by the next request, which reuses the parsed diagram
+     */
+    private boolean remainingPagesFollow;
+    @Nullable
+    private BooleanSupplier cancellationCheck;
 
     public RenderRequest(String sourceFilePath,
                          @NotNull String source,
@@ -46,10 +72,34 @@ public class RenderRequest {
         this.page = renderRequest.page;
         this.scaledZoom = renderRequest.scaledZoom;
         this.useSettings = renderRequest.useSettings;
+        this.includesStamp = renderRequest.includesStamp;
         this.version = null;
     }
 
 
+    /**
+     * same request with a different source, e.g. with inlined includes
+     */
+    public RenderRequest(@NotNull RenderRequest renderRequest,
+                         @NotNull String source) {
+        this.sourceFilePath = renderRequest.sourceFilePath;
+        this.source = source;
+        this.format = renderRequest.format;
+        this.page = renderRequest.page;
+        this.scaledZoom = renderRequest.scaledZoom;
+        this.version = renderRequest.version;
+        this.renderUrlLinks = renderRequest.renderUrlLinks;
+        this.reason = renderRequest.reason;
+        this.useSettings = renderRequest.useSettings;
+        this.tiled = renderRequest.tiled;
+        this.includesStamp = renderRequest.includesStamp;
+        this.firstRenderedPage = renderRequest.firstRenderedPage;
+        this.lastRenderedPage = renderRequest.lastRenderedPage;
+        this.priorityPage = renderRequest.priorityPage;
+        this.remainingPagesFollow = renderRequest.remainingPagesFollow;
+        this.cancellationCheck = renderRequest.cancellationCheck;
+    }
+
     @NotNull
     public String getSource() {
         return source;
@@ -92,10 +142,89 @@ public class RenderRequest {
         return useSettings;
     }
 
+    /**
+     * settings the output depends on, null when the request does not use settings
+     */
+    @Nullable
+    public String getSettingsFingerprint() {
+        if (!useSettings) {
+            return null;
+        }
+        PlantUmlSettings settings = PlantUmlSettings.getInstance();
+        return settings.getEncoding() + "\n" + settings.getConfig() + "\n" + settings.getIncludedPaths() + "\n"
+                + settings.getDotExecutable() + "\n" + settings.getPLANTUML_LIMIT_SIZE() + "\n" + settings.isSmetanaLayout();
+    }
+
     public void setUseSettings(boolean useSettings) {
         this.useSettings = useSettings;
     }
 
+    public boolean isTiled() {
+        return tiled;
+    }
+
+    public void setTiled(boolean tiled) {
+        this.tiled = tiled;
+    }
+
+    public long getIncludesStamp() {
+        return includesStamp;
+    }
+
+    public void setIncludesStamp(long includesStamp) {
+        this.includesStamp = includesStamp;
+    }
+
+    public void setRenderedPages(int firstRenderedPage, int lastRenderedPage) {
+        this.firstRenderedPage = firstRenderedPage;
+        this.lastRenderedPage = lastRenderedPage;
+    }
+
+    public int getFirstRenderedPage() {
+        return firstRenderedPage;
+    }
+
+    public int getLastRenderedPage() {
+        return lastRenderedPage;
+    }
+
+    public int getPriorityPage() {
+        return priorityPage;
+    }
+
+    public void setPriorityPage(int priorityPage) {
+        this.priorityPage = priorityPage;
+    }
+
+    public boolean isRemainingPagesFollow() {
+        return remainingPagesFollow;
+    }
+
+    public void setRemainingPagesFollow(boolean remainingPagesFollow) {
+        this.remainingPagesFollow = remainingPagesFollow;
+    }
+
+    /**
+     * @param requestedPage {@link #getPage()}, or -1 when the requested page does not exist
+     */
+    public boolean shouldRender(int requestedPage, int page) {
+        if (requestedPage != -1) {
+            return requestedPage == page;
+        }
+        return firstRenderedPage == -1 || (firstRenderedPage <= page && page <= lastRenderedPage);
+    }
+
+    public void setCancellationCheck(@Nullable BooleanSupplier cancellationCheck) {
+        this.cancellationCheck = cancellationCheck;
+    }
+
+    /**
+     * cooperative cancellation, checked by the renderer between the rendering phases
+     */
+    public boolean isCancelled() {
+        return cancellationCheck != null && cancellationCheck.getAsBoolean();
+    }
+
     public boolean requestedRefreshOrIncludesChanged() {
         return reason == RenderCommand.Reason.REFRESH || reason == RenderCommand.Reason.INCLUDES;
     }
@@ -115,6 +244,8 @@ public class RenderRequest {
                 .append("reason", reason)
                 .append("version", version)
                 .append("useSettings", useSettings)
+                .append("firstRenderedPage", firstRenderedPage)
+                .append("lastRenderedPage", lastRenderedPage)
                 .toString();
     }
 
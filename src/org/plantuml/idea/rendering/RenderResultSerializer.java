@@ -0,0 +1,169 @@
+package org.plantuml.idea.rendering;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.plantuml.PlantUml;
+
+import java.awt.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary form of a {@link RenderResult} - pages with image bytes, titles and links, and the included files.
+ * <p>
+ * Links not parsed yet are written as the SVG they are parsed from, so that storing a result does not parse them.
+ */
+public class RenderResultSerializer {
+    private static final int FORMAT_VERSION = 2;
+
+    public static void write(@NotNull RenderResult result, @NotNull DataOutput out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(result.getStrategy().name());
+        out.writeInt(result.getPages());
+
+        List<ImageItem> imageItems = result.getImageItems();
+        out.writeInt(imageItems.size());
+        for (ImageItem imageItem : imageItems) {
+            writeImageItem(imageItem, out);
+        }
+
+        Map<File, Long> includedFiles = result.getIncludedFiles();
+        if (includedFiles == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(includedFiles.size());
+            for (Map.Entry<File, Long> entry : includedFiles.entrySet()) {
+                out.writeUTF(entry.getKey().getPath());
+                out.writeLong(entry.getValue() != null ? entry.getValue() : 0);
+            }
+        }
+    }
+
+    @NotNull
+    public static RenderResult read(@NotNull DataInput in) throws IOException {
+        int formatVersion = in.readInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("unsupported format version " + formatVersion);
+        }
+        RenderingType strategy = RenderingType.valueOf(in.readUTF());
+        int pages = in.readInt();
+        RenderResult result = new RenderResult(strategy, pages);
+
+        int items = in.readInt();
+        for (int i = 0; i < items; i++) {
+            result.addCachedImage(readImageItem(in));
+        }
+
+        int includedFilesCount = in.readInt();
+        if (includedFilesCount >= 0) {
+            LinkedHashMap<File, Long> includedFiles = new LinkedHashMap<>();
+            for (int i = 0; i < includedFilesCount; i++) {
+                includedFiles.put(new File(in.readUTF()), in.readLong());
+            }
+            result.setIncludedFiles(includedFiles);
+        }
+        return result;
+    }
+
+    private static void writeImageItem(ImageItem imageItem, DataOutput out) throws IOException {
+        out.writeUTF(imageItem.getFormat().name());
+        writeString(imageItem.getDocumentSource(), out);
+        writeString(imageItem.getPageSource(), out);
+        out.writeInt(imageItem.getPage());
+        writeString(imageItem.getDescription(), out);
+        writeBytes(imageItem.getImageBytes(), out);
+        out.writeUTF(imageItem.getRenderingType().name());
+        writeString(imageItem.getTitle(), out);
+        writeString(imageItem.getFilename(), out);
+
+        List<ImageItem.LinkData> links = imageItem.getParsedLinks();
+        byte[] svgBytes = links == null ? imageItem.getUnparsedLinks() : null;
+        if (links == null && svgBytes == null) {
+            //parsed in the meantime
+            links = imageItem.getLinks();
+        }
+        if (links == null) {
+            out.writeBoolean(false);
+            writeBytes(svgBytes, out);
+            File baseDir = imageItem.getBaseDir();
+            writeString(baseDir != null ? baseDir.getPath() : null, out);
+            return;
+        }
+        out.writeBoolean(true);
+        out.writeInt(links.size());
+        for (ImageItem.LinkData link : links) {
+            writeString(link.getText(), out);
+            Rectangle area = link.getClickArea();
+            out.writeInt(area.x);
+            out.writeInt(area.y);
+            out.writeInt(area.width);
+            out.writeInt(area.height);
+            out.writeBoolean(link.isLink());
+        }
+    }
+
+    private static ImageItem readImageItem(DataInput in) throws IOException {
+        PlantUml.ImageFormat format = PlantUml.ImageFormat.valueOf(in.readUTF());
+        String documentSource = readString(in);
+        String pageSource = readString(in);
+        int page = in.readInt();
+        String description = readString(in);
+        byte[] imageBytes = readBytes(in);
+        RenderingType renderingType = RenderingType.valueOf(in.readUTF());
+        String title = readString(in);
+        String filename = readString(in);
+
+        if (!in.readBoolean()) {
+            byte[] svgBytes = readBytes(in);
+            String baseDir = readString(in);
+            return new ImageItem(baseDir != null ? new File(baseDir) : null, format, documentSource == null ? "" : documentSource, pageSource, page, description, imageBytes, svgBytes, renderingType, title, filename);
+        }
+        int linksCount = in.readInt();
+        List<ImageItem.LinkData> links = new ArrayList<>(linksCount);
+        for (int i = 0; i < linksCount; i++) {
+            String text = readString(in);
+            Rectangle area = new Rectangle(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+            links.add(new ImageItem.LinkData(text, area, in.readBoolean()));
+        }
+        return new ImageItem(format, documentSource == null ? "" : documentSource, pageSource, page, description, imageBytes, links, renderingType, title, filename);
+    }
+
+    /**
+     * writeUTF is limited to 64KB, sources can be bigger
+     */
+    private static void writeString(@Nullable String s, DataOutput out) throws IOException {
+        writeBytes(s == null ? null : s.getBytes("UTF-8"), out);
+    }
+
+    @Nullable
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, "UTF-8");
+    }
+
+    private static void writeBytes(@Nullable byte[] bytes, DataOutput out) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    @Nullable
+    private static byte[] readBytes(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
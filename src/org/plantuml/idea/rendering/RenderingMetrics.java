@@ -0,0 +1,257 @@
+package org.plantuml.idea.rendering;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timing of the rendering phases, calls of the PlantUML facade and cache statistics, collected always - unlike the
+ * debug log.
+ * See Settings popup | Show Rendering Metrics.
+ */
+public class RenderingMetrics {
+    private static final RenderingMetrics INSTANCE = new RenderingMetrics();
+    private static final double MILLION = 1000000.0;
+
+    public enum Phase {
+        PREPARE_ENVIRONMENT("prepareEnvironment"),
+        UNSAVED_INCLUDES("unsavedIncludes"),
+        SPLIT("split"),
+        NEW_SOURCE_STRING_READER("newSourceStringReader"),
+        GET_DIAGRAM("getDiagram"),
+        ZOOM("zoom"),
+        OUTPUT_IMAGE("outputImage"),
+        GENERATE_SVG("generateSvg"),
+        GET_INCLUDED_FILES("getIncludedFiles"),
+        RENDER("render"),
+        DISK_CACHE_LOAD("diskCacheLoad"),
+        INIT_IMAGES("initImages"),
+        WORKER_FIRST_RENDER("workerFirstRender"),
+        TOTAL("total");
+
+        private final String name;
+
+        Phase(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public enum Counter {
+        CACHE_HIT("cacheHit"),
+        CACHE_MISS("cacheMiss"),
+        DISK_CACHE_HIT("diskCacheHit"),
+        DISK_CACHE_MISS("diskCacheMiss"),
+        PAGE_CACHE_HIT("pageCacheHit"),
+        PAGE_CACHE_MISS("pageCacheMiss"),
+        DIAGRAM_CACHE_HIT("diagramCacheHit"),
+        DIAGRAM_CACHE_MISS("diagramCacheMiss"),
+        COALESCED_COMMANDS("coalescedCommands"),
+        CANCELLED_COMMANDS("cancelledCommands");
+
+        private final String name;
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * methods of {@link org.plantuml.idea.external.PlantUmlFacade}
+     */
+    public enum FacadeMethod {
+        ANNOTATE_SYNTAX_ERRORS("annotateSyntaxErrors"),
+        RENDER_AND_SAVE("renderAndSave"),
+        RENDER("render"),
+        LOAD_WITHOUT_CACHE("loadWithoutCache"),
+        LOAD_VECTOR_IMAGE("loadVectorImage"),
+        VERSION("version"),
+        ENCODE("encode");
+
+        private final String name;
+
+        FacadeMethod(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final Map<Phase, LatencyHistogram> histograms = new EnumMap<>(Phase.class);
+    private final Map<FacadeMethod, LatencyHistogram> facadeHistograms = new EnumMap<>(FacadeMethod.class);
+    private final Map<Counter, AtomicLong> counters = new EnumMap<>(Counter.class);
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final AtomicLong offHeapBytes = new AtomicLong();
+
+    public static RenderingMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public RenderingMetrics() {
+        for (Phase phase : Phase.values()) {
+            histograms.put(phase, new LatencyHistogram());
+        }
+        for (FacadeMethod method : FacadeMethod.values()) {
+            facadeHistograms.put(method, new LatencyHistogram());
+        }
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new AtomicLong());
+        }
+    }
+
+    /**
+     * @param startNanos {@link System#nanoTime()} at the start of the phase
+     * @return duration of the phase in ms, for logging
+     */
+    public long recordSince(@NotNull Phase phase, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        record(phase, nanos);
+        return nanos / 1000000;
+    }
+
+    public void record(@NotNull Phase phase, long nanos) {
+        histograms.get(phase).record(nanos);
+    }
+
+    public void recordSince(@NotNull FacadeMethod method, long startNanos) {
+        facadeHistograms.get(method).record(System.nanoTime() - startNanos);
+    }
+
+    public void increment(@NotNull Counter counter) {
+        counters.get(counter).incrementAndGet();
+    }
+
+    /**
+     * heap held by the in-memory caches of all tool windows
+     */
+    public void addRetainedBytes(long delta) {
+        retainedBytes.addAndGet(delta);
+    }
+
+    /**
+     * encoded images held by the in-memory caches off the heap, see {@link OffHeapBytes}
+     */
+    public void addOffHeapBytes(long delta) {
+        offHeapBytes.addAndGet(delta);
+    }
+
+    @NotNull
+    public LatencyHistogram getHistogram(@NotNull Phase phase) {
+        return histograms.get(phase);
+    }
+
+    @NotNull
+    public LatencyHistogram getHistogram(@NotNull FacadeMethod method) {
+        return facadeHistograms.get(method);
+    }
+
+    public long getCount(@NotNull Counter counter) {
+        return counters.get(counter).get();
+    }
+
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    public long getOffHeapBytes() {
+        return offHeapBytes.get();
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        for (LatencyHistogram histogram : facadeHistograms.values()) {
+            histogram.reset();
+        }
+        for (AtomicLong counter : counters.values()) {
+            counter.set(0);
+        }
+    }
+
+    @NotNull
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "%-22s %7s %9s %9s %9s %9s%n", "phase [ms]", "count", "p50", "p95", "p99", "max"));
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = histograms.get(phase);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            sb.append(String.format(Locale.US, "%-22s %7d %9.1f %9.1f %9.1f %9.1f%n", phase.getName(), histogram.getCount(),
+                    millis(histogram.getPercentileNanos(50)), millis(histogram.getPercentileNanos(95)),
+                    millis(histogram.getPercentileNanos(99)), millis(histogram.getMaxNanos())));
+        }
+        sb.append(String.format("%n"));
+        sb.append(String.format(Locale.US, "%-22s %7s %9s %9s %9s %9s%n", "facade [ms]", "count", "p50", "p95", "p99", "max"));
+        for (FacadeMethod method : FacadeMethod.values()) {
+            LatencyHistogram histogram = facadeHistograms.get(method);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            sb.append(String.format(Locale.US, "%-22s %7d %9.1f %9.1f %9.1f %9.1f%n", method.getName(), histogram.getCount(),
+                    millis(histogram.getPercentileNanos(50)), millis(histogram.getPercentileNanos(95)),
+                    millis(histogram.getPercentileNanos(99)), millis(histogram.getMaxNanos())));
+        }
+        sb.append(String.format("%n"));
+        for (Counter counter : Counter.values()) {
+            sb.append(String.format(Locale.US, "%-22s %7d%n", counter.getName(), getCount(counter)));
+        }
+        sb.append(String.format(Locale.US, "%-22s %7d%n", "retainedBytes", getRetainedBytes()));
+        sb.append(String.format(Locale.US, "%-22s %7d%n", "offHeapBytes", getOffHeapBytes()));
+        return sb.toString();
+    }
+
+    @NotNull
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n  \"phases\": {");
+        boolean first = true;
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = histograms.get(phase);
+            sb.append(first ? "\n" : ",\n");
+            first = false;
+            sb.append(String.format(Locale.US, "    \"%s\": {\"count\": %d, \"totalMs\": %.3f, \"p50Ms\": %.3f, \"p95Ms\": %.3f, \"p99Ms\": %.3f, \"maxMs\": %.3f}",
+                    phase.getName(), histogram.getCount(), millis(histogram.getTotalNanos()),
+                    millis(histogram.getPercentileNanos(50)), millis(histogram.getPercentileNanos(95)),
+                    millis(histogram.getPercentileNanos(99)), millis(histogram.getMaxNanos())));
+        }
+        sb.append("\n  },\n  \"facade\": {");
+        first = true;
+        for (FacadeMethod method : FacadeMethod.values()) {
+            LatencyHistogram histogram = facadeHistograms.get(method);
+            sb.append(first ? "\n" : ",\n");
+            first = false;
+            sb.append(String.format(Locale.US, "    \"%s\": {\"count\": %d, \"totalMs\": %.3f, \"p50Ms\": %.3f, \"p95Ms\": %.3f, \"p99Ms\": %.3f, \"maxMs\": %.3f}",
+                    method.getName(), histogram.getCount(), millis(histogram.getTotalNanos()),
+                    millis(histogram.getPercentileNanos(50)), millis(histogram.getPercentileNanos(95)),
+                    millis(histogram.getPercentileNanos(99)), millis(histogram.getMaxNanos())));
+        }
+        sb.append("\n  },\n  \"counters\": {");
+        first = true;
+        for (Counter counter : Counter.values()) {
+            sb.append(first ? "\n" : ",\n");
+            first = false;
+            sb.append("    \"").append(counter.getName()).append("\": ").append(getCount(counter));
+        }
+        sb.append("\n  },\n  \"retainedBytes\": ").append(getRetainedBytes());
+        sb.append(",\n  \"offHeapBytes\": ").append(getOffHeapBytes()).append("\n}\n");
+        return sb.toString();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / MILLION;
+    }
+}
@@ -0,0 +1,100 @@
+package org.plantuml.idea.rendering;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.plantuml.idea.lang.settings.PlantUmlSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Bounded pool for rendering pages of one diagram in parallel, sized by {@link PlantUmlSettings#getRenderThreadsAsInt()}.
+ * With a single thread the tasks are executed sequentially by the calling thread.
+ */
+public class RenderingPool {
+    private static final Logger LOG = Logger.getInstance(RenderingPool.class);
+
+    private static ExecutorService executor;
+    private static int executorThreads;
+
+    public static int getThreads() {
+        return PlantUmlSettings.getInstance().getRenderThreadsAsInt();
+    }
+
+    /**
+     * Executes the tasks and returns their results in the same order.
+     * When the calling thread is interrupted, all running tasks are interrupted too.
+     *
+     * @throws RenderingCancelledException when interrupted
+     */
+    @NotNull
+    public static <T> List<T> invokeAll(@NotNull List<? extends Callable<T>> tasks) {
+        return invokeAll(tasks, getThreads());
+    }
+
+    /**
+     * @param threads 1 = sequentially by the calling thread, in the order of the tasks
+     * @see #invokeAll(List)
+     */
+    @NotNull
+    public static <T> List<T> invokeAll(@NotNull List<? extends Callable<T>> tasks, int threads) {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (threads <= 1 || tasks.size() <= 1) {
+            for (Callable<T> task : tasks) {
+                results.add(call(task));
+            }
+            return results;
+        }
+
+        ExecutorService executor = getExecutor(threads);
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        try {
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RenderingCancelledException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor(int threads) {
+        if (executor == null || executorThreads != threads) {
+            if (executor != null) {
+                executor.shutdown();
+            }
+            LOG.debug("creating rendering pool, threads=", threads);
+            executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("PlantUML rendering", threads);
+            executorThreads = threads;
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,25 @@
+package org.plantuml.idea.rendering;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * SVG page prepared for painting once, rasterized by parts at any scale - see {@link org.plantuml.idea.toolwindow.TiledImageIcon}.
+ */
+public interface VectorImage {
+
+    /**
+     * @return width of the document, in SVG units
+     */
+    double getWidth();
+
+    double getHeight();
+
+    /**
+     * @param region part of the image scaled by {@code scale}, in pixels
+     */
+    @NotNull
+    BufferedImage renderTile(@NotNull Rectangle region, double scale);
+}
@@ -20,6 +20,7 @@ public class ExecutionStatusPanel extends DumbAwareAction implements CustomCompo
     private volatile int version;
     private volatile State state;
     private volatile String message = "---";
+    private volatile long delay = -1;
     public static String DESCRIPTION;
     private MyMouseAdapter myMouseAdapter;
     private Runnable runnable;
@@ -66,6 +67,13 @@ public class ExecutionStatusPanel extends DumbAwareAction implements CustomCompo
         return jLabel;
     }
 
+    /**
+     * effective delay before the next rendering, shown in the tooltip
+     */
+    public void setDelay(long delay) {
+        this.delay = delay;
+    }
+
     public synchronized void update(State state) {
         this.state = state;
         updateLabelLater();
@@ -88,14 +96,14 @@ public class ExecutionStatusPanel extends DumbAwareAction implements CustomCompo
     public void updateNow(Integer version, State state, long total, RenderResult result, Runnable r) {
         if (this.version <= version) {
             updateState(version, state, total, result, r);
-            state.update(label, myMouseAdapter, message, this.runnable);
+            updateLabel(state, message, this.runnable);
         }
     }
 
     public synchronized void updateNow(Integer version, State state, String message) {
         if (this.version <= version) {
             updateState(version, state, message, null);
-            state.update(label, myMouseAdapter, message, null);
+            updateLabel(state, message, null);
         }
     }
 
@@ -123,12 +131,19 @@ public class ExecutionStatusPanel extends DumbAwareAction implements CustomCompo
             @Override
             public void run() {
                 if (state != null) {
-                    state.update(label, myMouseAdapter, message, runnable);
+                    updateLabel(state, message, runnable);
                 }
             }
         });
     }
 
+    private void updateLabel(State state, String message, Runnable r) {
+        state.update(label, myMouseAdapter, message, r);
+        if (label != null && delay >= 0) {
+            label.setToolTipText(DESCRIPTION.replace("<html>", "<html>Delay: " + delay + "ms<br>"));
+        }
+    }
+
     public enum State {
         WAITING(JBColor.GRAY, "Delay waiting - gray"),
         EXECUTING(new JBColor(Color.green.darker(), new Color(98, 150, 85)), "Executing - green"),
@@ -1,13 +1,17 @@
 package org.plantuml.idea.toolwindow;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.ApplicationComponent;
 import com.intellij.openapi.editor.EditorFactory;
 import com.intellij.openapi.editor.event.CaretListener;
 import com.intellij.openapi.editor.event.DocumentListener;
 import com.intellij.openapi.editor.event.EditorEventMulticaster;
+import com.intellij.openapi.vfs.VirtualFileManager;
 import org.jetbrains.annotations.NotNull;
+import org.plantuml.idea.rendering.PlantUmlWarmUp;
 import org.plantuml.idea.toolwindow.listener.PlantUmlCaretListener;
 import org.plantuml.idea.toolwindow.listener.PlantUmlDocumentListener;
+import org.plantuml.idea.toolwindow.listener.PlantUmlIncludedFilesListener;
 
 public class PlantUmlApplicationComponent implements ApplicationComponent {
     private DocumentListener plantUmlDocumentListener = new PlantUmlDocumentListener();
@@ -22,6 +26,8 @@ public class PlantUmlApplicationComponent implements ApplicationComponent {
         EditorEventMulticaster eventMulticaster = EditorFactory.getInstance().getEventMulticaster();
         eventMulticaster.addDocumentListener(plantUmlDocumentListener);
         eventMulticaster.addCaretListener(plantUmlCaretListener);
+        ApplicationManager.getApplication().getMessageBus().connect(ApplicationManager.getApplication()).subscribe(VirtualFileManager.VFS_CHANGES, new PlantUmlIncludedFilesListener());
+        PlantUmlWarmUp.start();
     }
 
     @Override
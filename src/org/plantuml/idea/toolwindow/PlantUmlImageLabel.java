@@ -34,6 +34,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
 import java.io.File;
 import java.net.URI;
 import java.util.ArrayList;
@@ -70,6 +71,8 @@ public class PlantUmlImageLabel extends JLabel {
     private RenderRequest renderRequest;
     private ImageItem imageWithData;
     private Image originalImage;
+    private TiledImageIcon tiledIcon;
+    private MouseListener linksListener;
 
     private FileEditorManager fileEditorManager;
     private LocalFileSystem localFileSystem;
@@ -97,6 +100,13 @@ public class PlantUmlImageLabel extends JLabel {
         return imageWithData.getPage();
     }
 
+    /**
+     * page not rendered yet, because it was not visible
+     */
+    public boolean isDeferred() {
+        return imageWithData != null && RenderResult.TITLE_ONLY.equals(imageWithData.getDescription()) && !imageWithData.hasImageBytes();
+    }
+
     public RenderRequest getRenderRequest() {
         return renderRequest;
     }
@@ -104,8 +114,11 @@ public class PlantUmlImageLabel extends JLabel {
     public void setup(JPanel parent, @NotNull ImageItem imageWithData, int i, RenderRequest renderRequest) {
         setOpaque(true);
         setBackground(JBColor.WHITE);
-        if (imageWithData.hasImage()) {
+        if (imageWithData.hasImageBytes()) {
             setDiagram(parent, imageWithData, renderRequest, this);
+        } else if (isDeferred()) {
+            setText("rendering page " + (imageWithData.getPage() + 1) + "...");
+            setVerticalAlignment(TOP);
         } else {
             setText("page not rendered, probably plugin error, please report it and try to hit reload");
         }
@@ -113,14 +126,25 @@ public class PlantUmlImageLabel extends JLabel {
     }
 
     private void setDiagram(JPanel parent, @NotNull final ImageItem imageItem, RenderRequest renderRequest, final JLabel label) {
-        originalImage = imageItem.getImage();
-        Image scaledImage;
-
         ScaleContext ctx = ScaleContext.create(parent);
-        scaledImage = ImageUtil.ensureHiDPI(originalImage, ctx);
+        if (renderRequest.isTiled() && imageItem.hasVectorImage()) {
+            //the whole page is never rasterized, see getOriginalImage
+            tiledIcon = new TiledImageIcon(imageItem.getVectorImage(), label);
+            label.setIcon(tiledIcon);
+        } else {
+            //decoded only here, presence is checked by the encoded image
+            originalImage = imageItem.getImage();
+            if (originalImage == null) {
+                label.setText("page image cannot be decoded, please report it and try to hit reload");
+                return;
+            }
+            Image scaledImage;
+
+            scaledImage = ImageUtil.ensureHiDPI(originalImage, ctx);
 //        scaledImage = ImageLoader.scaleImage(scaledImage, ctx.getScale(JBUI.ScaleType.SYS_SCALE));
 
-        label.setIcon(new JBImageIcon(scaledImage));
+            label.setIcon(new JBImageIcon(scaledImage));
+        }
         label.addMouseListener(new PopupHandler() {
 
             @Override
@@ -129,9 +153,48 @@ public class PlantUmlImageLabel extends JLabel {
             }
         });
 
-        //Removing all children from image label and creating transparent buttons for each item with url
+        addLinksOnHover(imageItem, renderRequest, label, ctx);
+    }
 
+    private void addLinksOnHover(@NotNull ImageItem imageItem, RenderRequest renderRequest, JLabel label, ScaleContext ctx) {
+        //Removing all children from image label, transparent buttons for each item with url are created on the first hover
         label.removeAll();
+        if (linksListener != null) {
+            label.removeMouseListener(linksListener);
+        }
+        linksListener = new MouseAdapter() {
+            @Override
+            public void mouseEntered(MouseEvent e) {
+                label.removeMouseListener(this);
+                linksListener = null;
+                long start = System.currentTimeMillis();
+                addLinks(imageItem, renderRequest, label, ctx);
+                label.revalidate();
+                label.repaint();
+                logger.debug("links added in ", (System.currentTimeMillis() - start), "ms");
+            }
+        };
+        label.addMouseListener(linksListener);
+    }
+
+    /**
+     * Zooms the tiled diagram without rendering it again, links are placed again on the next hover.
+     */
+    public void setZoom(int unscaledZoom) {
+        if (tiledIcon == null) {
+            return;
+        }
+        tiledIcon.setZoom(unscaledZoom / 100.0);
+        addLinksOnHover(imageWithData, renderRequest, this, ScaleContext.create(this));
+        revalidate();
+        repaint();
+    }
+
+    public boolean isTiled() {
+        return tiledIcon != null;
+    }
+
+    private void addLinks(@NotNull ImageItem imageItem, RenderRequest renderRequest, JLabel label, ScaleContext ctx) {
         boolean showUrlLinksBorder = PlantUmlSettings.getInstance().isShowUrlLinksBorder();
 
         for (ImageItem.LinkData linkData : imageItem.getLinks()) {
@@ -142,7 +205,8 @@ public class PlantUmlImageLabel extends JLabel {
             Rectangle area = linkData.getClickArea();
 
             int tolerance = 1;
-            double scale = ctx.getScale(ScaleType.SYS_SCALE);
+            //tiled diagrams are rendered at 100%, others at the scaled zoom
+            double scale = tiledIcon != null ? 1 / tiledIcon.getZoom() : ctx.getScale(ScaleType.SYS_SCALE);
             int x = (int) ((double) area.x / scale) - 2 * tolerance;
             int width = (int) ((area.width) / scale) + 4 * tolerance;
 
@@ -337,6 +401,9 @@ public class PlantUmlImageLabel extends JLabel {
     }
 
     public Image getOriginalImage() {
+        if (originalImage == null && tiledIcon != null) {
+            originalImage = imageWithData.getImage();
+        }
         return originalImage;
     }
 }
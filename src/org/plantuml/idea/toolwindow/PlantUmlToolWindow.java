@@ -3,8 +3,12 @@ package org.plantuml.idea.toolwindow;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.*;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.project.Project;
@@ -12,16 +16,18 @@ import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.LowMemoryWatcher;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.ui.components.JBScrollPane;
 import com.intellij.ui.scale.ScaleContext;
 import com.intellij.ui.scale.ScaleType;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.plantuml.idea.action.NextPageAction;
 import org.plantuml.idea.action.SelectPageAction;
 import org.plantuml.idea.lang.settings.PlantUmlSettings;
 import org.plantuml.idea.plantuml.PlantUml;
+import org.plantuml.idea.plantuml.PlantUmlSourceIndex;
 import org.plantuml.idea.rendering.*;
 import org.plantuml.idea.toolwindow.listener.PlantUmlAncestorListener;
 import org.plantuml.idea.util.UIUtils;
@@ -30,6 +36,9 @@ import javax.swing.*;
 import javax.swing.event.AncestorListener;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -37,6 +46,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class PlantUmlToolWindow extends JPanel implements Disposable {
     private static Logger logger = Logger.getInstance(PlantUmlToolWindow.class);
+    private static final ExecutorService SOURCE_EXECUTOR = AppExecutorUtil.createBoundedApplicationPoolExecutor("PlantUML source", 1);
 
     private ToolWindow toolWindow;
     private JPanel imagesPanel;
@@ -53,12 +63,20 @@ public class PlantUmlToolWindow extends JPanel implements Disposable {
 
     private Project project;
     private AtomicInteger sequence = new AtomicInteger();
+    private AtomicInteger sourceSequence = new AtomicInteger();
+    /**
+     * sequence of the last source found in the background, older ones are not rendered
+     */
+    private int lastFoundSequence;
     public boolean renderUrlLinks;
+    /**
+     * diagrams are rendered at 100% and zoomed by {@link TiledImageIcon}
+     */
+    private boolean tiledDisplay;
     public ExecutionStatusPanel executionStatusPanel;
     private SelectedPagePersistentStateComponent selectedPagePersistentStateComponent;
     private FileEditorManager fileEditorManager;
     private FileDocumentManager fileDocumentManager;
-    private VirtualFileManager fileManager;
 
     private int lastValidVerticalScrollValue;
     private int lastValidHorizontalScrollValue;
@@ -70,12 +88,11 @@ public class PlantUmlToolWindow extends JPanel implements Disposable {
         this.toolWindow = toolWindow;
 
         PlantUmlSettings settings = PlantUmlSettings.getInstance();// Make sure settings are loaded and applied before we start rendering.
-        renderCache = new RenderCache(settings.getCacheSizeAsInt());
+        renderCache = new RenderCache(settings.getCacheSizeMBAsInt());
         selectedPagePersistentStateComponent = ServiceManager.getService(SelectedPagePersistentStateComponent.class);
         plantUmlAncestorListener = new PlantUmlAncestorListener(this, project);
         fileEditorManager = FileEditorManager.getInstance(project);
         fileDocumentManager = FileDocumentManager.getInstance();
-        fileManager = VirtualFileManager.getInstance();
         localFileSystem = LocalFileSystem.getInstance();
 
         setupUI();
@@ -84,6 +101,7 @@ public class PlantUmlToolWindow extends JPanel implements Disposable {
             @Override
             public void run() {
                 renderCache.clear();
+                TiledImageIcon.clearCache();
                 if (renderCache.getDisplayedItem() != null && !toolWindow.isVisible()) {
                     renderCache.setDisplayedItem(null);
                     imagesPanel.removeAll();
@@ -119,6 +137,9 @@ public class PlantUmlToolWindow extends JPanel implements Disposable {
                     if (displayedItem != null && !displayedItem.getRenderResult().hasError()) {
                         lastValidVerticalScrollValue = adjustmentEvent.getValue();
                     }
+                    if (isDeferredPageVisible()) {
+                        renderLater(LazyApplicationPoolExecutor.Delay.RESET_DELAY, RenderCommand.Reason.SOURCE_PAGE_ZOOM);
+                    }
                 }
             }
         });
@@ -211,69 +232,119 @@ public class PlantUmlToolWindow extends JPanel implements Disposable {
             @Override
             public void run() {
                 if (isProjectValid(project)) {
-                    String source = UIUtils.getSelectedSourceWithCaret(fileEditorManager);
-                    String sourceFilePath = null;
-                    RenderCacheItem cachedItem = null;
-
-                    int scaledZoom = getScaledZoom();
-                    if ("".equals(source)) { //is included file or some crap?
-                        logger.debug("empty source");
-                        cachedItem = renderCache.getDisplayedItem();
-                        if (cachedItem == null) {
-                            logger.debug("no DisplayedItem, empty source, reason=", reason);
-                            return;
-                        }
+                    int scaledZoom = tiledDisplay ? 100 : getScaledZoom();
+                    SourceSnapshot snapshot = new SourceSnapshot(UIUtils.getSelectedTextEditor(fileEditorManager), fileDocumentManager, scaledZoom, sourceSequence.incrementAndGet());
+                    ReadAction.nonBlocking(() -> findSource(snapshot, reason))
+                            .finishOnUiThread(ModalityState.defaultModalityState(), foundSource -> {
+                                if (foundSource != null) {
+                                    renderFoundSource(foundSource, delay, reason);
+                                }
+                            })
+                            .expireWith(PlantUmlToolWindow.this)
+                            .submit(SOURCE_EXECUTOR);
+                }
+            }
+        });
+    }
 
-                        source = cachedItem.getSource();
-                        sourceFilePath = cachedItem.getSourceFilePath();
-                    } else {
-                        VirtualFile selectedFile = UIUtils.getSelectedFile(fileEditorManager, fileDocumentManager);
-                        if (selectedFile != null) {
-                            sourceFilePath = selectedFile.getPath();
-                        } else {
-                            sourceFilePath = "DUMMY_NO_PATH";
-                        }
-                    }
+    /**
+     * Runs in a background read action - extraction of the source and the cache lookup must not freeze the UI.
+     *
+     * @return null when there is nothing to render, or the document was changed since the snapshot - the change
+     * requests rendering again
+     */
+    @Nullable
+    private FoundSource findSource(SourceSnapshot snapshot, RenderCommand.Reason reason) {
+        if (!isProjectValid(project)) {
+            return null;
+        }
+        String source = "";
+        String sourceFilePath;
+        RenderCacheItem cachedItem = null;
+        if (snapshot.document != null) {
+            if (snapshot.document.getModificationStamp() != snapshot.modificationStamp) {
+                logger.debug("document changed since the snapshot");
+                return null;
+            }
+            source = PlantUmlSourceIndex.extractSource(snapshot.document, snapshot.offset, this);
+        }
 
-                    selectedPage = selectedPagePersistentStateComponent.getPage(sourceFilePath);
+        if ("".equals(source)) { //is included file or some crap?
+            logger.debug("empty source");
+            cachedItem = renderCache.getDisplayedItem();
+            if (cachedItem == null) {
+                logger.debug("no DisplayedItem, empty source, reason=", reason);
+                return null;
+            }
 
-                    logger.debug("setting selected page from storage ", selectedPage);
+            source = cachedItem.getSource();
+            sourceFilePath = cachedItem.getSourceFilePath();
+        } else if (snapshot.file != null) {
+            sourceFilePath = snapshot.file.getPath();
+        } else {
+            sourceFilePath = "DUMMY_NO_PATH";
+        }
 
-                    if (reason == RenderCommand.Reason.REFRESH) {
-                        logger.debug("executing command, reason=", reason);
-                        lazyExecutor.execute(getCommand(RenderCommand.Reason.REFRESH, sourceFilePath, source, selectedPage, scaledZoom, null, delay));
-                        return;
-                    }
+        int page = selectedPagePersistentStateComponent.getPage(sourceFilePath);
+        if (reason == RenderCommand.Reason.REFRESH) {
+            return new FoundSource(snapshot, source, sourceFilePath, page, null, false);
+        }
 
-                    RenderCacheItem betterItem = renderCache.getCachedItem(sourceFilePath, source, selectedPage, scaledZoom, fileDocumentManager, fileManager);
-                    logger.debug("cacheItem ", betterItem);
-                    if (betterItem != null) {
-                        cachedItem = betterItem;
-                    }
+        RenderCacheItem betterItem = renderCache.getCachedItem(sourceFilePath, source, page, snapshot.scaledZoom, PlantUml.ImageFormat.PNG);
+        logger.debug("cacheItem ", betterItem);
+        if (betterItem != null) {
+            cachedItem = betterItem;
+        }
+        boolean includedFilesChanged = cachedItem != null && cachedItem.includedFilesChanged();
+        return new FoundSource(snapshot, source, sourceFilePath, page, cachedItem, includedFilesChanged);
+    }
 
-                    if (cachedItem == null) {
-                        logger.debug("no cached item");
-                        lazyExecutor.execute(getCommand(reason, sourceFilePath, source, selectedPage, scaledZoom, null, delay));
-                    } else if (cachedItem.includedFilesChanged(fileDocumentManager, fileManager)) {
-                        logger.debug("includedFilesChanged");
-                        lazyExecutor.execute(getCommand(RenderCommand.Reason.INCLUDES, sourceFilePath, source, selectedPage, scaledZoom, cachedItem, delay));
-                    } else if (cachedItem.imageMissingOrSourceOrZoomChanged(source, selectedPage, scaledZoom)) {
-                        logger.debug("render required");
-                        lazyExecutor.execute(getCommand(RenderCommand.Reason.SOURCE_PAGE_ZOOM, sourceFilePath, source, selectedPage, scaledZoom, cachedItem, delay));
-                    } else if (!renderCache.isDisplayed(cachedItem, selectedPage)) {
-                        logger.debug("render not required, displaying cached item ", cachedItem);
-                        displayExistingDiagram(cachedItem);
-                    } else {
-                        logger.debug("render not required, item already displayed ", cachedItem);
-                        if (reason != RenderCommand.Reason.CARET) {
-                            cachedItem.setVersion(sequence.incrementAndGet());
-                            lazyExecutor.cancel();
-                            executionStatusPanel.updateNow(cachedItem.getVersion(), ExecutionStatusPanel.State.DONE, "cached");
-                        }
-                    }
-                }
+    private void renderFoundSource(FoundSource found, LazyApplicationPoolExecutor.Delay delay, RenderCommand.Reason reason) {
+        if (found.sequence < lastFoundSequence && reason != RenderCommand.Reason.REFRESH) {
+            logger.debug("skipping older source ", found.sequence, " < ", lastFoundSequence);
+            return;
+        }
+        lastFoundSequence = found.sequence;
+
+        String source = found.source;
+        String sourceFilePath = found.sourceFilePath;
+        RenderCacheItem cachedItem = found.cachedItem;
+        int scaledZoom = found.scaledZoom;
+        selectedPage = found.page;
+
+        logger.debug("setting selected page from storage ", selectedPage);
+
+        if (reason == RenderCommand.Reason.REFRESH) {
+            logger.debug("executing command, reason=", reason);
+            lazyExecutor.execute(getCommand(RenderCommand.Reason.REFRESH, sourceFilePath, source, selectedPage, scaledZoom, null, delay));
+            return;
+        }
+
+        int[] visiblePages = getVisiblePages(sourceFilePath);
+
+        if (cachedItem == null) {
+            logger.debug("no cached item");
+            lazyExecutor.execute(getCommand(reason, sourceFilePath, source, selectedPage, scaledZoom, null, delay));
+        } else if (found.includedFilesChanged) {
+            logger.debug("includedFilesChanged");
+            lazyExecutor.execute(getCommand(RenderCommand.Reason.INCLUDES, sourceFilePath, source, selectedPage, scaledZoom, cachedItem, delay, visiblePages));
+        } else if (cachedItem.getRenderRequest().isTiled() != tiledDisplay) {
+            logger.debug("tiled display toggled");
+            lazyExecutor.execute(getCommand(RenderCommand.Reason.SOURCE_PAGE_ZOOM, sourceFilePath, source, selectedPage, scaledZoom, null, delay, visiblePages));
+        } else if (cachedItem.imageMissingOrSourceOrZoomChanged(source, selectedPage, scaledZoom, visiblePages[0], visiblePages[1])) {
+            logger.debug("render required");
+            lazyExecutor.execute(getCommand(RenderCommand.Reason.SOURCE_PAGE_ZOOM, sourceFilePath, source, selectedPage, scaledZoom, cachedItem, delay, visiblePages));
+        } else if (!renderCache.isDisplayed(cachedItem, selectedPage)) {
+            logger.debug("render not required, displaying cached item ", cachedItem);
+            displayExistingDiagram(cachedItem);
+        } else {
+            logger.debug("render not required, item already displayed ", cachedItem);
+            if (reason != RenderCommand.Reason.CARET) {
+                cachedItem.setVersion(sequence.incrementAndGet());
+                lazyExecutor.cancel();
+                executionStatusPanel.updateNow(cachedItem.getVersion(), ExecutionStatusPanel.State.DONE, "cached");
             }
-        });
+        }
     }
 
     public void displayExistingDiagram(RenderCacheItem last) {
@@ -289,7 +360,91 @@ public class PlantUmlToolWindow extends JPanel implements Disposable {
         logger.debug("#getCommand selectedFile='", selectedFile, "', page=", page, ", scaledZoom=", scaledZoom);
         int version = sequence.incrementAndGet();
 
-        return new MyRenderCommand(reason, selectedFile, source, page, scaledZoom, cachedItem, version, delay, renderUrlLinks, executionStatusPanel);
+        MyRenderCommand command = new MyRenderCommand(reason, selectedFile, source, page, scaledZoom, cachedItem, version, delay, renderUrlLinks, executionStatusPanel);
+        command.setTiled(tiledDisplay);
+        return command;
+    }
+
+    @NotNull
+    protected RenderCommand getCommand(RenderCommand.Reason reason, String selectedFile, final String source, final int page, final int scaledZoom, RenderCacheItem cachedItem, LazyApplicationPoolExecutor.Delay delay, int[] visiblePages) {
+        RenderCommand command = getCommand(reason, selectedFile, source, page, scaledZoom, cachedItem, delay);
+        command.setVisiblePages(visiblePages[0], visiblePages[1]);
+        return command;
+    }
+
+    /**
+     * @return first and last page visible in the viewport, when all pages of the given file are displayed, otherwise -1
+     */
+    private int[] getVisiblePages(String sourceFilePath) {
+        int[] visiblePages = {-1, -1};
+        RenderCacheItem displayedItem = renderCache.getDisplayedItem();
+        if (selectedPage != -1 || displayedItem == null || displayedItem.getRequestedPage() != -1
+                || !displayedItem.getSourceFilePath().equals(sourceFilePath)) {
+            return visiblePages;
+        }
+        Rectangle viewRect = scrollPane.getViewport().getViewRect();
+        for (Component component : imagesPanel.getComponents()) {
+            if (component instanceof PlantUmlImageLabel && component.getBounds().intersects(viewRect)) {
+                int page = ((PlantUmlImageLabel) component).getPage();
+                if (visiblePages[0] == -1) {
+                    visiblePages[0] = page;
+                }
+                visiblePages[1] = page;
+            }
+        }
+        return visiblePages;
+    }
+
+    private boolean isDeferredPageVisible() {
+        Rectangle viewRect = scrollPane.getViewport().getViewRect();
+        for (Component component : imagesPanel.getComponents()) {
+            if (component instanceof PlantUmlImageLabel && component.getBounds().intersects(viewRect)
+                    && ((PlantUmlImageLabel) component).isDeferred()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * state of the editor taken on the EDT
+     */
+    private static class SourceSnapshot {
+        private final Document document;
+        private final VirtualFile file;
+        private final int offset;
+        private final long modificationStamp;
+        private final int scaledZoom;
+        private final int sequence;
+
+        SourceSnapshot(@Nullable Editor editor, FileDocumentManager fileDocumentManager, int scaledZoom, int sequence) {
+            this.document = editor != null ? editor.getDocument() : null;
+            this.file = document != null ? fileDocumentManager.getFile(document) : null;
+            this.offset = editor != null ? editor.getCaretModel().getOffset() : 0;
+            this.modificationStamp = document != null ? document.getModificationStamp() : 0;
+            this.scaledZoom = scaledZoom;
+            this.sequence = sequence;
+        }
+    }
+
+    private static class FoundSource {
+        private final String source;
+        private final String sourceFilePath;
+        private final int page;
+        private final RenderCacheItem cachedItem;
+        private final boolean includedFilesChanged;
+        private final int scaledZoom;
+        private final int sequence;
+
+        FoundSource(SourceSnapshot snapshot, String source, String sourceFilePath, int page, RenderCacheItem cachedItem, boolean includedFilesChanged) {
+            this.source = source;
+            this.sourceFilePath = sourceFilePath;
+            this.page = page;
+            this.cachedItem = cachedItem;
+            this.includedFilesChanged = includedFilesChanged;
+            this.scaledZoom = snapshot.scaledZoom;
+            this.sequence = snapshot.sequence;
+        }
     }
 
     private class MyRenderCommand extends RenderCommand {
@@ -356,6 +511,10 @@ public class PlantUmlToolWindow extends JPanel implements Disposable {
                     }
                 });
             }
+            if (newItem.includedFilesChanged()) {
+                logger.debug("included files changed during rendering ", newItem);
+                UIUtils.renderPlantUmlToolWindowLater(project, LazyApplicationPoolExecutor.Delay.RESET_DELAY, Reason.INCLUDES);
+            }
         }
     }
 
@@ -389,7 +548,11 @@ public class PlantUmlToolWindow extends JPanel implements Disposable {
             }
         }
 
+        Map<Integer, Dimension> pageSizes = new HashMap<>();
         for (Component component : imagesPanel.getComponents()) {
+            if (component instanceof PlantUmlImageLabel) {
+                pageSizes.put(((PlantUmlImageLabel) component).getPage(), component.getSize());
+            }
             if (component instanceof Disposable) {
                 Disposer.dispose((Disposable) component);
             }
@@ -401,6 +564,15 @@ public class PlantUmlToolWindow extends JPanel implements Disposable {
             for (int i = 0; i < imagesWithData.length; i++) {
                 displayImage(cacheItem, i, imagesWithData[i]);
             }
+            //placeholders of deferred pages keep the size of the previous image, so that scrolling does not jump
+            for (Component component : imagesPanel.getComponents()) {
+                if (component instanceof PlantUmlImageLabel && ((PlantUmlImageLabel) component).isDeferred()) {
+                    Dimension size = pageSizes.get(((PlantUmlImageLabel) component).getPage());
+                    if (size != null) {
+                        component.setPreferredSize(size);
+                    }
+                }
+            }
         } else {
             logger.debug("displaying image ", requestedPage);
             displayImage(cacheItem, requestedPage, imagesWithData[requestedPage]);
@@ -433,7 +605,9 @@ public class PlantUmlToolWindow extends JPanel implements Disposable {
         if (cacheItem.getRenderRequest().getFormat() == PlantUml.ImageFormat.SVG) {
 //            component = new PlantUmlImagePanelSvg(imageWithData, pageNumber, cacheItem.getRenderRequest());
         } else {
-            component = new PlantUmlImageLabel(project, imagesPanel, imageWithData, pageNumber, cacheItem.getRenderRequest(), cacheItem.getRenderResult(), fileEditorManager, localFileSystem);
+            PlantUmlImageLabel label = new PlantUmlImageLabel(project, imagesPanel, imageWithData, pageNumber, cacheItem.getRenderRequest(), cacheItem.getRenderResult(), fileEditorManager, localFileSystem);
+            label.setZoom(unscaledZoom);
+            component = label;
         }
         addScrollBarListeners(component);
 
@@ -446,8 +620,10 @@ public class PlantUmlToolWindow extends JPanel implements Disposable {
 
     public void applyNewSettings(PlantUmlSettings plantUmlSettings) {
         lazyExecutor.setDelay(plantUmlSettings.getRenderDelayAsInt());
-        renderCache.setMaxCacheSize(plantUmlSettings.getCacheSizeAsInt());
+        lazyExecutor.setAdaptiveDelay(plantUmlSettings.isAdaptiveRenderDelay(), plantUmlSettings.getMinRenderDelayAsInt(), plantUmlSettings.getMaxRenderDelayAsInt());
+        renderCache.setMaxCacheSize(plantUmlSettings.getCacheSizeMBAsInt());
         renderUrlLinks = plantUmlSettings.isRenderLinks();
+        tiledDisplay = plantUmlSettings.isTiledDisplay();
     }
 
     private JSeparator separator() {
@@ -478,9 +654,30 @@ public class PlantUmlToolWindow extends JPanel implements Disposable {
 
     public void setUnscaledZoom(int unscaledZoom) {
         this.unscaledZoom = unscaledZoom;
+        if (zoomTiledImages()) {
+            return;
+        }
         renderLater(LazyApplicationPoolExecutor.Delay.NOW, RenderCommand.Reason.SOURCE_PAGE_ZOOM);
     }
 
+    /**
+     * @return true when the displayed diagram is tiled, so that it does not need to be rendered again
+     */
+    private boolean zoomTiledImages() {
+        boolean tiled = false;
+        for (Component component : imagesPanel.getComponents()) {
+            if (component instanceof PlantUmlImageLabel && ((PlantUmlImageLabel) component).isTiled()) {
+                ((PlantUmlImageLabel) component).setZoom(unscaledZoom);
+                tiled = true;
+            }
+        }
+        if (tiled) {
+            imagesPanel.revalidate();
+            imagesPanel.repaint();
+        }
+        return tiled;
+    }
+
     public void setSelectedPage(int selectedPage) {
         if (selectedPage >= -1 && selectedPage < getNumPages()) {
             logger.debug("page ", selectedPage, " selected");
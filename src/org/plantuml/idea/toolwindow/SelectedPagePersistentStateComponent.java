@@ -31,7 +31,7 @@ public class SelectedPagePersistentStateComponent implements PersistentStateComp
         this.state = state;
     }
 
-    public int getPage(String sourceFilePath) {
+    public synchronized int getPage(String sourceFilePath) {
         Integer integer = state.map.get(sourceFilePath);
         if (integer == null) {
             integer = -1;
@@ -39,7 +39,7 @@ public class SelectedPagePersistentStateComponent implements PersistentStateComp
         return integer;
     }
 
-    public void setPage(int selectedPage, RenderCacheItem displayedItem) {
+    public synchronized void setPage(int selectedPage, RenderCacheItem displayedItem) {
         if (displayedItem != null) {
             if (selectedPage == -1) {
                 state.map.remove(displayedItem.getSourceFilePath());
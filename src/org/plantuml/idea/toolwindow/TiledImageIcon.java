@@ -0,0 +1,212 @@
+package org.plantuml.idea.toolwindow;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.ui.JBColor;
+import com.intellij.ui.scale.ScaleContext;
+import com.intellij.ui.scale.ScaleType;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.plantuml.idea.rendering.VectorImage;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Paints a {@link VectorImage} by tiles, which are rasterized on a background thread at the current zoom, only when
+ * visible. Zooming and scrolling of huge diagrams needs neither PlantUML nor a bitmap of the whole page.
+ * <p>
+ * Tiles of all icons share one LRU cache.
+ */
+public class TiledImageIcon implements Icon {
+    private static final Logger logger = Logger.getInstance(TiledImageIcon.class);
+    static final int TILE_SIZE = 512;
+    /**
+     * 1 MB each
+     */
+    private static final int MAX_TILES = 64;
+
+    private static final Map<TileKey, BufferedImage> TILES = new LinkedHashMap<TileKey, BufferedImage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TileKey, BufferedImage> eldest) {
+            return size() > MAX_TILES;
+        }
+    };
+    private static final Set<TileKey> PENDING = new HashSet<>();
+    private static final ExecutorService EXECUTOR = AppExecutorUtil.createBoundedApplicationPoolExecutor("PlantUML tiles", 1);
+
+    private final VectorImage image;
+    private final JComponent owner;
+    /**
+     * pixels per SVG unit, without the system scale
+     */
+    private double zoom = 1;
+    /**
+     * device pixels per SVG unit of the last painting, tiles of other scales are not rendered anymore
+     */
+    private volatile double deviceScale;
+
+    public TiledImageIcon(@NotNull VectorImage image, @NotNull JComponent owner) {
+        this.image = image;
+        this.owner = owner;
+    }
+
+    public void setZoom(double zoom) {
+        this.zoom = zoom;
+    }
+
+    public double getZoom() {
+        return zoom;
+    }
+
+    @Override
+    public int getIconWidth() {
+        return (int) Math.ceil(image.getWidth() * zoom);
+    }
+
+    @Override
+    public int getIconHeight() {
+        return (int) Math.ceil(image.getHeight() * zoom);
+    }
+
+    @Override
+    public void paintIcon(Component c, Graphics g, int x, int y) {
+        double sysScale = ScaleContext.create(c).getScale(ScaleType.SYS_SCALE);
+        double deviceScale = zoom * sysScale;
+        this.deviceScale = deviceScale;
+        int deviceWidth = (int) Math.ceil(image.getWidth() * deviceScale);
+        int deviceHeight = (int) Math.ceil(image.getHeight() * deviceScale);
+
+        Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            g2.translate(x, y);
+            g2.scale(1 / sysScale, 1 / sysScale);
+            Rectangle clip = g2.getClipBounds();
+            Rectangle visible = new Rectangle(0, 0, deviceWidth, deviceHeight);
+            if (clip != null) {
+                visible = visible.intersection(clip);
+            }
+            if (visible.isEmpty()) {
+                return;
+            }
+
+            int firstColumn = visible.x / TILE_SIZE;
+            int lastColumn = (visible.x + visible.width - 1) / TILE_SIZE;
+            int firstRow = visible.y / TILE_SIZE;
+            int lastRow = (visible.y + visible.height - 1) / TILE_SIZE;
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    TileKey key = new TileKey(image, deviceScale, column, row);
+                    BufferedImage tile = getTile(key);
+                    if (tile != null) {
+                        g2.drawImage(tile, column * TILE_SIZE, row * TILE_SIZE, null);
+                    } else {
+                        Rectangle region = key.getRegion(deviceWidth, deviceHeight);
+                        g2.setColor(JBColor.WHITE);
+                        g2.fill(region);
+                        requestTile(key, region, sysScale);
+                    }
+                }
+            }
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    private void requestTile(TileKey key, Rectangle region, double sysScale) {
+        synchronized (TILES) {
+            if (!PENDING.add(key)) {
+                return;
+            }
+        }
+        EXECUTOR.execute(() -> {
+            try {
+                //zoomed or scrolled away in the meantime
+                if (key.scale != deviceScale || !owner.isShowing()) {
+                    return;
+                }
+                long start = System.currentTimeMillis();
+                BufferedImage tile = image.renderTile(region, key.scale);
+                synchronized (TILES) {
+                    TILES.put(key, tile);
+                }
+                logger.debug("tile ", key, " rendered in ", System.currentTimeMillis() - start, "ms");
+                SwingUtilities.invokeLater(() -> owner.repaint(
+                        (int) Math.floor(region.x / sysScale), (int) Math.floor(region.y / sysScale),
+                        (int) Math.ceil(region.width / sysScale) + 1, (int) Math.ceil(region.height / sysScale) + 1));
+            } catch (Throwable e) {
+                logger.warn("unable to render tile " + key, e);
+            } finally {
+                synchronized (TILES) {
+                    PENDING.remove(key);
+                }
+            }
+        });
+    }
+
+    private static BufferedImage getTile(TileKey key) {
+        synchronized (TILES) {
+            return TILES.get(key);
+        }
+    }
+
+    public static void clearCache() {
+        synchronized (TILES) {
+            TILES.clear();
+        }
+    }
+
+    private static class TileKey {
+        private final VectorImage image;
+        private final double scale;
+        private final int column;
+        private final int row;
+
+        TileKey(VectorImage image, double scale, int column, int row) {
+            this.image = image;
+            this.scale = scale;
+            this.column = column;
+            this.row = row;
+        }
+
+        /**
+         * tiles at the right and bottom edge are smaller
+         */
+        Rectangle getRegion(int deviceWidth, int deviceHeight) {
+            int x = column * TILE_SIZE;
+            int y = row * TILE_SIZE;
+            return new Rectangle(x, y, Math.min(TILE_SIZE, deviceWidth - x), Math.min(TILE_SIZE, deviceHeight - y));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            TileKey tileKey = (TileKey) o;
+            return image == tileKey.image
+                    && Double.compare(tileKey.scale, scale) == 0
+                    && column == tileKey.column
+                    && row == tileKey.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(image), scale, column, row);
+        }
+
+        @Override
+        public String toString() {
+            return "TileKey{" +
+                    "scale=" + scale +
+                    ", column=" + column +
+                    ", row=" + row +
+                    '}';
+        }
+    }
+}
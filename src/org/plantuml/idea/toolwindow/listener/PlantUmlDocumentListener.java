@@ -8,10 +8,13 @@ import com.intellij.openapi.editor.event.DocumentListener;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.plantuml.idea.lang.settings.PlantUmlSettings;
+import org.plantuml.idea.rendering.IncludeDependencyGraph;
 import org.plantuml.idea.rendering.LazyApplicationPoolExecutor;
 import org.plantuml.idea.rendering.RenderCommand;
 import org.plantuml.idea.util.UIUtils;
 
+import java.util.Collections;
+
 import static com.intellij.codeInsight.completion.CompletionInitializationContext.DUMMY_IDENTIFIER;
 
 public class PlantUmlDocumentListener implements DocumentListener {
@@ -38,6 +41,7 @@ public class PlantUmlDocumentListener implements DocumentListener {
         if (logger.isDebugEnabled()) {
             logger.debug("document changed ", event.getSource());
         }
+        IncludeDependencyGraph.getInstance().filesChanged(Collections.singletonList(file.getPath()));
         if (settings.isAutoRender()) {
             //#18 Strange "IntellijIdeaRulezzz" - filter code completion event.
             if (!DUMMY_IDENTIFIER.equals(event.getNewFragment().toString())) {
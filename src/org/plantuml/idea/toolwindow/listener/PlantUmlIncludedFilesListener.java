@@ -0,0 +1,55 @@
+package org.plantuml.idea.toolwindow.listener;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import org.jetbrains.annotations.NotNull;
+import org.plantuml.idea.rendering.IncludeDependencyGraph;
+import org.plantuml.idea.rendering.LazyApplicationPoolExecutor;
+import org.plantuml.idea.rendering.RenderCacheItem;
+import org.plantuml.idea.rendering.RenderCommand;
+import org.plantuml.idea.toolwindow.PlantUmlToolWindow;
+import org.plantuml.idea.util.UIUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Changes of included files from outside of the editor (VCS update, external tools) - the displayed diagram is rendered
+ * again when it depends on them.
+ */
+public class PlantUmlIncludedFilesListener implements BulkFileListener {
+
+    @Override
+    public void after(@NotNull List<? extends VFileEvent> events) {
+        List<String> paths = new ArrayList<>();
+        for (VFileEvent event : events) {
+            if (event instanceof VFileContentChangeEvent && event.isFromSave()) {
+                //changed by the document already
+                continue;
+            }
+            paths.add(event.getPath());
+            if (event instanceof VFileMoveEvent) {
+                paths.add(((VFileMoveEvent) event).getOldPath());
+            } else if (event instanceof VFilePropertyChangeEvent && ((VFilePropertyChangeEvent) event).isRename()) {
+                paths.add(((VFilePropertyChangeEvent) event).getOldPath());
+            }
+        }
+        Set<String> affected = IncludeDependencyGraph.getInstance().filesChanged(paths);
+        if (affected.isEmpty()) {
+            return;
+        }
+        for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+            PlantUmlToolWindow toolWindow = UIUtils.getPlantUmlToolWindow(project);
+            RenderCacheItem displayedItem = toolWindow != null ? toolWindow.getDisplayedItem() : null;
+            if (displayedItem != null && affected.contains(displayedItem.getSourceFilePath())) {
+                UIUtils.renderPlantUmlToolWindowLater(project, LazyApplicationPoolExecutor.Delay.RESET_DELAY, RenderCommand.Reason.INCLUDES);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.plantuml.idea.external;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ParentLastURLClassLoaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void indexedClassesAreLoadedChildFirst() throws Exception {
+        File jar = folder.newFile("child.jar");
+        writeJar(jar, ChildFirst.class);
+        CountingClassLoader parent = new CountingClassLoader();
+        ParentLastURLClassLoader classLoader = new ParentLastURLClassLoader(parent, jar.toURI().toURL());
+
+        Class<?> loaded = classLoader.loadClass(ChildFirst.class.getName());
+
+        assertNotSame(ChildFirst.class, loaded);
+        assertNotSame(getClass().getClassLoader(), loaded.getClassLoader());
+        assertEquals(0, parent.count(ChildFirst.class.getName()));
+        assertSame(String.class, classLoader.loadClass("java.lang.String"));
+    }
+
+    @Test
+    public void classesOutsideIndexAreLoadedFromParentWithoutLookupInJars() throws Exception {
+        File jar = folder.newFile("child.jar");
+        writeJar(jar, ChildFirst.class);
+        ParentLastURLClassLoader classLoader = new ParentLastURLClassLoader(getClass().getClassLoader(), jar.toURI().toURL());
+        //added after indexing - found only if the jar was searched
+        writeJar(jar, ChildFirst.class, FromParent.class);
+
+        assertSame(FromParent.class, classLoader.loadClass(FromParent.class.getName()));
+    }
+
+    @Test
+    public void missIsRemembered() throws Exception {
+        File jar = folder.newFile("child.jar");
+        writeJar(jar, ChildFirst.class);
+        CountingClassLoader parent = new CountingClassLoader();
+        ParentLastURLClassLoader classLoader = new ParentLastURLClassLoader(parent, jar.toURI().toURL());
+        String name = "org.plantuml.idea.external.DoesNotExist";
+
+        assertNotFound(classLoader, name);
+        int parentLookups = parent.count(name);
+        assertTrue(parentLookups > 0);
+        assertNotFound(classLoader, name);
+        assertEquals(parentLookups, parent.count(name));
+    }
+
+    private static void assertNotFound(ClassLoader classLoader, String name) {
+        try {
+            classLoader.loadClass(name);
+            fail(name + " loaded");
+        } catch (ClassNotFoundException expected) {
+        }
+    }
+
+    private static void writeJar(File jar, Class<?>... classes) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (Class<?> aClass : classes) {
+                String entryName = aClass.getName().replace('.', '/') + ".class";
+                out.putNextEntry(new JarEntry(entryName));
+                try (InputStream in = aClass.getClassLoader().getResourceAsStream(entryName)) {
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, read);
+                    }
+                }
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static class CountingClassLoader extends ClassLoader {
+        private final Map<String, Integer> counts = new HashMap<>();
+
+        CountingClassLoader() {
+            super(ParentLastURLClassLoaderTest.class.getClassLoader());
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            counts.merge(name, 1, Integer::sum);
+            return super.loadClass(name, resolve);
+        }
+
+        synchronized int count(String name) {
+            return counts.getOrDefault(name, 0);
+        }
+    }
+
+    public static class ChildFirst {
+    }
+
+    public static class FromParent {
+    }
+}
@@ -0,0 +1,50 @@
+package org.plantuml.idea.plantuml;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class PlantUmlSourceIndexTest extends TestCase {
+    private static final String[] SNIPPETS = {"@startuml", "@enduml", "@startmindmap", "@endmindmap", "``` plantuml",
+            "```", "\n", " * ", "x", "A -> B\n"};
+
+    public void testExtractSource() throws Exception {
+        String text = "text\n@startuml\nA -> B\n@enduml\ntext\n``` plantuml\nC -> D\n```\n@startuml\nno end";
+        PlantUmlSourceIndex index = new PlantUmlSourceIndex(text);
+
+        assertEquals(3, index.size());
+        assertEquals("", index.extractSource(text, 0));
+        assertEquals("@startuml\nA -> B\n@enduml", index.extractSource(text, text.indexOf("A -> B")));
+        assertEquals("@startuml\n\nC -> D\n\n@enduml", index.extractSource(text, text.indexOf("C -> D")));
+        assertEquals("@startuml\nno end", index.extractSource(text, text.length()));
+    }
+
+    public void testUpdate() throws Exception {
+        StringBuilder text = new StringBuilder("@startuml\nA -> B\n@enduml\n");
+        PlantUmlSourceIndex index = new PlantUmlSourceIndex(text);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            int offset = random.nextInt(text.length() + 1);
+            int oldLength = random.nextInt(4) == 0 ? Math.min(random.nextInt(20), text.length() - offset) : 0;
+            String inserted = oldLength > 0 && random.nextBoolean() ? "" : SNIPPETS[random.nextInt(SNIPPETS.length)];
+            text.replace(offset, offset + oldLength, inserted);
+            String current = text.toString();
+            index.update(current, offset, oldLength, inserted.length());
+
+            PlantUmlSourceIndex expected = new PlantUmlSourceIndex(current);
+            assertEquals(current, expected.size(), index.size());
+            for (int caret = 0; caret <= current.length(); caret++) {
+                assertEquals(current, expected.extractSource(current, caret), index.extractSource(current, caret));
+            }
+        }
+    }
+
+    public void testSameAsPlantUml() throws Exception {
+        String text = "x\n@startuml\nA -> B\n@enduml\n\n@startuml\n * C -> D\n@enduml\n``` plantuml\nE -> F\n```\n@startuml\n";
+        PlantUmlSourceIndex index = new PlantUmlSourceIndex(text);
+        for (int caret = 0; caret <= text.length(); caret++) {
+            assertEquals(PlantUml.extractSource(text, caret), index.extractSource(text, caret));
+        }
+    }
+}
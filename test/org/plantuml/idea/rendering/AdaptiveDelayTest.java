@@ -0,0 +1,44 @@
+package org.plantuml.idea.rendering;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveDelayTest {
+
+    @Test
+    public void disabled() {
+        AdaptiveDelay delay = new AdaptiveDelay();
+        delay.setBounds(false, 20, 1000);
+        delay.record("file", 500);
+        Assert.assertEquals(100, delay.getDelayMillis("file", 100));
+    }
+
+    @Test
+    public void unknownFileUsesFixedDelay() {
+        AdaptiveDelay delay = new AdaptiveDelay();
+        delay.setBounds(true, 20, 1000);
+        Assert.assertEquals(100, delay.getDelayMillis("file", 100));
+        Assert.assertEquals(20, delay.getDelayMillis("file", 0));
+    }
+
+    @Test
+    public void movingAverage() {
+        AdaptiveDelay delay = new AdaptiveDelay();
+        delay.setBounds(true, 20, 1000);
+        delay.record("file", 500);
+        Assert.assertEquals(500, delay.getDelayMillis("file", 100));
+        delay.record("file", 100);
+        Assert.assertEquals(380, delay.getDelayMillis("file", 100));
+        Assert.assertEquals(100, delay.getDelayMillis("other", 100));
+    }
+
+    @Test
+    public void clamped() {
+        AdaptiveDelay delay = new AdaptiveDelay();
+        delay.setBounds(true, 20, 1000);
+        delay.record("cheap", 2);
+        delay.record("expensive", 5000);
+        Assert.assertEquals(20, delay.getDelayMillis("cheap", 100));
+        Assert.assertEquals(1000, delay.getDelayMillis("expensive", 100));
+    }
+}
@@ -0,0 +1,72 @@
+package org.plantuml.idea.rendering;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.plantuml.idea.plantuml.PlantUml;
+
+import java.awt.*;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class ImageItemTest {
+    private static final String SVG = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>"
+            + "<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\"><g>"
+            + "<text font-size=\"14\" textLength=\"30\" x=\"10.5\" y=\"20.7\">Alice</text>"
+            + "<a href=\"http://example.com\" target=\"_top\" xlink:href=\"http://example.com\" xlink:type=\"simple\">"
+            + "<text fill=\"#0000FF\" font-size=\"13\" textLength=\"21\" x=\"100\" y=\"50\">link</text></a>"
+            + "<text font-size=\"14\" textLength=\"30\" x=\"10\" y=\"20\"></text>"
+            + "<text font-size=\"12\" textLength=\"40\" x=\"5\" y=\"80\">Bob <tspan>Smith</tspan></text>"
+            + "</g></svg>";
+
+    @Test
+    public void parseLinks() {
+        List<ImageItem.LinkData> links = ImageItem.parseLinks(SVG.getBytes(StandardCharsets.UTF_8), new File("."));
+
+        Assert.assertEquals(3, links.size());
+        assertLink(links.get(0), "http://example.com", true, new Rectangle(100, 37, 21, 13));
+        assertLink(links.get(1), "Alice", false, new Rectangle(10, 6, 30, 14));
+        assertLink(links.get(2), "Bob Smith", false, new Rectangle(5, 68, 40, 12));
+    }
+
+    @Test
+    public void parseLinksOfInvalidSvg() {
+        Assert.assertTrue(ImageItem.parseLinks("<svg><text".getBytes(StandardCharsets.UTF_8), new File(".")).isEmpty());
+        Assert.assertTrue(ImageItem.parseLinks(SVG.getBytes(StandardCharsets.UTF_8), null).isEmpty());
+    }
+
+    @Test
+    public void linksAreParsedLazily() {
+        byte[] svg = SVG.getBytes(StandardCharsets.UTF_8);
+        ImageItem item = new ImageItem(new File("."), PlantUml.ImageFormat.PNG, "source", "source", 0, "ok", null, svg, RenderingType.NORMAL, null, null);
+        Assert.assertEquals(svg.length, item.getRetainedBytes());
+
+        Assert.assertEquals(3, item.getLinks().size());
+        Assert.assertEquals(0, item.getRetainedBytes());
+        Assert.assertEquals(3, new ImageItem(1, "source", item).getLinks().size());
+    }
+
+    @Test
+    public void imageBytesAreOffHeap() throws Exception {
+        byte[] bytes = {1, 2, 3};
+        ImageItem item = new ImageItem(null, PlantUml.ImageFormat.PNG, "source", "source", 0, "ok", bytes, null, RenderingType.NORMAL, null, null);
+        Assert.assertEquals(3, item.getOffHeapBytes());
+        Assert.assertEquals(0, item.getRetainedBytes());
+        Assert.assertArrayEquals(bytes, item.getImageBytes());
+        Assert.assertNotSame(bytes, item.getImageBytes());
+
+        InputStream stream = OffHeapBytes.of(bytes).openStream();
+        Assert.assertEquals(1, stream.read());
+        byte[] rest = new byte[10];
+        Assert.assertEquals(2, stream.read(rest, 0, rest.length));
+        Assert.assertEquals(3, rest[1]);
+        Assert.assertEquals(-1, stream.read());
+    }
+
+    private static void assertLink(ImageItem.LinkData linkData, String text, boolean link, Rectangle area) {
+        Assert.assertEquals(text, linkData.getText());
+        Assert.assertEquals(link, linkData.isLink());
+        Assert.assertEquals(area, linkData.getClickArea());
+    }
+}
@@ -0,0 +1,82 @@
+package org.plantuml.idea.rendering;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class IncludeDependencyGraphTest {
+    private final File common = new File("includes/common.iuml");
+    private final File style = new File("includes/style.iuml");
+
+    @Test
+    public void invalidatesOnlyDependentDiagrams() {
+        IncludeDependencyGraph graph = new IncludeDependencyGraph();
+        graph.register("a.puml", Arrays.asList(common, style));
+        graph.register("b.puml", Collections.singletonList(style));
+        graph.register("c.puml", Collections.emptyList());
+
+        Assert.assertEquals(Collections.singleton("a.puml"), graph.filesChanged(paths(common)));
+        Assert.assertEquals(2, graph.filesChanged(paths(style)).size());
+        Assert.assertTrue(graph.filesChanged(Collections.singletonList("unrelated.txt")).isEmpty());
+    }
+
+    @Test
+    public void changedSinceRendering() {
+        IncludeDependencyGraph graph = new IncludeDependencyGraph();
+        long stamp = graph.getStamp();
+        graph.register("a.puml", Arrays.asList(common, style));
+        Assert.assertFalse(graph.changedSince(Arrays.asList(common, style), stamp));
+
+        graph.filesChanged(paths(common));
+        Assert.assertTrue(graph.changedSince(Arrays.asList(common, style), stamp));
+        Assert.assertFalse(graph.changedSince(Collections.singletonList(style), stamp));
+        Assert.assertFalse(graph.changedSince(Arrays.asList(common, style), graph.getStamp()));
+    }
+
+    @Test
+    public void registeringAgainReplacesIncludes() {
+        IncludeDependencyGraph graph = new IncludeDependencyGraph();
+        graph.register("a.puml", Arrays.asList(common, style));
+        graph.register("a.puml", Collections.singletonList(style));
+
+        Assert.assertTrue(graph.filesChanged(paths(common)).isEmpty());
+        Assert.assertEquals(Collections.singleton("a.puml"), graph.filesChanged(paths(style)));
+    }
+
+    @Test
+    public void changeDuringFirstRenderingIsRemembered() {
+        IncludeDependencyGraph graph = new IncludeDependencyGraph();
+        graph.renderingStarted();
+        long stamp = graph.getStamp();
+        Assert.assertTrue(graph.filesChanged(paths(common)).isEmpty());
+        graph.register("a.puml", Collections.singletonList(common));
+        graph.renderingFinished();
+
+        Assert.assertTrue(graph.changedSince(Collections.singletonList(common), stamp));
+        Assert.assertFalse(graph.changedSince(Collections.singletonList(common), graph.getStamp()));
+    }
+
+    @Test
+    public void changesOfUnknownFilesAreForgottenAfterRendering() {
+        IncludeDependencyGraph graph = new IncludeDependencyGraph();
+        long stamp = graph.getStamp();
+        graph.filesChanged(paths(common));
+        Assert.assertFalse(graph.changedSince(Collections.singletonList(common), stamp));
+
+        graph.renderingStarted();
+        graph.filesChanged(paths(style));
+        graph.register("a.puml", Collections.singletonList(common));
+        graph.renderingFinished();
+
+        Assert.assertFalse(graph.changedSince(Collections.singletonList(style), stamp));
+    }
+
+    private static List<String> paths(File file) {
+        return Collections.singletonList(FileUtil.toSystemIndependentName(file.getAbsolutePath()));
+    }
+}
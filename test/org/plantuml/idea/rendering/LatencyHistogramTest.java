@@ -0,0 +1,59 @@
+package org.plantuml.idea.rendering;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 100; i >= 1; i--) {
+            histogram.record(i);
+        }
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(5050, histogram.getTotalNanos());
+        Assert.assertEquals(50, histogram.getPercentileNanos(50));
+        Assert.assertEquals(95, histogram.getPercentileNanos(95));
+        Assert.assertEquals(99, histogram.getPercentileNanos(99));
+        Assert.assertEquals(100, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void empty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getPercentileNanos(50));
+    }
+
+    @Test
+    public void percentilesOfRecentSamples() {
+        LatencyHistogram histogram = new LatencyHistogram(4);
+        histogram.record(1000);
+        for (int i = 0; i < 4; i++) {
+            histogram.record(10);
+        }
+        Assert.assertEquals(5, histogram.getCount());
+        Assert.assertEquals(10, histogram.getPercentileNanos(99));
+        Assert.assertEquals(1000, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void json() {
+        RenderingMetrics metrics = new RenderingMetrics();
+        metrics.record(RenderingMetrics.Phase.OUTPUT_IMAGE, 2000000);
+        metrics.increment(RenderingMetrics.Counter.CACHE_HIT);
+        String json = metrics.toJson();
+        Assert.assertTrue(json, json.contains("\"outputImage\": {\"count\": 1, \"totalMs\": 2.000, \"p50Ms\": 2.000"));
+        Assert.assertTrue(json, json.contains("\"cacheHit\": 1"));
+    }
+
+    @Test
+    public void facadeCalls() {
+        RenderingMetrics metrics = new RenderingMetrics();
+        metrics.getHistogram(RenderingMetrics.FacadeMethod.RENDER).record(3000000);
+        String json = metrics.toJson();
+        Assert.assertTrue(json, json.contains("\"facade\": {\n    \"annotateSyntaxErrors\": {\"count\": 0"));
+        Assert.assertTrue(json, json.contains("\"render\": {\"count\": 1, \"totalMs\": 3.000"));
+        Assert.assertTrue(metrics.toText().contains("facade [ms]"));
+    }
+}
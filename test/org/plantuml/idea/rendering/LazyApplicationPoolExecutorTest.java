@@ -4,6 +4,10 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.plantuml.idea.toolwindow.ExecutionStatusPanel;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.plantuml.idea.rendering.LazyApplicationPoolExecutor.MILLION;
 
 public class LazyApplicationPoolExecutorTest {
@@ -14,4 +18,109 @@ public class LazyApplicationPoolExecutorTest {
         executor.setDelay(5);
         Assert.assertEquals(5, executor.delayNanos / MILLION);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void preemption() {
+        RenderCommand caret = command(RenderCommand.Reason.CARET, "file", "a");
+        RenderCommand typing = command(RenderCommand.Reason.SOURCE_PAGE_ZOOM, "file", "b");
+        RenderCommand refresh = command(RenderCommand.Reason.REFRESH, "file", "a");
+
+        Assert.assertTrue(LazyApplicationPoolExecutor.shouldPreempt(caret, typing));
+        Assert.assertTrue(LazyApplicationPoolExecutor.shouldPreempt(refresh, typing));
+        Assert.assertFalse(LazyApplicationPoolExecutor.shouldPreempt(refresh, command(RenderCommand.Reason.CARET, "file2", "c")));
+        Assert.assertTrue(LazyApplicationPoolExecutor.shouldPreempt(caret, command(RenderCommand.Reason.FILE_SWITCHED, "file2", "c")));
+        Assert.assertFalse(LazyApplicationPoolExecutor.shouldPreempt(typing, command(RenderCommand.Reason.SOURCE_PAGE_ZOOM, "file", "b")));
+
+        typing.cancel();
+        Assert.assertFalse(LazyApplicationPoolExecutor.shouldPreempt(typing, caret));
+    }
+
+    @Test
+    public void preemptedCommandReturnsBeforeNextOneStarts() throws Exception {
+        LazyApplicationPoolExecutor executor = new LazyApplicationPoolExecutor(0, new SilentStatusPanel()) {
+            @Override
+            protected void executeOnPooledThread(Runnable runnable) {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                thread.start();
+            }
+        };
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        BlockingCommand caret = new BlockingCommand(RenderCommand.Reason.CARET, "a", running, maxRunning);
+        BlockingCommand typing = new BlockingCommand(RenderCommand.Reason.SOURCE_PAGE_ZOOM, "b", running, maxRunning);
+
+        executor.execute(caret);
+        Assert.assertTrue(caret.started.await(5, TimeUnit.SECONDS));
+        executor.execute(typing);
+
+        Assert.assertTrue(caret.isCancelled());
+        Assert.assertTrue(caret.interrupted.await(5, TimeUnit.SECONDS));
+        //the preempted command ignores the interruption, like PlantUML outside of Graphviz
+        Assert.assertFalse(typing.started.await(200, TimeUnit.MILLISECONDS));
+
+        caret.finish.countDown();
+        Assert.assertTrue(typing.started.await(5, TimeUnit.SECONDS));
+        typing.finish.countDown();
+        Assert.assertTrue(typing.finished.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, maxRunning.get());
+        Assert.assertEquals("not interrupted", 1, typing.interrupted.getCount());
+    }
+
+    private static class BlockingCommand extends RenderCommand {
+        private final AtomicInteger running;
+        private final AtomicInteger maxRunning;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+        private final CountDownLatch finish = new CountDownLatch(1);
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        BlockingCommand(Reason reason, String source, AtomicInteger running, AtomicInteger maxRunning) {
+            super(reason, "file", source, -1, 100, null, 0, false, LazyApplicationPoolExecutor.Delay.NOW, new SilentStatusPanel());
+            this.running = running;
+            this.maxRunning = maxRunning;
+        }
+
+        @Override
+        public void run() {
+            int concurrent = running.incrementAndGet();
+            maxRunning.accumulateAndGet(concurrent, Math::max);
+            started.countDown();
+            try {
+                while (true) {
+                    try {
+                        finish.await();
+                        return;
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                }
+            } finally {
+                running.decrementAndGet();
+                finished.countDown();
+            }
+        }
+
+        @Override
+        protected void displayResultOnEDT(RenderCacheItem newItem, long total, RenderResult result) {
+        }
+    }
+
+    private static class SilentStatusPanel extends ExecutionStatusPanel {
+        @Override
+        public void setDelay(long delay) {
+        }
+
+        @Override
+        public synchronized void update(State state) {
+        }
+    }
+
+    private static RenderCommand command(RenderCommand.Reason reason, String file, String source) {
+        return new RenderCommand(reason, file, source, -1, 100, null, 0, false, LazyApplicationPoolExecutor.Delay.NOW, new ExecutionStatusPanel()) {
+            @Override
+            protected void displayResultOnEDT(RenderCacheItem newItem, long total, RenderResult result) {
+            }
+        };
+    }
+}
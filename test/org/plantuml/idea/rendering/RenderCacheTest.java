@@ -0,0 +1,87 @@
+package org.plantuml.idea.rendering;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.plantuml.idea.plantuml.PlantUml;
+
+public class RenderCacheTest {
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    public void exactSourceIsFound() {
+        RenderCache cache = new RenderCache(10);
+        RenderCacheItem a = item("file1", "@startuml\na->b\n@enduml", 100, 10);
+        RenderCacheItem b = item("file2", "@startuml\nb->c\n@enduml", 100, 10);
+        cache.addToCache(a);
+        cache.addToCache(b);
+
+        Assert.assertSame(a, cache.getCachedItem("file1", "@startuml\na->b\n@enduml", 0, 100, PlantUml.ImageFormat.PNG));
+        Assert.assertSame(b, cache.getCachedItem("file2", "@startuml\nb->c\n@enduml", 0, 100, PlantUml.ImageFormat.PNG));
+    }
+
+    @Test
+    public void formatIsPartOfKey() {
+        RenderCache cache = new RenderCache(10);
+        RenderCacheItem svg = item("file1", "@startuml\na->b\n@enduml", 100, 10, PlantUml.ImageFormat.SVG);
+        RenderCacheItem png = item("file1", "@startuml\na->b\n@enduml", 100, 10);
+        cache.addToCache(svg);
+        cache.addToCache(png);
+
+        Assert.assertSame(svg, cache.getCachedItem("file1", "@startuml\na->b\n@enduml", 0, 100, PlantUml.ImageFormat.SVG));
+        Assert.assertSame(png, cache.getCachedItem("file1", "@startuml\na->b\n@enduml", 0, 100, PlantUml.ImageFormat.PNG));
+    }
+
+    @Test
+    public void lastItemOfFileIsReturnedForChangedSource() {
+        RenderCache cache = new RenderCache(10);
+        RenderCacheItem a = item("file1", "@startuml\na->b\n@enduml", 100, 10);
+        cache.addToCache(a);
+
+        Assert.assertSame(a, cache.getCachedItem("file1", "@startuml\na->c\n@enduml", 0, 100, PlantUml.ImageFormat.PNG));
+        Assert.assertNull(cache.getCachedItem("file1", "@startuml\na->c\n@enduml", 0, 200, PlantUml.ImageFormat.PNG));
+        Assert.assertNull(cache.getCachedItem("file2", "@startuml\na->b\n@enduml", 0, 100, PlantUml.ImageFormat.PNG));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBySize() {
+        RenderCache cache = new RenderCache(2);
+        RenderCacheItem a = item("file1", "a", 100, MB);
+        RenderCacheItem b = item("file2", "b", 100, MB);
+        RenderCacheItem c = item("file3", "c", 100, MB);
+        cache.addToCache(a);
+        cache.addToCache(b);
+        cache.getCachedItem("file1", "a", 0, 100, PlantUml.ImageFormat.PNG);
+        cache.addToCache(c);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertSame(a, cache.getCachedItem("file1", "a", 0, 100, PlantUml.ImageFormat.PNG));
+        Assert.assertNull(cache.getCachedItem("file2", "b", 0, 100, PlantUml.ImageFormat.PNG));
+        Assert.assertSame(c, cache.getLast());
+    }
+
+    @Test
+    public void keepsLastItemOverLimit() {
+        RenderCache cache = new RenderCache(1);
+        RenderCacheItem a = item("file1", "a", 100, 3 * MB);
+        cache.addToCache(a);
+
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(3 * MB, cache.getCacheSizeBytes());
+        Assert.assertEquals(3 * MB, cache.getOffHeapBytes());
+        Assert.assertEquals(0, cache.getRetainedBytes());
+        cache.removeFromCache(a);
+        Assert.assertEquals(0, cache.getCacheSizeBytes());
+        Assert.assertNull(cache.getLast());
+    }
+
+    private static RenderCacheItem item(String file, String source, int zoom, int bytes) {
+        return item(file, source, zoom, bytes, PlantUml.ImageFormat.PNG);
+    }
+
+    private static RenderCacheItem item(String file, String source, int zoom, int bytes, PlantUml.ImageFormat format) {
+        RenderRequest renderRequest = new RenderRequest(file, source, format, 0, zoom, 0, false, RenderCommand.Reason.REFRESH);
+        RenderResult renderResult = new RenderResult(RenderingType.NORMAL, 1);
+        renderResult.addRenderedImage(new ImageItem(null, format, source, source, 0, "ok", new byte[bytes], null, RenderingType.NORMAL, null, null));
+        return new RenderCacheItem(renderRequest, renderResult, 0, 0);
+    }
+}
@@ -0,0 +1,63 @@
+package org.plantuml.idea.rendering;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.plantuml.idea.plantuml.PlantUml;
+
+import java.awt.*;
+import java.io.*;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+
+public class RenderResultSerializerTest {
+
+    @Test
+    public void roundTrip() throws IOException {
+        RenderResult result = new RenderResult(RenderingType.NORMAL, 1);
+        ImageItem.LinkData link = new ImageItem.LinkData("http://plantuml.com", new Rectangle(1, 2, 3, 4), true);
+        result.addRenderedImage(new ImageItem(PlantUml.ImageFormat.PNG, "@startuml\na->b\n@enduml", "a->b", 0, "ok",
+                new byte[]{1, 2, 3}, Collections.singletonList(link), RenderingType.NORMAL, "title", null));
+        LinkedHashMap<File, Long> includedFiles = new LinkedHashMap<>();
+        includedFiles.put(new File("included.puml"), 42L);
+        result.setIncludedFiles(includedFiles);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RenderResultSerializer.write(result, new DataOutputStream(bytes));
+        RenderResult read = RenderResultSerializer.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        Assert.assertEquals(RenderingType.NORMAL, read.getStrategy());
+        Assert.assertEquals(1, read.getPages());
+        Assert.assertEquals(1, read.getCached());
+        ImageItem item = read.getImageItem(0);
+        Assert.assertEquals("@startuml\na->b\n@enduml", item.getDocumentSource());
+        Assert.assertEquals("a->b", item.getPageSource());
+        Assert.assertEquals("ok", item.getDescription());
+        Assert.assertEquals("title", item.getTitle());
+        Assert.assertNull(item.getFilename());
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, item.getImageBytes());
+        Assert.assertEquals(1, item.getLinks().size());
+        Assert.assertEquals("http://plantuml.com", item.getLinks().get(0).getText());
+        Assert.assertEquals(new Rectangle(1, 2, 3, 4), item.getLinks().get(0).getClickArea());
+        Assert.assertTrue(item.getLinks().get(0).isLink());
+        Assert.assertEquals(includedFiles, read.getIncludedFiles());
+    }
+
+    @Test
+    public void unparsedLinksStayUnparsed() throws IOException {
+        byte[] svg = "<svg><a href=\"http://plantuml.com\"><text x=\"1\" y=\"20\" textLength=\"30\" font-size=\"10\">link</text></a></svg>".getBytes("UTF-8");
+        RenderResult result = new RenderResult(RenderingType.NORMAL, 1);
+        ImageItem imageItem = new ImageItem(new File("."), PlantUml.ImageFormat.PNG, "@startuml\na->b\n@enduml", "a->b", 0, "ok",
+                new byte[]{1, 2, 3}, svg, RenderingType.NORMAL, "title", null);
+        result.addRenderedImage(imageItem);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RenderResultSerializer.write(result, new DataOutputStream(bytes));
+        Assert.assertNull(imageItem.getParsedLinks());
+
+        RenderResult read = RenderResultSerializer.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        ImageItem item = read.getImageItem(0);
+        Assert.assertNull(item.getParsedLinks());
+        Assert.assertEquals(1, item.getLinks().size());
+        Assert.assertEquals("http://plantuml.com", item.getLinks().get(0).getText());
+    }
+}
@@ -0,0 +1,95 @@
+package org.plantuml.idea.rendering;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RenderingPoolTest {
+
+    @Test
+    public void resultsAreInTaskOrder() {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            int result = i;
+            tasks.add(() -> {
+                //later tasks finish first
+                Thread.sleep((4 - result) * 20);
+                return result;
+            });
+        }
+
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3), RenderingPool.invokeAll(tasks, 4));
+    }
+
+    @Test
+    public void singleThreadRunsTasksInOrderInCallingThread() {
+        Thread caller = Thread.currentThread();
+        List<Integer> executed = new ArrayList<>();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            int result = i;
+            tasks.add(() -> {
+                Assert.assertSame(caller, Thread.currentThread());
+                executed.add(result);
+                return result;
+            });
+        }
+
+        Assert.assertEquals(Arrays.asList(0, 1, 2), RenderingPool.invokeAll(tasks, 1));
+        Assert.assertEquals(Arrays.asList(0, 1, 2), executed);
+    }
+
+    @Test
+    public void failureIsPropagated() {
+        List<Callable<Integer>> tasks = Arrays.asList(() -> 1, () -> {
+            throw new IllegalStateException("broken");
+        });
+        try {
+            RenderingPool.invokeAll(tasks, 2);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("broken", e.getMessage());
+        }
+    }
+
+    @Test
+    public void interruptionCancelsRunningTasks() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch interrupted = new CountDownLatch(2);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            tasks.add(() -> {
+                started.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return 0;
+            });
+        }
+
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread caller = new Thread(() -> {
+            try {
+                RenderingPool.invokeAll(tasks, 2);
+            } catch (Throwable e) {
+                thrown.set(e);
+            }
+        });
+        caller.start();
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        caller.interrupt();
+        caller.join(5000);
+
+        Assert.assertTrue(thrown.get() instanceof RenderingCancelledException);
+        Assert.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+}